@@ -27,9 +27,12 @@ import com.gooddata.Constants;
 import com.gooddata.exception.GdcIntegrationErrorException;
 import com.gooddata.exception.GdcProjectAccessException;
 import com.gooddata.exception.HttpMethodException;
+import com.gooddata.exception.InternalErrorException;
 import com.gooddata.exception.InvalidParameterException;
 import com.gooddata.exception.ProcessingException;
+import com.gooddata.integration.datatransfer.GdcDataTransferAPI;
 import com.gooddata.integration.model.Column;
+import com.gooddata.integration.model.DataPackageBatch;
 import com.gooddata.integration.model.SLI;
 import com.gooddata.integration.rest.GdcRESTApiWrapper;
 import com.gooddata.modeling.generator.MaqlGenerator;
@@ -39,19 +42,34 @@ import com.gooddata.naming.N;
 import com.gooddata.processor.CliParams;
 import com.gooddata.processor.Command;
 import com.gooddata.processor.ProcessingContext;
+import com.gooddata.processor.TransferPool;
+import com.gooddata.transform.ParseErrors;
+import com.gooddata.transform.TransformStage;
 import com.gooddata.transform.Transformer;
+import com.gooddata.transform.TransformerCache;
+import com.gooddata.util.BlockingPipe;
 import com.gooddata.util.CSVReader;
 import com.gooddata.util.CSVWriter;
 import com.gooddata.util.FileUtil;
+import com.gooddata.util.ParallelZipOutputStream;
+import com.gooddata.util.PollSchedule;
 import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
 
 /**
  * GoodData abstract connector implements functionality that can be reused in several connectors.
@@ -59,12 +77,10 @@ import java.util.Properties;
  * @author zd <zd@gooddata.com>
  * @version 1.0
  */
-public abstract class AbstractConnector implements Connector {
+public abstract class AbstractConnector implements Connector, Cloneable {
 
     private static Logger l = Logger.getLogger(AbstractConnector.class);
 
-    private static int ETL_POLL_INTERVAL = 10000;
-
     /**
      * The LDM schema of the data source
      */
@@ -75,10 +91,44 @@ public abstract class AbstractConnector implements Connector {
      */
     protected String projectId;
 
+    /**
+     * Transformation expressions engine (JEXL | BYTECODE)
+     */
+    protected String expressionEngine = Transformer.EXPRESSION_ENGINE_JEXL;
+
+    /**
+     * Number of the threads that transform the extracted rows
+     */
+    protected int parallelism = 1;
+
+    /**
+     * Compression level of the data packages
+     */
+    protected int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Number of the threads that compress the data packages
+     */
+    protected int compressionThreads = 1;
+
+    /**
+     * Value parsing errors per column (run statistics of the last extract)
+     */
+    protected ParseErrors parseErrors = new ParseErrors();
+
     private Map<String, String> result = null;
 
     public static final int DATE_LENGTH_UNRESTRICTED = -1;
 
+    /**
+     * Name of the data file in the data package
+     */
+    public static final String DATA_FILE_NAME = "data.csv";
+
+    // the data file that is written to the data package ZIP entry (see extractPackage)
+    private File packageDataFile;
+    private OutputStream packageDataStream;
+
     /**
      * Default constructor
      */
@@ -127,31 +177,65 @@ public abstract class AbstractConnector implements Connector {
      * @throws IOException
      */
     protected int copyAndTransform(CSVReader cr, CSVWriter cw, boolean transform, int dateLength) throws IOException {
-        Transformer t = Transformer.create(schema);
-        String[] header = t.getHeader(transform);
-        cw.writeNext(header);
-        String[] row = cr.readNext();
-        int rowCnt = 0;
-        while (row != null) {
-            rowCnt++;
-            if (row.length == 1 && row[0].length() == 0) {
-                row = cr.readNext();
-                continue;
-            }
-            if (transform) {
-                try {
-                    row = t.transformRow(row, dateLength);
-                } catch (InvalidParameterException e) {
-                    throw new InvalidParameterException(e.getMessage() + " Error occured at row " + rowCnt);
+        TransformStage ts = createTransformStage(cw, transform, dateLength);
+        try {
+            String[] header = ts.getHeader(transform);
+            cw.writeNext(header);
+            // the rows are read to the same array and copied to the stage
+            String[] row = cr.readNext();
+            int rowCnt = 0;
+            while (row != null) {
+                rowCnt++;
+                if (row.length == 1 && row[0].length() == 0) {
+                    row = cr.readNext(row);
+                    continue;
                 }
+                ts.addCopy(rowCnt, row);
+                row = cr.readNext(row);
             }
-            cw.writeNext(row);
-            cw.flush();
-            row = cr.readNext();
+            ts.finish();
+            cw.close();
+            cr.close();
+            return rowCnt;
+        } finally {
+            ts.abort();
         }
-        cw.close();
-        cr.close();
-        return rowCnt;
+    }
+
+    /**
+     * Returns the calling thread's transformer for the connector's schema
+     *
+     * @return cached Transformer that uses the connector's expression engine
+     */
+    protected Transformer createTransformer() {
+        return TransformerCache.get(schema, expressionEngine);
+    }
+
+    /**
+     * Creates the transformation stage for the connector's schema
+     *
+     * @param cw         the target CSV writer
+     * @param transform  perform transformations?
+     * @param dateLength cuts the date to first dateLength chars
+     * @return new TransformStage that uses the connector's expression engine and parallelism
+     */
+    protected TransformStage createTransformStage(CSVWriter cw, boolean transform, int dateLength) {
+        return createTransformStage(schema, cw, transform, dateLength);
+    }
+
+    /**
+     * Creates the transformation stage for a schema
+     *
+     * @param s          the source schema
+     * @param cw         the target CSV writer
+     * @param transform  perform transformations?
+     * @param dateLength cuts the date to first dateLength chars
+     * @return new TransformStage that uses the connector's expression engine and parallelism
+     */
+    protected TransformStage createTransformStage(SourceSchema s, CSVWriter cw, boolean transform, int dateLength) {
+        TransformStage ts = new TransformStage(s, expressionEngine, cw, transform, dateLength, parallelism);
+        ts.setParseErrors(parseErrors);
+        return ts;
     }
 
     /**
@@ -173,7 +257,124 @@ public abstract class AbstractConnector implements Connector {
         String cn = sli.getSLIManifest(columns);
         FileUtil.writeStringToFile(cn, fn);
         l.debug("Manifest file written to file '" + fn + "'. Content: " + cn);
-        FileUtil.compressDir(dir, archiveName);
+        FileUtil.compressDir(dir, archiveName, compressionLevel, compressionThreads);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void extractPackage(SLI sli, List<Column> columns, String dir, String archiveName) throws IOException {
+        extractPackage(dir, sli.getSLIManifest(columns), archiveName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void extractPackage(SLI sli, List<Column> columns, String dir, OutputStream archive) throws IOException {
+        extractPackage(dir, sli.getSLIManifest(columns), archive);
+    }
+
+    /**
+     * Extracts the data directly to the data package ZIP. The CSV writer created by {@link #createCsvWriter(String)}
+     * writes to the data file entry while the rows are produced, the manifest is the last entry.
+     *
+     * @param dir         directory of the data file of the connectors that don't use {@link #createCsvWriter(String)}
+     * @param manifest    the data package manifest
+     * @param archiveName the name of the target ZIP archive
+     * @throws IOException IO issues
+     */
+    protected void extractPackage(String dir, String manifest, String archiveName) throws IOException {
+        l.debug("Extracting data to the data package " + archiveName);
+        OutputStream archive = new FileOutputStream(archiveName);
+        try {
+            extractPackage(dir, manifest, archive);
+        } finally {
+            // already closed unless the extraction failed before the ZIP took over the stream
+            archive.close();
+        }
+    }
+
+    /**
+     * Extracts the data directly to the data package ZIP that is written to the stream.
+     *
+     * @param dir      directory of the data file of the connectors that don't use {@link #createCsvWriter(String)}
+     * @param manifest the data package manifest
+     * @param archive  the target ZIP archive stream, closed when the package is complete
+     * @throws IOException IO issues
+     */
+    protected void extractPackage(String dir, String manifest, OutputStream archive) throws IOException {
+        File dataFile = new File(dir + System.getProperty("file.separator") + DATA_FILE_NAME).getAbsoluteFile();
+        ParallelZipOutputStream zos;
+        try {
+            zos = new ParallelZipOutputStream(archive, compressionLevel, compressionThreads);
+        } catch (RuntimeException e) {
+            archive.close();
+            throw e;
+        }
+        try {
+            zos.putNextEntry(new ZipEntry(DATA_FILE_NAME));
+            packageDataFile = dataFile;
+            // the CSV writer's close doesn't close the ZIP
+            packageDataStream = new FilterOutputStream(zos) {
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            extract(dataFile.getPath(), true);
+            if (packageDataStream != null) {
+                // the connector has written the data file itself
+                l.debug("Compressing the extracted data file " + dataFile);
+                copyPackageDataFile(dataFile, zos);
+            }
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry(GdcRESTApiWrapper.DLI_MANIFEST_FILENAME));
+            zos.write(manifest.getBytes("UTF-8"));
+            zos.closeEntry();
+            l.debug("Manifest written to the data package. Content: " + manifest);
+        } finally {
+            packageDataFile = null;
+            packageDataStream = null;
+            zos.close();
+        }
+    }
+
+    private static void copyPackageDataFile(File dataFile, OutputStream os) throws IOException {
+        if (!dataFile.exists())
+            throw new InvalidParameterException("The connector hasn't extracted any data.");
+        InputStream is = new FileInputStream(dataFile);
+        try {
+            byte[] buf = new byte[CSVWriter.BUFFER_SIZE];
+            int cnt;
+            while ((cnt = is.read(buf)) != -1) {
+                os.write(buf, 0, cnt);
+            }
+        } finally {
+            is.close();
+        }
+        if (!dataFile.delete())
+            l.debug("Can't delete the extracted data file " + dataFile);
+    }
+
+    /**
+     * Creates the UTF-8 CSV writer of the extracted data. When the file is the data file of the data package
+     * that is being extracted by {@link #extractPackage(String, String, String)}, the writer writes directly
+     * to the package ZIP entry.
+     *
+     * @param file the target file
+     * @return the CSV writer
+     * @throws IOException IO issues
+     */
+    protected CSVWriter createCsvWriter(String file) throws IOException {
+        if (packageDataStream != null && new File(file).getAbsoluteFile().equals(packageDataFile)) {
+            OutputStream os = packageDataStream;
+            packageDataStream = null;
+            return new CSVWriter(os);
+        }
+        return FileUtil.createUtf8CsvWriter(new File(file));
     }
 
     /**
@@ -328,10 +529,47 @@ public abstract class AbstractConnector implements Connector {
             if (w != null && w.equalsIgnoreCase("false"))
                 waitForFinish = false;
         }
+        cc.setParallelism(getParallelism(c));
+        cc.setCompression(getCompressionLevel(c), getCompressionThreads(c));
+        cc.getParseErrors().clear();
 
+        if (c.checkParam("concurrent") && "true".equalsIgnoreCase(c.getParam("concurrent"))) {
+            transferDataConcurrently(c, pid, cc, waitForFinish, p, ctx);
+            return;
+        }
         cc.extractAndTransfer(c, pid, cc, waitForFinish, p, ctx);
         l.debug("Data transfer finished.");
         l.info("Data transfer finished.");
+        logParseErrors(cc);
+    }
+
+    /**
+     * Submits the data transfer to the context's transfer pool. The transfer runs with a snapshot of the connector,
+     * so the subsequent commands can configure the connector for another dataset. The transfers are awaited before
+     * the next command that isn't a connector setup or another concurrent transfer.
+     *
+     * @param c             command
+     * @param pid           project id
+     * @param cc            the connector
+     * @param waitForFinish wait for the data load
+     * @param p             cli parameters
+     * @param ctx           current context
+     */
+    private static void transferDataConcurrently(final Command c, final String pid, Connector cc,
+                                                 final boolean waitForFinish, final CliParams p,
+                                                 final ProcessingContext ctx) {
+        final Connector snapshot = cc.copy();
+        final String dataset = (cc.getSchema() != null && cc.getSchema().getName() != null) ?
+                cc.getSchema().getName() : cc.getClass().getSimpleName();
+        ctx.getTransferPool(getConcurrency(c)).submit(dataset, new Callable<Object>() {
+            public Object call() throws Exception {
+                snapshot.extractAndTransfer(c, pid, snapshot, waitForFinish, p, ctx);
+                l.info("Data transfer of the dataset " + dataset + " finished.");
+                logParseErrors(snapshot);
+                return null;
+            }
+        });
+        l.info("Data transfer of the dataset " + dataset + " started.");
     }
 
     /**
@@ -347,10 +585,111 @@ public abstract class AbstractConnector implements Connector {
         l.debug("Dumping data.");
         Connector cc = ctx.getConnectorMandatory();
         String csvFile = c.getParamMandatory("csvFile");
+        cc.setParallelism(getParallelism(c));
         c.paramsProcessed();
+        cc.getParseErrors().clear();
 
         cc.dump(csvFile);
         l.info("Data dump finished. Data dumped into the file '" + csvFile + "'");
+        logParseErrors(cc);
+    }
+
+    /**
+     * Logs the number of the values that couldn't be parsed during the last extract
+     *
+     * @param cc the connector
+     */
+    private static void logParseErrors(Connector cc) {
+        ParseErrors errors = cc.getParseErrors();
+        long cnt = errors.getCount();
+        if (cnt > 0) {
+            l.info("Total number of the values that couldn't be parsed: " + cnt + " " + errors.getCounts());
+        }
+    }
+
+    /**
+     * Parses the optional parallelism command parameter
+     *
+     * @param c command
+     * @return number of the transformation threads
+     */
+    protected static int getParallelism(Command c) {
+        String p = c.getParam("parallelism");
+        if (p == null || p.length() <= 0)
+            return 1;
+        try {
+            int n = Integer.parseInt(p.trim());
+            if (n > 0)
+                return n;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new InvalidParameterException("The parallelism parameter must be a positive integer. Found '" + p + "'.");
+    }
+
+    /**
+     * Parses the optional compression command parameter (STORE | DEFAULT | 1-9)
+     *
+     * @param c command
+     * @return the compression level
+     */
+    public static int getCompressionLevel(Command c) {
+        String p = c.getParam("compression");
+        if (p == null || p.length() <= 0 || "DEFAULT".equalsIgnoreCase(p.trim()))
+            return Deflater.DEFAULT_COMPRESSION;
+        if ("STORE".equalsIgnoreCase(p.trim()))
+            return ParallelZipOutputStream.STORE;
+        try {
+            int n = Integer.parseInt(p.trim());
+            if (n >= Deflater.BEST_SPEED && n <= Deflater.BEST_COMPRESSION)
+                return n;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new InvalidParameterException("The compression parameter must be STORE, DEFAULT or a level 1-9. Found '"
+                + p + "'.");
+    }
+
+    /**
+     * Parses the optional compressionThreads command parameter
+     *
+     * @param c command
+     * @return number of the compression threads
+     */
+    public static int getCompressionThreads(Command c) {
+        String p = c.getParam("compressionThreads");
+        if (p == null || p.length() <= 0)
+            return 1;
+        try {
+            int n = Integer.parseInt(p.trim());
+            if (n > 0)
+                return n;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new InvalidParameterException("The compressionThreads parameter must be a positive integer. Found '"
+                + p + "'.");
+    }
+
+    /**
+     * Parses the optional concurrency command parameter
+     *
+     * @param c command
+     * @return number of the concurrent transfers
+     */
+    protected static int getConcurrency(Command c) {
+        String p = c.getParam("concurrency");
+        if (p == null || p.length() <= 0)
+            return TransferPool.DEFAULT_CONCURRENCY;
+        try {
+            int n = Integer.parseInt(p.trim());
+            if (n > 0)
+                return n;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new InvalidParameterException("The concurrency parameter must be a positive integer. Found '"
+                + p + "'.");
     }
 
     public static List<Column> populateColumnsFromSchema(SourceSchema schema) {
@@ -453,7 +792,12 @@ public abstract class AbstractConnector implements Connector {
 
 
         String incremental = c.getParam("incremental");
+        boolean pipelined = "true".equalsIgnoreCase(c.getParam("pipelined"));
+        boolean batch = "true".equalsIgnoreCase(c.getParam("batch"));
+        boolean verify = "true".equalsIgnoreCase(c.getParam("verify"));
         c.paramsProcessed();
+        if (pipelined && batch)
+            throw new InvalidParameterException("The pipelined and batch parameters can't be combined.");
 
         if (incremental != null && incremental.length() > 0 &&
                 incremental.equalsIgnoreCase("true")) {
@@ -461,16 +805,27 @@ public abstract class AbstractConnector implements Connector {
             setIncremental(columns);
         }
 
-        // extract the data to the CSV that is going to be transferred to the server
-        cc.extract(tmpDir.getAbsolutePath());
-
-        cc.deploy(sli, columns, tmpDir.getAbsolutePath(), archivePath);
-        // transfer the data package to the GoodData server
-        ctx.getFtpApi(p).transferDir(archivePath);
-        // kick the GooDData server to load the data package to the project
-        String taskUri = ctx.getRestApi(p).startLoading(pid, archiveName);
-        if (waitForFinish) {
-            checkLoadingStatus(taskUri, tmpDir.getName(), p, ctx);
+        if (batch) {
+            // the data are loaded later together with the other datasets of the batch (see TransferBatch)
+            cc.extract(tmpDir.getAbsolutePath());
+            ctx.getDataPackageBatch().add("dataset." + ssn, sli.getSLIManifest(columns),
+                    new File(tmpDir, DATA_FILE_NAME));
+            l.info("Dataset dataset." + ssn + " added to the batch load.");
+        } else {
+            if (pipelined) {
+                // stream the data package to the GoodData server while the data are extracted
+                extractAndTransferPackage(cc, sli, columns, tmpDir.getAbsolutePath(), archivePath, ctx.getFtpApi(p));
+            } else {
+                // extract the data to the data package that is going to be transferred to the server
+                cc.extractPackage(sli, columns, tmpDir.getAbsolutePath(), archivePath);
+                // transfer the data package to the GoodData server
+                ctx.getFtpApi(p).transferDir(archivePath, verify);
+            }
+            // kick the GooDData server to load the data package to the project
+            String taskUri = ctx.getRestApi(p).startLoading(pid, archiveName);
+            if (waitForFinish) {
+                checkLoadingStatus(taskUri, tmpDir.getName(), p, ctx);
+            }
         }
         //cleanup
         l.debug("Cleaning the temporary files.");
@@ -480,6 +835,69 @@ public abstract class AbstractConnector implements Connector {
         l.debug("Data extract finished.");
     }
 
+    /**
+     * Extracts the data package and transfers it to the server at the same time. The package is passed to the
+     * upload thread through a bounded {@link BlockingPipe}, so the extraction waits when the upload falls behind
+     * and the memory use doesn't depend on the package size. A failure of either side stops the other one.
+     *
+     * @param cc          the connector
+     * @param sli         the SLI interface
+     * @param columns     the SLI columns
+     * @param dir         temporary directory of the connectors that extract to a data file first
+     * @param archiveName the name of the transferred ZIP archive
+     * @param api         the data transfer API
+     * @throws IOException          IO issues
+     * @throws InterruptedException interrupted while waiting for the upload
+     */
+    protected static void extractAndTransferPackage(Connector cc, SLI sli, List<Column> columns, String dir,
+                                                    final String archiveName, final GdcDataTransferAPI api)
+            throws IOException, InterruptedException {
+        final BlockingPipe pipe = new BlockingPipe();
+        Thread upload = new Thread("GdcUpload-" + new File(archiveName).getName()) {
+            public void run() {
+                InputStream is = pipe.getInputStream();
+                try {
+                    api.transferDir(archiveName, is);
+                    if (is.read() != -1)
+                        throw new IOException("The data package hasn't been transferred completely.");
+                } catch (Throwable e) {
+                    pipe.fail(e);
+                }
+            }
+        };
+        upload.setDaemon(true);
+        upload.start();
+        OutputStream os = pipe.getOutputStream();
+        try {
+            // the pipe is closed only when the whole package has been extracted
+            cc.extractPackage(sli, columns, dir, new FilterOutputStream(os) {
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                public void close() throws IOException {
+                    flush();
+                }
+            });
+            os.close();
+        } catch (Throwable e) {
+            pipe.fail(e);
+        } finally {
+            upload.join();
+        }
+        Throwable failure = pipe.getFailure();
+        if (failure != null) {
+            l.debug("Data package transfer failed.", failure);
+            if (failure instanceof IOException)
+                throw (IOException) failure;
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure instanceof Error)
+                throw (Error) failure;
+            throw new InternalErrorException(failure);
+        }
+    }
+
     /**
      * Sets the incremental loading status for a part
      *
@@ -503,14 +921,33 @@ public abstract class AbstractConnector implements Connector {
      * @throws InterruptedException internal problem with making file writable
      */
     protected void checkLoadingStatus(String taskUri, String tmpDir, CliParams p, ProcessingContext ctx) throws InterruptedException, IOException {
+        Map<String, String> logs = waitForLoading(taskUri, tmpDir, p, ctx);
+        if (logs != null)
+            result = logs;
+    }
+
+    /**
+     * Waits for the data integration process in the GoodData platform
+     *
+     * @param taskUri the uri where the task status is determined
+     * @param tmpDir  the remote directory of the data package
+     * @param p       cli parameters
+     * @param ctx     current context
+     * @return the transfer logs when the data have been loaded with warnings, null otherwise
+     * @throws IOException          IO issues
+     * @throws InterruptedException internal problem with making file writable
+     */
+    protected static Map<String, String> waitForLoading(String taskUri, String tmpDir, CliParams p,
+                                                        ProcessingContext ctx) throws InterruptedException, IOException {
         l.debug("Checking data transfer status.");
         String status = "";
         int retryCount = 0;
+        PollSchedule poll = new PollSchedule();
         while (!"OK".equalsIgnoreCase(status) && !"ERROR".equalsIgnoreCase(status) && !"WARNING".equalsIgnoreCase(status)) {
             try {
+                poll.sleep();
                 status = ctx.getRestApi(p).getLoadingStatus(taskUri);
                 l.debug("Loading status = " + status);
-                Thread.sleep(Constants.POLL_INTERVAL);
             }
             catch (HttpMethodException e) {
                 retryCount++;
@@ -525,7 +962,7 @@ public abstract class AbstractConnector implements Connector {
             l.info("Data successfully loaded.");
         } else if ("WARNING".equalsIgnoreCase(status)) {
             l.warn("Data loading succeeded with warnings. Status: " + status);
-            result = ctx.getFtpApi(p).getTransferLogs(tmpDir);
+            Map<String, String> result = ctx.getFtpApi(p).getTransferLogs(tmpDir);
             for (String file : result.keySet()) {
                 if (file.endsWith(".json"))
                     l.info(file + ":\n" + result.get(file));
@@ -534,6 +971,7 @@ public abstract class AbstractConnector implements Connector {
                 if (!file.endsWith(".json"))
                     l.info(file + ":\n" + result.get(file));
             }
+            return result;
         } else {
             l.error("Data loading failed. Status: " + status);
             Map<String, String> result = ctx.getFtpApi(p).getTransferLogs(tmpDir);
@@ -548,7 +986,66 @@ public abstract class AbstractConnector implements Connector {
             throw new GdcIntegrationErrorException("Data successfully transferred but failed to load to the analytical project. " +
                     "This is usually due to issues with data integrity (rows with different number of columns etc.).");
         }
+        return null;
+    }
 
+    /**
+     * Transfers the datasets collected by the TransferData(batch="true") commands to the GoodData project in one
+     * data package that is loaded with a single pull
+     *
+     * @param batch         the batch
+     * @param pid           project id
+     * @param waitForFinish wait for the data load
+     * @param p             cli parameters
+     * @param ctx           current context
+     * @throws IOException          IO issues
+     * @throws InterruptedException internal problem with making file writable
+     */
+    public static void transferBatch(DataPackageBatch batch, String pid, boolean waitForFinish, CliParams p,
+                                     ProcessingContext ctx) throws IOException, InterruptedException {
+        transferBatch(batch, pid, waitForFinish, Deflater.DEFAULT_COMPRESSION, 1, false, p, ctx);
+    }
+
+    /**
+     * Transfers the datasets collected by the TransferData(batch="true") commands to the GoodData project in one
+     * data package that is loaded with a single pull
+     *
+     * @param batch              the batch
+     * @param pid                project id
+     * @param waitForFinish      wait for the data load
+     * @param compressionLevel   the data package compression level (see {@link #getCompressionLevel(Command)})
+     * @param compressionThreads number of the data package compression threads
+     * @param verify             download the transferred data package to verify its checksum
+     * @param p                  cli parameters
+     * @param ctx                current context
+     * @throws IOException          IO issues
+     * @throws InterruptedException internal problem with making file writable
+     */
+    public static void transferBatch(DataPackageBatch batch, String pid, boolean waitForFinish, int compressionLevel,
+                                     int compressionThreads, boolean verify, CliParams p, ProcessingContext ctx)
+            throws IOException, InterruptedException {
+        l.debug("Transferring the batch load " + batch.getDatasets());
+        File tmpZipDir = FileUtil.createTempDir();
+        String archiveName = batch.getName();
+        MDC.put("GdcDataPackageDir", archiveName);
+        try {
+            String archivePath = tmpZipDir.getAbsolutePath() + System.getProperty("file.separator") +
+                    archiveName + ".zip";
+            batch.deploy(archivePath, compressionLevel, compressionThreads);
+            // transfer the data package to the GoodData server
+            ctx.getFtpApi(p).transferDir(archivePath, verify);
+            // kick the GooDData server to load all datasets of the data package to the project
+            String taskUri = ctx.getRestApi(p).startLoading(pid, archiveName);
+            if (waitForFinish) {
+                waitForLoading(taskUri, archiveName, p, ctx);
+            }
+        } finally {
+            l.debug("Cleaning the temporary files.");
+            batch.delete();
+            FileUtil.recursiveDelete(tmpZipDir);
+            MDC.remove("GdcDataPackageDir");
+        }
+        l.info("Batch load of " + batch.getDatasets().size() + " datasets finished.");
     }
 
 
@@ -646,6 +1143,62 @@ public abstract class AbstractConnector implements Connector {
         return projectId;
     }
 
+    public String getExpressionEngine() {
+        return expressionEngine;
+    }
+
+    public void setExpressionEngine(String expressionEngine) {
+        this.expressionEngine = Transformer.checkExpressionEngine(expressionEngine);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ParseErrors getParseErrors() {
+        return parseErrors;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Connector copy() {
+        try {
+            AbstractConnector c = (AbstractConnector) clone();
+            c.parseErrors = new ParseErrors();
+            c.result = null;
+            c.packageDataFile = null;
+            c.packageDataStream = null;
+            return c;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalErrorException("Can't copy the connector " + getClass().getSimpleName() + ".", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0)
+            throw new InvalidParameterException("The parallelism must be a positive integer.");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setCompression(int level, int threads) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new InvalidParameterException("Invalid compression level " + level + ".");
+        if (threads <= 0)
+            throw new InvalidParameterException("The number of compression threads must be a positive integer.");
+        this.compressionLevel = level;
+        this.compressionThreads = threads;
+    }
+
     public void setProjectId(String projectId) {
         this.projectId = projectId;
     }
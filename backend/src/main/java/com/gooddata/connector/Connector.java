@@ -30,8 +30,10 @@ import com.gooddata.processor.CliParams;
 import com.gooddata.processor.Command;
 import com.gooddata.processor.Executor;
 import com.gooddata.processor.ProcessingContext;
+import com.gooddata.transform.ParseErrors;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -95,6 +97,36 @@ public interface Connector extends Executor {
      */
     public void setSchema(SourceSchema schema);
 
+    /**
+     * Sets the number of threads that transform the extracted rows
+     *
+     * @param parallelism number of the transformation threads
+     */
+    public void setParallelism(int parallelism);
+
+    /**
+     * Sets the compression of the data packages
+     *
+     * @param level   the compression level (0 stores the data, -1 is the default level)
+     * @param threads number of the compression threads
+     */
+    public void setCompression(int level, int threads);
+
+    /**
+     * Returns the value parsing errors of the last extract aggregated per column
+     *
+     * @return the parse errors
+     */
+    public ParseErrors getParseErrors();
+
+    /**
+     * Creates a snapshot of the connector that runs a transfer independently of this connector. The snapshot shares
+     * the configuration (schema, data source, project) and has its own run statistics.
+     *
+     * @return the connector snapshot
+     */
+    public Connector copy();
+
     /**
      * Create the GoodData data package with the ALL snapshots data
      *
@@ -106,4 +138,28 @@ public interface Connector extends Executor {
      */
     public void deploy(SLI sli, List<Column> columns, String dir, String archiveName) throws IOException;
 
+    /**
+     * Extracts the source data directly to the GoodData data package in a single pass. The data are written
+     * to the ZIP archive while they are extracted, the manifest is the last archive entry.
+     *
+     * @param sli         the SLI interface
+     * @param columns     the SLI columns
+     * @param dir         temporary directory of the connectors that extract to a data file first
+     * @param archiveName the name of the target ZIP archive
+     * @throws IOException IO issues
+     */
+    public void extractPackage(SLI sli, List<Column> columns, String dir, String archiveName) throws IOException;
+
+    /**
+     * Extracts the source data directly to the GoodData data package that is written to the stream. The stream
+     * is closed when the package is complete.
+     *
+     * @param sli     the SLI interface
+     * @param columns the SLI columns
+     * @param dir     temporary directory of the connectors that extract to a data file first
+     * @param archive the target ZIP archive stream
+     * @throws IOException IO issues
+     */
+    public void extractPackage(SLI sli, List<Column> columns, String dir, OutputStream archive) throws IOException;
+
 }
@@ -24,6 +24,7 @@
 package com.gooddata.integration.datatransfer;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -43,6 +44,26 @@ public interface GdcDataTransferAPI {
      */
     public void transferDir(String archiveName) throws IOException;
 
+    /**
+     * Transfers a local directory to the remote GDC server
+     *
+     * @param archiveName the name of the ZIP archive that is going to be transferred
+     * @param verify      true to download the transferred archive again to verify its checksum when the server
+     *                    doesn't report the checksum
+     * @throws IOException in case of IO issues
+     */
+    public void transferDir(String archiveName, boolean verify) throws IOException;
+
+    /**
+     * Transfers the ZIP archive that is read from the stream to the remote GDC server. The archive is sent
+     * while it is being read, so it can be produced concurrently.
+     *
+     * @param archiveName the name of the ZIP archive that is going to be transferred
+     * @param archive     the archive content
+     * @throws IOException in case of IO issues
+     */
+    public void transferDir(String archiveName, InputStream archive) throws IOException;
+
     /**
      * GET the transfer logs from the server
      *
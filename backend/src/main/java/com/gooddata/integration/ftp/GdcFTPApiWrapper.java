@@ -78,6 +78,33 @@ public class GdcFTPApiWrapper implements GdcDataTransferAPI {
      * @throws IOException in case of IO issues
      */
     public void transferDir(String archiveName) throws IOException {
+        transferDir(archiveName, false);
+    }
+
+    /**
+     * FTP transfers a local directory to the remote GDC FTP server, the transferred archive isn't verified
+     *
+     * @param archiveName the name of the ZIP archive that is going to be transferred
+     * @param verify      ignored
+     * @throws IOException in case of IO issues
+     */
+    public void transferDir(String archiveName, boolean verify) throws IOException {
+        FileInputStream fis = new FileInputStream(archiveName);
+        try {
+            transferDir(archiveName, fis);
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * FTP transfers the ZIP archive that is read from the stream to the remote GDC FTP server
+     *
+     * @param archiveName the name of the ZIP archive that is going to be transferred
+     * @param archive     the archive content
+     * @throws IOException in case of IO issues
+     */
+    public void transferDir(String archiveName, InputStream archive) throws IOException {
         l.debug("Transfering archive " + archiveName);
         try {
             File file = new File(archiveName);
@@ -94,7 +121,7 @@ public class GdcFTPApiWrapper implements GdcDataTransferAPI {
                             if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
                                 client.setFileType(FTPClient.BINARY_FILE_TYPE);
                                 if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                                    client.storeFile(file.getName(), new FileInputStream(file));
+                                    client.storeFile(file.getName(), archive);
                                     if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
                                         client.rename(file.getName(), DEFAULT_ARCHIVE_NAME);
                                         if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
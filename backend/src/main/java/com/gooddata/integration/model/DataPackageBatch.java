@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.integration.model;
+
+import com.gooddata.exception.InvalidParameterException;
+import com.gooddata.integration.rest.GdcRESTApiWrapper;
+import com.gooddata.util.FileUtil;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data package that loads multiple datasets with a single pull. Every dataset has its own CSV file in the package,
+ * the manifest lists the SLI manifests of all datasets (dataSetSLIManifestList).
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class DataPackageBatch {
+
+    private static Logger l = Logger.getLogger(DataPackageBatch.class);
+
+    private final File dir;
+    private final List<String> datasets = new ArrayList<String>();
+    private final JSONArray manifests = new JSONArray();
+
+    /**
+     * Creates an empty batch in a new temporary directory
+     *
+     * @throws IOException if the directory can't be created
+     */
+    public DataPackageBatch() throws IOException {
+        dir = FileUtil.createTempDir();
+    }
+
+    /**
+     * Adds the dataset's data to the batch. The data file is moved to the batch directory.
+     *
+     * @param dataset  the dataset identifier (e.g. dataset.quotes)
+     * @param manifest the dataset's SLI manifest (dataSetSLIManifest)
+     * @param dataFile the dataset's CSV data
+     * @throws IOException IO issues
+     */
+    public synchronized void add(String dataset, String manifest, File dataFile) throws IOException {
+        if (datasets.contains(dataset))
+            throw new InvalidParameterException("The dataset " + dataset + " has already been added to the batch " +
+                    "load. Use the TransferBatch command before loading the dataset again.");
+        if (!dataFile.exists())
+            throw new InvalidParameterException("The connector hasn't extracted any data.");
+        String fileName = dataset + ".csv";
+        File target = new File(dir, fileName);
+        if (!dataFile.renameTo(target)) {
+            InputStream is = new FileInputStream(dataFile);
+            OutputStream os = new FileOutputStream(target);
+            try {
+                FileUtil.copy(is, os);
+            } finally {
+                os.close();
+                is.close();
+            }
+            if (!dataFile.delete())
+                l.debug("Can't delete the extracted data file " + dataFile);
+        }
+        JSONObject m = JSONObject.fromObject(manifest);
+        m.getJSONObject("dataSetSLIManifest").put("file", fileName);
+        manifests.add(m);
+        datasets.add(dataset);
+        l.debug("Dataset " + dataset + " added to the batch load " + dir.getName() + ".");
+    }
+
+    /**
+     * Writes the manifest and compresses the batch to the data package
+     *
+     * @param archiveName the name of the target ZIP archive
+     * @param level       the compression level
+     * @param threads     number of the compression threads
+     * @throws IOException IO issues
+     */
+    public synchronized void deploy(String archiveName, int level, int threads) throws IOException {
+        String fn = dir.getAbsolutePath() + System.getProperty("file.separator") +
+                GdcRESTApiWrapper.DLI_MANIFEST_FILENAME;
+        String manifest = getManifest();
+        FileUtil.writeStringToFile(manifest, fn);
+        l.debug("Manifest file written to file '" + fn + "'. Content: " + manifest);
+        FileUtil.compressDir(dir.getAbsolutePath(), archiveName, level, threads);
+    }
+
+    /**
+     * Returns the manifest of the whole batch
+     *
+     * @return the manifest with the dataSetSLIManifestList of all datasets
+     */
+    public synchronized String getManifest() {
+        JSONObject omf = new JSONObject();
+        omf.put("dataSetSLIManifestList", manifests);
+        return omf.toString(2);
+    }
+
+    /**
+     * Deletes the batch temporary files
+     */
+    public void delete() {
+        FileUtil.recursiveDelete(dir);
+    }
+
+    public synchronized List<String> getDatasets() {
+        return new ArrayList<String>(datasets);
+    }
+
+    public synchronized boolean isEmpty() {
+        return datasets.isEmpty();
+    }
+
+    /**
+     * The batch name (used as the remote directory of the data package)
+     *
+     * @return the batch name
+     */
+    public String getName() {
+        return dir.getName();
+    }
+
+}
@@ -31,6 +31,7 @@ import com.gooddata.integration.model.SLI;
 import com.gooddata.integration.rest.configuration.NamePasswordConfiguration;
 import com.gooddata.util.FileUtil;
 import com.gooddata.util.NetUtil;
+import com.gooddata.util.PollSchedule;
 
 import net.sf.json.JSON;
 import net.sf.json.JSONArray;
@@ -109,7 +110,7 @@ public class GdcRESTApiWrapper {
     public static final String QUERY_DIMENSIONS = "dimensions";
     public static final String QUERY_PREFIX = "/query/";
 
-    protected HttpClient client;
+    protected volatile HttpClient client;
     protected NamePasswordConfiguration config;
     private JSONObject userLogin = null;
     private JSONObject profile;
@@ -134,8 +135,7 @@ public class GdcRESTApiWrapper {
      */
     public GdcRESTApiWrapper(NamePasswordConfiguration config) {
         this.config = config;
-        client = new HttpClient();
-        NetUtil.configureHttpProxy(client);
+        client = NetUtil.createHttpClient();
     }
 
     /**
@@ -143,7 +143,7 @@ public class GdcRESTApiWrapper {
      *
      * @throws HttpMethodException
      */
-    public void login() throws HttpMethodException {
+    public synchronized void login() throws HttpMethodException {
         //logout();
         l.debug("Logging into GoodData.");
         JSONObject loginStructure = getLoginStructure();
@@ -222,7 +222,7 @@ public class GdcRESTApiWrapper {
      *
      * @throws HttpMethodException
      */
-    public void logout() throws HttpMethodException {
+    public synchronized void logout() throws HttpMethodException {
         if (userLogin == null)
             return;
         l.debug("Logging out.");
@@ -235,8 +235,7 @@ public class GdcRESTApiWrapper {
         } finally {
             logoutDelete.releaseConnection();
         }
-        this.client = new HttpClient();
-        NetUtil.configureHttpProxy( client );
+        this.client = NetUtil.createHttpClient();
     }
 
     /**
@@ -832,6 +831,7 @@ public class GdcRESTApiWrapper {
 
         int retryCnt = Constants.MAX_RETRY;
         boolean hasFinished = false;
+        PollSchedule poll = new PollSchedule();
         while (retryCnt-- > 0 && !hasFinished) {
             try {
                 String dataResultUri = executeReportDefinition(resp.getUri());
@@ -858,7 +858,7 @@ public class GdcRESTApiWrapper {
             } catch (HttpMethodNotFinishedYetException e) {
                 l.debug("computeMetric: Waiting for DataResult");
                 try {
-                    Thread.sleep(Constants.POLL_INTERVAL);
+                    poll.sleep();
                 } catch (InterruptedException ex) {
                     // do nothing
                 }
@@ -879,6 +879,7 @@ public class GdcRESTApiWrapper {
         String retVal = "";
         int retryCnt = Constants.MAX_RETRY;
         boolean hasFinished = false;
+        PollSchedule poll = new PollSchedule();
         while (retryCnt-- > 0 && !hasFinished) {
             try {
                 String dataResultUri = executeReport(reportUri).getJSONObject("execResult").getString("dataResult");
@@ -975,7 +976,7 @@ public class GdcRESTApiWrapper {
             } catch (HttpMethodNotFinishedYetException e) {
                 l.debug("computeReport: Waiting for DataResult");
                 try {
-                    Thread.sleep(Constants.POLL_INTERVAL);
+                    poll.sleep();
                 } catch (InterruptedException ex) {
                     // do nothing
                 }
@@ -1145,6 +1146,7 @@ public class GdcRESTApiWrapper {
         byte[] buf = null;
         String qUri = getServerUrl() + uri;
         boolean finished = false;
+        PollSchedule poll = new PollSchedule();
         do {
             HttpMethod qGet = createGetMethod(qUri);
             try {
@@ -1154,7 +1156,7 @@ public class GdcRESTApiWrapper {
             } catch (HttpMethodNotFinishedYetException e) {
                 l.debug("Waiting for exporter to finish.");
                 try {
-                    Thread.currentThread().sleep(Constants.POLL_INTERVAL);
+                    poll.sleep();
                 } catch (InterruptedException ex) {
                     // do nothing
                 }
@@ -1399,11 +1401,12 @@ public class GdcRESTApiWrapper {
             if(taskmanUri != null && taskmanUri.length()>0) {
                 l.debug("Checking async MAQL DDL execution status.");
                 TaskmanStatus status = new TaskmanStatus("",new String[]{});
+                PollSchedule poll = new PollSchedule();
                 while (!"OK".equalsIgnoreCase(status.getStatus()) && !"ERROR".equalsIgnoreCase(status.getStatus()) &&
                         !"WARNING".equalsIgnoreCase(status.getStatus())) {
+                    poll.sleep();
                     status = getDetailedTaskManStatus(taskmanUri);
                     l.debug("Async MAQL DDL status = " + status.getStatus());
-                    Thread.sleep(Constants.POLL_INTERVAL);
                 }
                 l.info("Async MAQL DDL finished with status " + status.getStatus());
                 if (!("OK".equalsIgnoreCase(status.getStatus()) || "WARNING".equalsIgnoreCase(status.getStatus()))) {
@@ -2406,6 +2409,10 @@ public class GdcRESTApiWrapper {
     private void executeMethodOkOnly(HttpMethod method, boolean reloginOn401, int retries) throws HttpMethodException, IOException {
         try {
             client.executeMethod(method);
+            if (method.getStatusCode() < HttpStatus.SC_BAD_REQUEST && method.getResponseHeader("Retry-After") != null) {
+                // the next poll of an async task waits as long as the server asks
+                PollSchedule.retryAfter(method.getResponseHeader("Retry-After").getValue());
+            }
 
             /* HttpClient is rather unsupportive when it comes to robust interpreting
              * of response classes; which is mandated by RFC and extensively used in
@@ -2536,7 +2543,7 @@ public class GdcRESTApiWrapper {
      *
      * @return the profile of the currently logged user
      */
-    protected JSONObject getProfile() {
+    protected synchronized JSONObject getProfile() {
         return profile;
     }
 
@@ -2970,6 +2977,7 @@ public class GdcRESTApiWrapper {
         try {
             String response = "";
             boolean isFinished = false;
+            PollSchedule poll = new PollSchedule();
             while (!isFinished) {
                 try {
                     response = executeMethodOk(ptm);
@@ -2977,7 +2985,7 @@ public class GdcRESTApiWrapper {
                 } catch (HttpMethodNotFinishedYetException e) {
                     l.debug("getTaskManStatus: Waiting for status");
                     try {
-                        Thread.sleep(Constants.POLL_INTERVAL);
+                        poll.sleep();
                     } catch (InterruptedException ex) {
                         // do nothing
                     }
@@ -3032,6 +3040,7 @@ public class GdcRESTApiWrapper {
         try {
             String response = "";
             boolean isFinished = false;
+            PollSchedule poll = new PollSchedule();
             while (!isFinished) {
                 try {
                     response = executeMethodOk(ptm);
@@ -3039,7 +3048,7 @@ public class GdcRESTApiWrapper {
                 } catch (HttpMethodNotFinishedYetException e) {
                     l.debug("getTaskManStatus: Waiting for status");
                     try {
-                        Thread.sleep(Constants.POLL_INTERVAL);
+                        poll.sleep();
                     } catch (InterruptedException ex) {
                         // do nothing
                     }
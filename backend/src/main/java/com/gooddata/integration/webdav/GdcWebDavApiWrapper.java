@@ -35,7 +35,7 @@ import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.PutMethod;
-import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.apache.jackrabbit.webdav.DavConstants;
 import org.apache.jackrabbit.webdav.DavException;
 import org.apache.jackrabbit.webdav.MultiStatus;
@@ -45,8 +45,8 @@ import org.apache.jackrabbit.webdav.client.methods.PropFindMethod;
 import org.apache.log4j.Logger;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -73,32 +73,68 @@ public class GdcWebDavApiWrapper implements GdcDataTransferAPI {
      */
     public GdcWebDavApiWrapper(NamePasswordConfiguration config) {
         this.config = config;
-        client = new HttpClient();
-
-        NetUtil.configureHttpProxy(client);
+        client = NetUtil.createHttpClient();
 
         Credentials creds = new UsernamePasswordCredentials(this.config.getUsername(), this.config.getPassword());
         client.getState().setCredentials(AuthScope.ANY, creds);
     }
 
     /**
-     * WebDav transfers a local directory to the remote GDC WebDav server
+     * WebDav transfers a local directory to the remote GDC WebDav server. The archive is uploaded in parts that are
+     * retried separately and its length is verified (see {@link ResumableUpload}).
      *
      * @param archiveName the name of the ZIP archive that is going to be transferred
      * @throws java.io.IOException in case of IO issues
      */
     public void transferDir(String archiveName) throws IOException {
+        transferDir(archiveName, false);
+    }
+
+    /**
+     * WebDav transfers a local directory to the remote GDC WebDav server. The archive is uploaded in parts that are
+     * retried separately and its length and the checksum reported by the server are verified. The archive is
+     * downloaded again to verify its checksum if the server doesn't report it and the verification is enabled
+     * (see {@link ResumableUpload}).
+     *
+     * @param archiveName the name of the ZIP archive that is going to be transferred
+     * @param verify      true to download the uploaded archive to verify its checksum
+     * @throws java.io.IOException in case of IO issues
+     */
+    public void transferDir(String archiveName, boolean verify) throws IOException {
         l.debug("Transfering archive " + archiveName);
         File file = new File(archiveName);
         String dir = file.getName().split("\\.")[0];
         MkColMethod mkdir = new MkColMethod(this.config.getUrl() + WEBDAV_URI + dir);
         executeMethodOk(mkdir);
+        ResumableUpload upload = new ResumableUpload(client, file, this.config.getUrl() + WEBDAV_URI + dir + "/" +
+                DEFAULT_ARCHIVE_NAME);
+        upload.setVerifyContent(verify);
+        upload.upload();
+        l.debug("Transferred archive " + archiveName);
+    }
+
+    /**
+     * WebDav transfers the ZIP archive that is read from the stream to the remote GDC WebDav server. The archive
+     * is streamed with the chunked transfer encoding while it is being read, so its size needn't be known.
+     *
+     * @param archiveName the name of the ZIP archive that is going to be transferred
+     * @param archive     the archive content
+     * @throws java.io.IOException in case of IO issues
+     */
+    public void transferDir(String archiveName, InputStream archive) throws IOException {
+        l.debug("Streaming archive " + archiveName);
+        String dir = new File(archiveName).getName().split("\\.")[0];
+        MkColMethod mkdir = new MkColMethod(this.config.getUrl() + WEBDAV_URI + dir);
+        executeMethodOk(mkdir);
         PutMethod put = new PutMethod(this.config.getUrl() + WEBDAV_URI + dir + "/" + DEFAULT_ARCHIVE_NAME);
-        FileInputStream fis = new FileInputStream(file);
-        RequestEntity requestEntity = new InputStreamRequestEntity(fis);
-        put.setRequestEntity(requestEntity);
-        executeMethodOk(put);
-        fis.close();
+        // the streamed body can't be repeated, the authentication challenge must come before the body is sent
+        put.getParams().setBooleanParameter(HttpMethodParams.USE_EXPECT_CONTINUE, true);
+        put.setRequestEntity(new InputStreamRequestEntity(archive, InputStreamRequestEntity.CONTENT_LENGTH_CHUNKED));
+        try {
+            executeMethodOk(put);
+        } finally {
+            put.releaseConnection();
+        }
         l.debug("Transferred archive " + archiveName);
     }
 
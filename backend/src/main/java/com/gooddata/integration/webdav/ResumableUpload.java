@@ -0,0 +1,511 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.integration.webdav;
+
+import com.gooddata.Constants;
+import com.gooddata.exception.HttpMethodException;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Resumable upload of a local file to a WebDAV resource. The file is sent in fixed size parts. Every part is
+ * a separate PUT with the known Content-Length and the Content-Range of the part, so a failed part is retried
+ * alone and the parts that have been transferred already aren't sent again. The assembled resource is verified at
+ * the end with a HEAD request: its length must match the file, and its MD5 checksum must match when the server
+ * reports one (Content-MD5, or an ETag that matches the MD5 of the file). The resource is downloaded again to compute
+ * the checksum only when the content verification is enabled (see {@link #setVerifyContent(boolean)}). When the
+ * server rejects the partial PUTs, or the assembled resource doesn't match the file (e.g. the server ignores the
+ * Content-Range), the whole file is sent in a single retried PUT.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ResumableUpload {
+
+    private static Logger l = Logger.getLogger(ResumableUpload.class);
+
+    /**
+     * Default part size
+     */
+    public static final long DEFAULT_PART_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Default number of the retries of a failed part
+     */
+    public static final int DEFAULT_MAX_RETRIES = 5;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // the backoff of the retries doesn't grow beyond 2^MAX_BACKOFF_SHIFT retry intervals
+    private static final int MAX_BACKOFF_SHIFT = 5;
+
+    private final HttpClient client;
+    private final File file;
+    private final String url;
+    private long partSize = DEFAULT_PART_SIZE;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long retryInterval = Constants.RETRY_INTERVAL;
+    private boolean verifyContent = false;
+    private int retries = 0;
+
+    /**
+     * Creates the upload
+     *
+     * @param client the HTTP client with the credentials
+     * @param file   the uploaded file
+     * @param url    the target resource URL
+     */
+    public ResumableUpload(HttpClient client, File file, String url) {
+        this.client = client;
+        this.file = file;
+        this.url = url;
+    }
+
+    /**
+     * Uploads the file and verifies the checksum of the uploaded resource
+     *
+     * @throws IOException in case of IO issues that persist after the retries
+     * @throws HttpMethodException if the server refuses the upload or the uploaded resource doesn't match
+     */
+    public void upload() throws IOException {
+        long length = file.length();
+        String md5 = md5(file);
+        l.debug("Uploading " + file + " (" + length + " bytes, MD5 " + md5 + ") to " + url);
+        if (length > partSize) {
+            if (putParts(length) && verify(md5, length)) {
+                l.debug("Uploaded " + file + " in " + ((length + partSize - 1) / partSize) + " parts, " + retries +
+                        " retries.");
+                return;
+            }
+            l.info("The server doesn't support partial uploads, uploading the whole file " + file + ".");
+        }
+        put(0, length, length, false);
+        if (!verify(md5, length)) {
+            throw new HttpMethodException("The checksum of the uploaded file " + url + " doesn't match the local file " +
+                    file + ".");
+        }
+        l.debug("Uploaded " + file + ", " + retries + " retries.");
+    }
+
+    /**
+     * Sends the file in parts
+     *
+     * @param length the file length
+     * @return false if the server doesn't support the partial PUT
+     * @throws IOException in case of IO issues
+     */
+    private boolean putParts(long length) throws IOException {
+        for (long offset = 0; offset < length; offset += partSize) {
+            long partLength = Math.min(partSize, length - offset);
+            if (!put(offset, partLength, length, true)) {
+                return false;
+            }
+            // the server that ignores the Content-Range replaces the resource with the second part
+            if (offset == partSize) {
+                long remoteLength = getRemoteLength();
+                if (remoteLength >= 0 && remoteLength < offset + partLength) {
+                    l.debug("The server ignores the Content-Range, the resource has " + remoteLength + " bytes.");
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * PUTs a part of the file, the part is retried on the IO errors and on the server errors
+     *
+     * @param offset the part offset
+     * @param length the part length
+     * @param total  the file length
+     * @param ranged true to send the Content-Range of the part
+     * @return false if the server rejected the Content-Range
+     * @throws IOException in case of IO issues that persist after the retries
+     */
+    private boolean put(long offset, long length, long total, boolean ranged) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            PutMethod put = new PutMethod(url);
+            // don't send the part if the server is going to reject it anyway
+            put.getParams().setBooleanParameter(HttpMethodParams.USE_EXPECT_CONTINUE, true);
+            put.setRequestEntity(new FilePartRequestEntity(file, offset, length));
+            if (ranged) {
+                put.setRequestHeader("Content-Range", "bytes " + offset + "-" + (offset + length - 1) + "/" + total);
+            }
+            try {
+                int status = client.executeMethod(put);
+                if (status >= HttpStatus.SC_OK && status < HttpStatus.SC_MULTIPLE_CHOICES) {
+                    return true;
+                }
+                if (ranged && isRangeRejected(status)) {
+                    l.debug("The server rejected the partial PUT: " + status + " " + put.getStatusText());
+                    return false;
+                }
+                if (!isRetryable(status) || attempt >= maxRetries) {
+                    throw new HttpMethodException("Error uploading the file " + file + " to " + url + ": " + status +
+                            " " + put.getStatusText());
+                }
+                l.debug("Upload of the part at " + offset + " failed with " + status + " " + put.getStatusText() +
+                        ". Retry #" + (attempt + 1) + ".");
+            } catch (IOException e) {
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                l.debug("Upload of the part at " + offset + " failed with '" + e.getMessage() + "'. Retry #" +
+                        (attempt + 1) + ".");
+            } finally {
+                put.releaseConnection();
+            }
+            retries++;
+            sleep(retryInterval << Math.min(attempt, MAX_BACKOFF_SHIFT));
+        }
+    }
+
+    /**
+     * Verifies the length and the MD5 checksum of the uploaded resource. The checksum reported by the server is
+     * used when there is one, the resource is only downloaded when the content verification is enabled.
+     *
+     * @param md5    the expected MD5
+     * @param length the expected length
+     * @return true if the resource matches
+     * @throws IOException in case of IO issues
+     */
+    private boolean verify(String md5, long length) throws IOException {
+        HeadMethod head = new HeadMethod(url);
+        long remoteLength = -1;
+        String contentMd5 = null;
+        String etagMd5 = null;
+        try {
+            if (client.executeMethod(head) == HttpStatus.SC_OK) {
+                remoteLength = getContentLength(head);
+                contentMd5 = getContentMd5(head);
+                etagMd5 = getEtagMd5(head);
+            }
+        } finally {
+            head.releaseConnection();
+        }
+        // the length mismatch is found without downloading the resource
+        if (remoteLength >= 0 && remoteLength != length) {
+            l.debug("The uploaded resource " + url + " has " + remoteLength + " bytes, expected " + length + ".");
+            return false;
+        }
+        if (contentMd5 != null) {
+            l.debug("The uploaded resource " + url + " has the Content-MD5 " + contentMd5 + ".");
+            return md5.equals(contentMd5);
+        }
+        if (md5.equals(etagMd5)) {
+            l.debug("The uploaded resource " + url + " has the MD5 ETag " + etagMd5 + ".");
+            return true;
+        }
+        if (!verifyContent) {
+            if (remoteLength < 0)
+                l.debug("The server doesn't report the length of the uploaded resource " + url + ".");
+            return true;
+        }
+        return verifyContent(md5, length);
+    }
+
+    /**
+     * Downloads the uploaded resource and compares its MD5 checksum with the file
+     *
+     * @param md5    the expected MD5
+     * @param length the expected length
+     * @return true if the resource matches
+     * @throws IOException in case of IO issues
+     */
+    private boolean verifyContent(String md5, long length) throws IOException {
+        GetMethod get = new GetMethod(url);
+        try {
+            int status = client.executeMethod(get);
+            if (status != HttpStatus.SC_OK) {
+                throw new HttpMethodException("Can't verify the uploaded file " + url + ": " + status + " " +
+                        get.getStatusText());
+            }
+            MessageDigest digest = createMd5();
+            InputStream is = get.getResponseBodyAsStream();
+            long received = 0;
+            if (is != null) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = is.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                    received += n;
+                }
+            }
+            String remote = new String(Hex.encodeHex(digest.digest()));
+            l.debug("The uploaded resource " + url + " has " + received + " bytes, MD5 " + remote + ".");
+            return received == length && md5.equals(remote);
+        } finally {
+            get.releaseConnection();
+        }
+    }
+
+    /**
+     * Returns the length of the remote resource
+     *
+     * @return the length, -1 if the server doesn't tell it
+     * @throws IOException in case of IO issues
+     */
+    private long getRemoteLength() throws IOException {
+        HeadMethod head = new HeadMethod(url);
+        try {
+            int status = client.executeMethod(head);
+            return (status == HttpStatus.SC_OK) ? getContentLength(head) : -1;
+        } finally {
+            head.releaseConnection();
+        }
+    }
+
+    /**
+     * Returns the Content-Length of the HEAD response
+     *
+     * @param head the executed HEAD
+     * @return the length, -1 if the server doesn't tell it
+     */
+    private static long getContentLength(HeadMethod head) {
+        Header contentLength = head.getResponseHeader("Content-Length");
+        if (contentLength != null) {
+            try {
+                return Long.parseLong(contentLength.getValue().trim());
+            } catch (NumberFormatException e) {
+                l.debug("Invalid Content-Length " + contentLength.getValue());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the MD5 checksum of the Content-MD5 header of the HEAD response
+     *
+     * @param head the executed HEAD
+     * @return the MD5 hex digest, null if the server doesn't report it
+     */
+    static String getContentMd5(HeadMethod head) {
+        Header contentMd5 = head.getResponseHeader("Content-MD5");
+        if (contentMd5 != null) {
+            byte[] digest = Base64.decodeBase64(contentMd5.getValue().trim().getBytes());
+            if (digest.length == 16)
+                return new String(Hex.encodeHex(digest));
+        }
+        return null;
+    }
+
+    /**
+     * Returns the strong ETag of the HEAD response if it looks like an MD5 hex digest (many servers and object
+     * stores use the MD5 of the content as the ETag). It needn't be the MD5 of the content though, so only the
+     * matching ETag is conclusive.
+     *
+     * @param head the executed HEAD
+     * @return the lower case ETag, null if it isn't a hex digest
+     */
+    static String getEtagMd5(HeadMethod head) {
+        Header etag = head.getResponseHeader("ETag");
+        if (etag != null) {
+            String tag = etag.getValue().trim();
+            if (tag.length() == 34 && tag.charAt(0) == '"' && tag.charAt(33) == '"') {
+                tag = tag.substring(1, 33).toLowerCase();
+                if (isHex(tag))
+                    return tag;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f'))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The server rejects the partial PUT, or doesn't understand the Content-Range
+     */
+    private static boolean isRangeRejected(int status) {
+        return status == HttpStatus.SC_BAD_REQUEST || status == HttpStatus.SC_NOT_IMPLEMENTED
+                || status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE
+                || status == HttpStatus.SC_METHOD_NOT_ALLOWED;
+    }
+
+    private static boolean isRetryable(int status) {
+        return status >= HttpStatus.SC_INTERNAL_SERVER_ERROR || status == HttpStatus.SC_REQUEST_TIMEOUT;
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The upload has been interrupted.");
+        }
+    }
+
+    private static String md5(File file) throws IOException {
+        MessageDigest digest = createMd5();
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            is.close();
+        }
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
+    private static MessageDigest createMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Sets the size of the uploaded parts
+     *
+     * @param partSize the part size in bytes
+     */
+    public void setPartSize(long partSize) {
+        this.partSize = partSize;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Sets the number of the retries of a failed part
+     *
+     * @param maxRetries the number of the retries
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Sets the interval before the first retry, the interval doubles with every next retry of the same part
+     *
+     * @param retryInterval the interval in milliseconds
+     */
+    public void setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    public boolean isVerifyContent() {
+        return verifyContent;
+    }
+
+    /**
+     * Enables the download of the uploaded resource to verify its MD5 checksum when the server doesn't report the
+     * checksum. The verification reads the whole resource back, so it doubles the transferred data. Only the
+     * length is verified by default.
+     *
+     * @param verifyContent true to download the uploaded resource
+     */
+    public void setVerifyContent(boolean verifyContent) {
+        this.verifyContent = verifyContent;
+    }
+
+    /**
+     * Returns the number of the retried PUTs
+     *
+     * @return the number of the retries
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Repeatable request entity that sends a part of a file
+     */
+    static class FilePartRequestEntity implements RequestEntity {
+
+        private final File file;
+        private final long offset;
+        private final long length;
+
+        FilePartRequestEntity(File file, long offset, long length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        public void writeRequest(OutputStream out) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                raf.seek(offset);
+                byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(length, 1))];
+                long remaining = length;
+                while (remaining > 0) {
+                    int n = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (n < 0)
+                        throw new IOException("The file " + file + " has been truncated during the upload.");
+                    out.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            } finally {
+                raf.close();
+            }
+        }
+
+        public long getContentLength() {
+            return length;
+        }
+
+        public String getContentType() {
+            return null;
+        }
+    }
+
+}
@@ -64,6 +64,11 @@ public class SourceSchema {
      */
     private List<SourceColumn> columns;
 
+    /**
+     * Hash of the IDENTITY column (MD5 | MURMUR3), the default is MD5
+     */
+    private String identityHash;
+
     /**
      * Constructor
      *
@@ -185,8 +190,24 @@ public class SourceSchema {
      * @throws IOException in case of an IO issue
      */
     public void writeConfig(File configFile) throws IOException {
+        writeConfig(configFile, null);
+    }
+
+    /**
+     * Write the config file with an additional comment at the beginning
+     *
+     * @param configFile the config file
+     * @param comment    the comment text (e.g. the statistics of the data), null for no comment
+     * @throws IOException in case of an IO issue
+     */
+    public void writeConfig(File configFile, String comment) throws IOException {
         Writer w = new OutputStreamWriter(new FileOutputStream(configFile), "utf8");
-        w.write(CONFIG_INITIAL_COMMENT + toXml());
+        w.write(CONFIG_INITIAL_COMMENT);
+        if (comment != null) {
+            // the double hyphen isn't allowed in the XML comments
+            w.write("<!--\n" + comment.replace("--", "- -") + "\n-->\n\n");
+        }
+        w.write(toXml());
         w.flush();
         w.close();
     }
@@ -246,6 +267,24 @@ public class SourceSchema {
         return title;
     }
 
+    /**
+     * IDENTITY hash getter
+     *
+     * @return the IDENTITY hash name, null for the default MD5
+     */
+    public String getIdentityHash() {
+        return identityHash;
+    }
+
+    /**
+     * IDENTITY hash setter
+     *
+     * @param identityHash the IDENTITY hash name (MD5 | MURMUR3)
+     */
+    public void setIdentityHash(String identityHash) {
+        this.identityHash = identityHash;
+    }
+
     /**
      * Name setter
      *
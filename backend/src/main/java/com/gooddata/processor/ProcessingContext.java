@@ -29,12 +29,14 @@ import com.gooddata.exception.InvalidArgumentException;
 import com.gooddata.exception.InvalidCommandException;
 import com.gooddata.exception.InvalidParameterException;
 import com.gooddata.integration.datatransfer.GdcDataTransferAPI;
+import com.gooddata.integration.model.DataPackageBatch;
 import com.gooddata.integration.rest.GdcRESTApiWrapper;
 import com.gooddata.integration.rest.configuration.NamePasswordConfiguration;
 import com.gooddata.integration.webdav.GdcWebDavApiWrapper;
 import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
+import java.io.IOException;
 import java.net.URL;
 
 /**
@@ -51,6 +53,8 @@ public class ProcessingContext {
     private Connector connector;
     private GdcRESTApiWrapper _restApi = null;
     private GdcDataTransferAPI _ftpApi = null;
+    private TransferPool transferPool = null;
+    private DataPackageBatch dataPackageBatch = null;
 
 
     public String getProjectId() throws InvalidParameterException {
@@ -97,7 +101,7 @@ public class ProcessingContext {
     }
 
 
-    public GdcRESTApiWrapper getRestApi(CliParams cliParams) throws HttpMethodException {
+    public synchronized GdcRESTApiWrapper getRestApi(CliParams cliParams) throws HttpMethodException {
         if (_restApi == null) {
             NamePasswordConfiguration httpConfig = cliParams.getHttpConfig();
             checkConfig(httpConfig);
@@ -108,7 +112,7 @@ public class ProcessingContext {
         return _restApi;
     }
 
-    public GdcDataTransferAPI getFtpApi(CliParams cliParams) {
+    public synchronized GdcDataTransferAPI getFtpApi(CliParams cliParams) {
         if (_ftpApi == null) {
             NamePasswordConfiguration ftpConfig = cliParams.getFtpConfig();
             String host = ftpConfig.getGdcHost();
@@ -127,6 +131,70 @@ public class ProcessingContext {
         return _ftpApi;
     }
 
+    /**
+     * Retrieves the pool of the concurrent data transfers. The pool is recreated with the new concurrency
+     * when there are no pending transfers.
+     *
+     * @param concurrency number of the concurrent transfers
+     * @return the transfer pool
+     */
+    public synchronized TransferPool getTransferPool(int concurrency) {
+        if (transferPool != null && transferPool.getConcurrency() != concurrency && !transferPool.hasPending()) {
+            transferPool.shutdown();
+            transferPool = null;
+        }
+        if (transferPool == null) {
+            l.debug("Using " + concurrency + " concurrent data transfers.");
+            transferPool = new TransferPool(concurrency);
+        }
+        return transferPool;
+    }
+
+    /**
+     * Waits for the pending concurrent data transfers
+     */
+    public void awaitTransfers() {
+        TransferPool pool;
+        synchronized (this) {
+            pool = transferPool;
+        }
+        if (pool != null)
+            pool.await();
+    }
+
+    /**
+     * Stops the concurrent data transfers pool, the transfers that haven't been awaited are cancelled
+     */
+    public synchronized void shutdownTransfers() {
+        if (transferPool != null) {
+            transferPool.shutdown();
+            transferPool = null;
+        }
+    }
+
+    /**
+     * Retrieves the batch load that collects the datasets of the TransferData(batch="true") commands
+     *
+     * @return the current batch load
+     * @throws IOException if the batch can't be created
+     */
+    public synchronized DataPackageBatch getDataPackageBatch() throws IOException {
+        if (dataPackageBatch == null)
+            dataPackageBatch = new DataPackageBatch();
+        return dataPackageBatch;
+    }
+
+    /**
+     * Removes the current batch load from the context, the next TransferData(batch="true") starts a new batch
+     *
+     * @return the current batch load or null if no dataset has been added to a batch
+     */
+    public synchronized DataPackageBatch takeDataPackageBatch() {
+        DataPackageBatch batch = dataPackageBatch;
+        dataPackageBatch = null;
+        return batch;
+    }
+
     private static void checkConfig(NamePasswordConfiguration config) {
         if (config.getUsername() == null) {
             throw new InvalidArgumentException("Missing the 'username' commandline parameter.");
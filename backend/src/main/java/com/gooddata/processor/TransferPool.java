@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.exception.GdcIntegrationErrorException;
+import com.gooddata.exception.InternalErrorException;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Bounded pool of the concurrent data transfers (extract, upload and load of a dataset). The transfers are
+ * submitted by the script commands and run in the background until {@link #await()} collects them. The failures
+ * are aggregated per transfer, one failed dataset doesn't stop the others.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class TransferPool {
+
+    private static Logger l = Logger.getLogger(TransferPool.class);
+
+    /**
+     * Default number of the concurrent transfers
+     */
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    private final int concurrency;
+    private final ExecutorService pool;
+    private final List<String> datasets = new ArrayList<String>();
+    private final List<Future<Object>> transfers = new ArrayList<Future<Object>>();
+
+    /**
+     * Creates the pool
+     *
+     * @param concurrency number of the transfers that run at the same time
+     */
+    public TransferPool(int concurrency) {
+        this.concurrency = concurrency;
+        pool = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+            private int n = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "GdcTransfer-" + (++n));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Submits the transfer of a dataset, the transfer runs with the current project id and the dataset name in
+     * the logging context
+     *
+     * @param dataset  the dataset name (used in the logs and in the failure report)
+     * @param transfer the transfer
+     */
+    public synchronized void submit(final String dataset, final Callable<Object> transfer) {
+        final Object projectId = MDC.get("GdcProjectId");
+        l.debug("Submitting the transfer of the dataset " + dataset + ".");
+        transfers.add(pool.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                if (projectId != null)
+                    MDC.put("GdcProjectId", projectId);
+                MDC.put("GdcDataset", dataset);
+                try {
+                    return transfer.call();
+                } finally {
+                    MDC.remove("GdcDataset");
+                    MDC.remove("GdcProjectId");
+                }
+            }
+        }));
+        datasets.add(dataset);
+    }
+
+    /**
+     * Tests if there are transfers that haven't been awaited yet
+     *
+     * @return true if there are submitted transfers
+     */
+    public synchronized boolean hasPending() {
+        return !transfers.isEmpty();
+    }
+
+    /**
+     * Waits for all submitted transfers and reports the failed datasets
+     *
+     * @throws GdcIntegrationErrorException if any of the transfers failed, the first failure is the cause
+     */
+    public synchronized void await() {
+        if (transfers.isEmpty())
+            return;
+        l.debug("Waiting for " + transfers.size() + " concurrent transfers.");
+        // the same dataset may be transferred more times, the failures are kept per transfer
+        List<String> failedDatasets = new ArrayList<String>();
+        List<Throwable> failures = new ArrayList<Throwable>();
+        try {
+            for (int i = 0; i < transfers.size(); i++) {
+                try {
+                    transfers.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    l.error("Data transfer of the dataset " + datasets.get(i) + " failed: " + cause.getMessage());
+                    l.debug("Data transfer of the dataset " + datasets.get(i) + " failed.", cause);
+                    failedDatasets.add(datasets.get(i));
+                    failures.add(cause);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalErrorException("Interrupted while waiting for the data transfers.", e);
+        } finally {
+            l.info("Concurrent data transfers finished, " + (transfers.size() - failures.size()) + " of " +
+                    transfers.size() + " datasets transferred successfully.");
+            transfers.clear();
+            datasets.clear();
+        }
+        if (!failures.isEmpty()) {
+            StringBuffer msg = new StringBuffer("Data transfer failed for " + failures.size() + " dataset(s):");
+            for (int i = 0; i < failures.size(); i++) {
+                msg.append("\n  ").append(failedDatasets.get(i)).append(": ").append(failures.get(i).getMessage());
+            }
+            throw new GdcIntegrationErrorException(msg.toString(), failures.get(0));
+        }
+    }
+
+    /**
+     * Cancels the running transfers and stops the pool
+     */
+    public synchronized void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.transform;
+
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlArithmetic;
+import org.apache.commons.jexl2.JexlContext;
+
+/**
+ * Base class of the transformation expressions generated by the {@link ExpressionCompiler}. The generated
+ * subclass implements {@link #eval(JexlContext)} as a straight sequence of calls to the helpers below. Whenever
+ * the runtime values don't match the types the helpers were written for, or JEXL would report an error, the helper
+ * throws {@link #FALLBACK} and the whole expression is evaluated again by the interpreted JEXL expression, so both
+ * engines return the same results. The helpers throw before their own side effects. The re-evaluation would
+ * repeat the side effects of the helpers that have already run, so the compiler doesn't compile the expressions
+ * whose date helpers can be followed by a fallback. Any other exception is a bug of the generated code and is
+ * propagated.
+ */
+public abstract class CompiledExpression implements Expression {
+
+    /**
+     * Signals that the compiled code can't evaluate the current values
+     */
+    protected static final class FallbackException extends RuntimeException {
+        @Override
+        public Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    protected static final FallbackException FALLBACK = new FallbackException();
+
+    // the default JexlEngine uses the lenient arithmetic
+    protected static final JexlArithmetic ARITHMETIC = new JexlArithmetic(true);
+
+    // the binary operators
+    private static final int ADD = 0;
+    private static final int SUBTRACT = 1;
+    private static final int MULTIPLY = 2;
+    private static final int DIVIDE = 3;
+    private static final int MOD = 4;
+    private static final int EQ = 5;
+    private static final int NE = 6;
+    private static final int LT = 7;
+    private static final int LE = 8;
+    private static final int GT = 9;
+    private static final int GE = 10;
+
+    private String source;
+    private Expression fallback;
+    private int[] slots;
+    private String[] names;
+
+    /**
+     * Initializes the compiled expression
+     *
+     * @param source   the expression source
+     * @param fallback the interpreted expression
+     * @param names    names of the variables used by the expression
+     * @param slots    slots of the variables in the {@link SlotContext}, -1 for unknown variables
+     */
+    void init(String source, Expression fallback, String[] names, int[] slots) {
+        this.source = source;
+        this.fallback = fallback;
+        this.names = names;
+        this.slots = slots;
+    }
+
+    /**
+     * Evaluates the compiled expression
+     *
+     * @param context the variables
+     * @return the expression value
+     */
+    protected abstract Object eval(JexlContext context);
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object evaluate(JexlContext context) {
+        try {
+            return eval(context);
+        } catch (FallbackException e) {
+            // let the JEXL interpreter decide (or report the error)
+            return fallback.evaluate(context);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String dump() {
+        return fallback.dump();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getExpression() {
+        return source;
+    }
+
+    /**
+     * Returns the value of the i-th variable of the expression
+     *
+     * @param context the variables
+     * @param i       variable index
+     * @return the variable value
+     */
+    protected final Object var(JexlContext context, int i) {
+        int slot = slots[i];
+        if (slot >= 0 && context instanceof SlotContext)
+            return ((SlotContext) context).get(slot);
+        return context.get(names[i]);
+    }
+
+    protected static Boolean bool(boolean b) {
+        return b ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    protected static boolean truth(Object o) {
+        return ARITHMETIC.toBoolean(o);
+    }
+
+    protected static boolean test(Object o) {
+        return o != null && ARITHMETIC.toBoolean(o);
+    }
+
+    protected static Object add(Object l, Object r) {
+        return arithmetic(ADD, l, r);
+    }
+
+    protected static Object subtract(Object l, Object r) {
+        return arithmetic(SUBTRACT, l, r);
+    }
+
+    protected static Object multiply(Object l, Object r) {
+        return arithmetic(MULTIPLY, l, r);
+    }
+
+    protected static Object divide(Object l, Object r) {
+        return arithmetic(DIVIDE, l, r);
+    }
+
+    protected static Object mod(Object l, Object r) {
+        return arithmetic(MOD, l, r);
+    }
+
+    protected static Boolean eq(Object l, Object r) {
+        return (Boolean) arithmetic(EQ, l, r);
+    }
+
+    protected static Boolean ne(Object l, Object r) {
+        return (Boolean) arithmetic(NE, l, r);
+    }
+
+    protected static Boolean lt(Object l, Object r) {
+        return (Boolean) arithmetic(LT, l, r);
+    }
+
+    protected static Boolean le(Object l, Object r) {
+        return (Boolean) arithmetic(LE, l, r);
+    }
+
+    protected static Boolean gt(Object l, Object r) {
+        return (Boolean) arithmetic(GT, l, r);
+    }
+
+    protected static Boolean ge(Object l, Object r) {
+        return (Boolean) arithmetic(GE, l, r);
+    }
+
+    /**
+     * Applies the JEXL arithmetic, the values JEXL can't handle are left to the interpreter to report the error
+     *
+     * @param op the operator
+     * @param l  the left operand
+     * @param r  the right operand
+     * @return the result
+     */
+    private static Object arithmetic(int op, Object l, Object r) {
+        try {
+            switch (op) {
+                case ADD:
+                    return ARITHMETIC.add(l, r);
+                case SUBTRACT:
+                    return ARITHMETIC.subtract(l, r);
+                case MULTIPLY:
+                    return ARITHMETIC.multiply(l, r);
+                case DIVIDE:
+                    return ARITHMETIC.divide(l, r);
+                case MOD:
+                    return ARITHMETIC.mod(l, r);
+                case EQ:
+                    return bool(ARITHMETIC.equals(l, r));
+                case NE:
+                    return bool(!ARITHMETIC.equals(l, r));
+                case LT:
+                    return bool(ARITHMETIC.lessThan(l, r));
+                case LE:
+                    return bool(ARITHMETIC.lessThanOrEqual(l, r));
+                case GT:
+                    return bool(ARITHMETIC.greaterThan(l, r));
+                case GE:
+                    return bool(ARITHMETIC.greaterThanOrEqual(l, r));
+                default:
+                    throw new IllegalStateException("Unknown operator " + op);
+            }
+        } catch (ArithmeticException e) {
+            throw FALLBACK;
+        } catch (IllegalArgumentException e) {
+            throw FALLBACK;
+        }
+    }
+
+    private static DateArithmetics da(Object o) {
+        if (o instanceof DateArithmetics)
+            return (DateArithmetics) o;
+        throw FALLBACK;
+    }
+
+    private static String str(Object o) {
+        if (o instanceof String)
+            return (String) o;
+        throw FALLBACK;
+    }
+
+    private static int integer(Object o) {
+        if (o instanceof Integer)
+            return ((Integer) o).intValue();
+        throw FALLBACK;
+    }
+
+    // GdcDateArithmetics
+
+    protected static Object computeDateFact(Object t, Object value, Object format) {
+        return da(t).computeDateFact(str(value), str(format));
+    }
+
+    protected static Object computeTimeFact(Object t, Object value, Object format) {
+        return da(t).computeTimeFact(str(value), str(format));
+    }
+
+    protected static Object computeTimeAttribute(Object t, Object value, Object format) {
+        return da(t).computeTimeAttribute(str(value), str(format));
+    }
+
+    protected static Object today(Object t) {
+        return da(t).today();
+    }
+
+    // java.lang.String
+
+    protected static Object toUpperCase(Object t) {
+        return str(t).toUpperCase();
+    }
+
+    protected static Object toLowerCase(Object t) {
+        return str(t).toLowerCase();
+    }
+
+    protected static Object trim(Object t) {
+        return str(t).trim();
+    }
+
+    protected static Object length(Object t) {
+        return Integer.valueOf(str(t).length());
+    }
+
+    protected static Object indexOf(Object t, Object s) {
+        return Integer.valueOf(str(t).indexOf(str(s)));
+    }
+
+    protected static Object lastIndexOf(Object t, Object s) {
+        return Integer.valueOf(str(t).lastIndexOf(str(s)));
+    }
+
+    protected static Object startsWith(Object t, Object s) {
+        return bool(str(t).startsWith(str(s)));
+    }
+
+    protected static Object endsWith(Object t, Object s) {
+        return bool(str(t).endsWith(str(s)));
+    }
+
+    protected static Object contains(Object t, Object s) {
+        return bool(str(t).contains(str(s)));
+    }
+
+    protected static Object stringEquals(Object t, Object s) {
+        return bool(str(t).equals(str(s)));
+    }
+
+    protected static Object equalsIgnoreCase(Object t, Object s) {
+        return bool(str(t).equalsIgnoreCase(str(s)));
+    }
+
+    protected static Object concat(Object t, Object s) {
+        return str(t).concat(str(s));
+    }
+
+    protected static Object substring(Object t, Object b) {
+        String s = str(t);
+        int begin = integer(b);
+        if (begin < 0 || begin > s.length())
+            throw FALLBACK;
+        return s.substring(begin);
+    }
+
+    protected static Object substring(Object t, Object b, Object e) {
+        String s = str(t);
+        int begin = integer(b);
+        int end = integer(e);
+        if (begin < 0 || end > s.length() || begin > end)
+            throw FALLBACK;
+        return s.substring(begin, end);
+    }
+
+    protected static Object replace(Object t, Object s, Object r) {
+        return str(t).replace(str(s), str(r));
+    }
+
+    protected static Object replaceAll(Object t, Object s, Object r) {
+        try {
+            return str(t).replaceAll(str(s), str(r));
+        } catch (IllegalArgumentException e) {
+            // an invalid regular expression or replacement
+            throw FALLBACK;
+        } catch (IndexOutOfBoundsException e) {
+            // a reference to a missing group
+            throw FALLBACK;
+        }
+    }
+
+}
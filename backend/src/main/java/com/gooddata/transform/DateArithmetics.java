@@ -32,8 +32,12 @@ import org.joda.time.Days;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
- * GoodData DATE transformations
+ * GoodData DATE transformations. The computed values are memoized per date format, the instance isn't thread safe.
  *
  * @author zd <zd@gooddata.com>
  * @version 1.0
@@ -42,21 +46,70 @@ public class DateArithmetics {
 
     private static Logger l = Logger.getLogger(DateArithmetics.class);
 
+    /**
+     * Maximal number of memoized values per function and date format
+     */
+    public static final int CACHE_SIZE = 10000;
+
     private final DateTimeFormatter baseFmt = DateTimeFormat.forPattern(Constants.DEFAULT_DATE_FMT_STRING);
     private final DateTime base = baseFmt.parseDateTime("1900-01-01");
     private final DateTime today = new DateTime();
     private final String todayText = baseFmt.print(today);
 
+    // memoized results (format -> date value -> result), date columns have low cardinality
+    private final Map<String, Map<String, String>> dateFacts = new HashMap<String, Map<String, String>>();
+    private final Map<String, Map<String, String>> timeFacts = new HashMap<String, Map<String, String>>();
+    private final Map<String, Map<String, String>> timeAttributes = new HashMap<String, Map<String, String>>();
+    private long cacheHits = 0;
+    private long cacheMisses = 0;
+
+    private static final String DATE_FACT_ERROR = "can't parse the date for the date fact";
+    private static final String TIME_FACT_ERROR = "can't parse the date for the time fact";
+    private static final String TIME_ATTRIBUTE_ERROR = "can't parse the date for the time attribute";
+
+    // the memoized result of an unparseable value, compared by identity
+    private static final String PARSE_FAILED = new String("");
+
+    private final ParseErrors errors;
+
+    public DateArithmetics() {
+        this(new ParseErrors());
+    }
+
+    /**
+     * Creates the date arithmetics
+     *
+     * @param errors the aggregator of the unparseable dates
+     */
+    public DateArithmetics(ParseErrors errors) {
+        this.errors = errors;
+    }
+
     public String computeDateFact(String dateValue, String format) {
-        String ret = "";
-        if (dateValue != null && dateValue.trim().length() > 0) {
+        if (dateValue == null)
+            return "";
+        Map<String, String> cache = getCache(dateFacts, format);
+        String ret = cache.get(dateValue);
+        if (ret != null) {
+            cacheHits++;
+            if (ret == PARSE_FAILED) {
+                errors.add(DATE_FACT_ERROR, dateValue);
+                return "";
+            }
+            return ret;
+        }
+        ret = "";
+        if (dateValue.trim().length() > 0) {
+            cacheMisses++;
             try {
                 DateTimeFormatter formatter = DateUtil.getDateFormatter(format, false);
                 DateTime dt = formatter.parseDateTime(dateValue);
                 Days ds = Days.daysBetween(base, dt);
                 ret = Integer.toString(ds.getDays() + 1);
+                cache.put(dateValue, ret);
             } catch (IllegalArgumentException e) {
-                l.info("Can't parse date " + dateValue + ", format = '" + format + "' for a date fact: " + e.getMessage());
+                errors.add(DATE_FACT_ERROR, dateValue);
+                cache.put(dateValue, PARSE_FAILED);
             }
         }
         return ret;
@@ -67,34 +120,113 @@ public class DateArithmetics {
     }
 
     public String computeTimeFact(String dateValue, String format) {
-        String ret = "";
-        if (dateValue != null && dateValue.trim().length() > 0) {
+        if (dateValue == null)
+            return "";
+        Map<String, String> cache = getCache(timeFacts, format);
+        String ret = cache.get(dateValue);
+        if (ret != null) {
+            cacheHits++;
+            if (ret == PARSE_FAILED) {
+                errors.add(TIME_FACT_ERROR, dateValue);
+                return "";
+            }
+            return ret;
+        }
+        ret = "";
+        if (dateValue.trim().length() > 0) {
+            cacheMisses++;
             try {
                 DateTimeFormatter formatter = DateUtil.getDateFormatter(format, true);
                 DateTime dt = formatter.parseDateTime(dateValue);
                 int ts = dt.getSecondOfDay();
                 ret = Integer.toString(ts);
+                cache.put(dateValue, ret);
             } catch (IllegalArgumentException e) {
-                l.info("Can't parse date " + dateValue + ", format = '" + format + "' for a time fact: " + e.getMessage());
+                errors.add(TIME_FACT_ERROR, dateValue);
+                cache.put(dateValue, PARSE_FAILED);
             }
         }
         return ret;
     }
 
     public String computeTimeAttribute(String dateValue, String format) {
-        String ret = "00";
-        if (dateValue != null && dateValue.trim().length() > 0) {
+        if (dateValue == null)
+            return "00";
+        Map<String, String> cache = getCache(timeAttributes, format);
+        String ret = cache.get(dateValue);
+        if (ret != null) {
+            cacheHits++;
+            if (ret == PARSE_FAILED) {
+                errors.add(TIME_ATTRIBUTE_ERROR, dateValue);
+                return "00";
+            }
+            return ret;
+        }
+        ret = "00";
+        if (dateValue.trim().length() > 0) {
+            cacheMisses++;
             try {
                 DateTimeFormatter formatter = DateUtil.getDateFormatter(format, true);
                 DateTime dt = formatter.parseDateTime(dateValue);
                 int ts = dt.getSecondOfDay();
                 String scs = Integer.toString(ts);
                 ret = (scs.length() > 1) ? (scs) : ("0" + scs);
+                cache.put(dateValue, ret);
             } catch (IllegalArgumentException e) {
-                l.info("Can't parse date " + dateValue + ", format = '" + format + "' for a time attribute: " + e.getMessage());
+                errors.add(TIME_ATTRIBUTE_ERROR, dateValue);
+                cache.put(dateValue, PARSE_FAILED);
             }
         }
         return ret;
     }
 
+    /**
+     * Returns the aggregator of the unparseable dates
+     *
+     * @return the parse errors
+     */
+    public ParseErrors getParseErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns the number of date computations served from the cache
+     *
+     * @return number of cache hits
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Returns the number of date computations that had to parse the date
+     *
+     * @return number of cache misses
+     */
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * Resets the cache statistics and the parse errors, the cached values are kept
+     */
+    public void resetStatistics() {
+        cacheHits = 0;
+        cacheMisses = 0;
+        errors.clear();
+    }
+
+    private Map<String, String> getCache(Map<String, Map<String, String>> caches, String format) {
+        Map<String, String> cache = caches.get(format);
+        if (cache == null) {
+            cache = new LinkedHashMap<String, String>(256, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+            caches.put(format, cache);
+        }
+        return cache;
+    }
+
 }
@@ -0,0 +1,473 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.transform;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import org.apache.commons.jexl2.Expression;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles the transformation expressions to JVM classes (see {@link CompiledExpression}). The compiler supports
+ * a JEXL subset: string and integer literals, variables, the arithmetic, comparison and logical operators, the
+ * ternary operator, GdcDateArithmetics methods and the common String methods. The operators are delegated to
+ * the JEXL arithmetic, so the compiled expressions return the same values as the interpreted ones.
+ * The date functions record the parse errors, so they are only compiled when no other helper of the expression
+ * can fall back to JEXL (the fallback evaluates the whole expression again and would record the errors twice).
+ * The compiled classes are shared by all expressions with the same source.
+ */
+class ExpressionCompiler {
+
+    private static Logger l = Logger.getLogger(ExpressionCompiler.class);
+
+    private static final String BASE = CompiledExpression.class.getName();
+    private static final String GENERATED = "com.gooddata.transform.GeneratedExpression";
+
+    // supported methods (name/arity) and their CompiledExpression helpers
+    private static final Map<String, String> METHODS = new HashMap<String, String>();
+
+    static {
+        METHODS.put("computeDateFact/2", "computeDateFact");
+        METHODS.put("computeTimeFact/2", "computeTimeFact");
+        METHODS.put("computeTimeAttribute/2", "computeTimeAttribute");
+        METHODS.put("today/0", "today");
+        METHODS.put("toUpperCase/0", "toUpperCase");
+        METHODS.put("toLowerCase/0", "toLowerCase");
+        METHODS.put("trim/0", "trim");
+        METHODS.put("length/0", "length");
+        METHODS.put("indexOf/1", "indexOf");
+        METHODS.put("lastIndexOf/1", "lastIndexOf");
+        METHODS.put("startsWith/1", "startsWith");
+        METHODS.put("endsWith/1", "endsWith");
+        METHODS.put("contains/1", "contains");
+        METHODS.put("equals/1", "stringEquals");
+        METHODS.put("equalsIgnoreCase/1", "equalsIgnoreCase");
+        METHODS.put("concat/1", "concat");
+        METHODS.put("substring/1", "substring");
+        METHODS.put("substring/2", "substring");
+        METHODS.put("replace/2", "replace");
+        METHODS.put("replaceAll/2", "replaceAll");
+    }
+
+    // helpers with side effects (the parse errors and the cache statistics of the DateArithmetics)
+    private static final Set<String> SIDE_EFFECTS = new HashSet<String>(Arrays.asList("computeDateFact",
+            "computeTimeFact", "computeTimeAttribute"));
+
+    // helpers that never throw the CompiledExpression.FALLBACK
+    private static final Set<String> INFALLIBLE = new HashSet<String>(Arrays.asList("bool", "truth", "test"));
+
+    // JEXL keywords and word operators that can't be used as variable names
+    private static final Set<String> RESERVED = new HashSet<String>(Arrays.asList("or", "and", "eq", "ne", "lt", "gt",
+            "le", "ge", "div", "mod", "not", "new", "empty", "size", "if", "else", "for", "foreach", "while", "var",
+            "function", "return", "in"));
+
+    private static final Map<String, Class> classes = new HashMap<String, Class>();
+    private static ClassPool pool;
+
+    private static final int EOF = 0;
+    private static final int IDENT = 1;
+    private static final int INT = 2;
+    private static final int STRING = 3;
+    private static final int OP = 4;
+
+    private static class Token {
+        private final int type;
+        private final String text;
+
+        private Token(int type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Thrown when the expression uses a construct the compiler doesn't support
+     */
+    private static class UnsupportedExpressionException extends Exception {
+        private UnsupportedExpressionException(String msg) {
+            super(msg);
+        }
+    }
+
+    private final String source;
+    private final List<Token> tokens = new ArrayList<Token>();
+    private final List<String> variables = new ArrayList<String>();
+    private int pos = 0;
+    // number of the helper calls that can fall back to JEXL
+    private int fallible = 0;
+    private boolean sideEffects = false;
+
+    private ExpressionCompiler(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Compiles the expression
+     *
+     * @param source   the JEXL expression
+     * @param fallback the interpreted expression, evaluates the values the compiled code can't handle
+     * @param context  the context the expression is going to be evaluated with
+     * @return the compiled expression or null if the expression can't be compiled
+     */
+    static CompiledExpression compile(String source, Expression fallback, SlotContext context) {
+        ExpressionCompiler c = new ExpressionCompiler(source);
+        String body;
+        try {
+            body = c.parse();
+        } catch (UnsupportedExpressionException e) {
+            l.debug("The expression '" + source + "' uses " + e.getMessage() + ", using JEXL instead.");
+            return null;
+        }
+        try {
+            CompiledExpression e = (CompiledExpression) defineClass(source, body).newInstance();
+            String[] names = c.variables.toArray(new String[c.variables.size()]);
+            int[] slots = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                slots[i] = context.slot(names[i]);
+            }
+            e.init(source, fallback, names, slots);
+            return e;
+        } catch (Exception e) {
+            l.debug("Can't compile the expression '" + source + "', using JEXL instead.", e);
+            return null;
+        } catch (LinkageError e) {
+            l.debug("Can't load the compiled expression '" + source + "', using JEXL instead.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Generates the class that evaluates the expression
+     *
+     * @param source the expression source
+     * @param body   Java source of the expression
+     * @return the generated class
+     * @throws Exception in case of a compilation issue
+     */
+    private static synchronized Class defineClass(String source, String body) throws Exception {
+        Class cls = classes.get(source);
+        if (cls == null) {
+            ClassLoader loader = CompiledExpression.class.getClassLoader();
+            if (pool == null) {
+                pool = new ClassPool(true);
+                pool.appendClassPath(new LoaderClassPath(loader));
+            }
+            CtClass cc = pool.makeClass(GENERATED + (classes.size() + 1));
+            cc.setSuperclass(pool.get(BASE));
+            cc.addConstructor(CtNewConstructor.defaultConstructor(cc));
+            cc.addMethod(CtNewMethod.make("protected Object eval(org.apache.commons.jexl2.JexlContext ctx) { return " +
+                    body + "; }", cc));
+            cls = cc.toClass(loader, CompiledExpression.class.getProtectionDomain());
+            cc.detach();
+            classes.put(source, cls);
+            l.debug("Compiled the expression '" + source + "' to " + cls.getName());
+        }
+        return cls;
+    }
+
+    /**
+     * Translates the expression to Java source
+     *
+     * @return the Java source
+     * @throws UnsupportedExpressionException if the expression uses an unsupported construct
+     */
+    private String parse() throws UnsupportedExpressionException {
+        tokenize();
+        String body = expression();
+        if (peek().type != EOF)
+            throw new UnsupportedExpressionException("'" + peek().text + "'");
+        if (sideEffects && fallible > 1)
+            throw new UnsupportedExpressionException("a date function with other operations that may fall back");
+        return body;
+    }
+
+    private void tokenize() throws UnsupportedExpressionException {
+        int i = 0;
+        int n = source.length();
+        while (i < n) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetter(c) || c == '_' || c == '$') {
+                int s = i;
+                while (i < n && (Character.isLetterOrDigit(source.charAt(i)) || source.charAt(i) == '_' ||
+                        source.charAt(i) == '$'))
+                    i++;
+                tokens.add(new Token(IDENT, source.substring(s, i)));
+            } else if (Character.isDigit(c)) {
+                int s = i;
+                while (i < n && Character.isDigit(source.charAt(i)))
+                    i++;
+                if (i + 1 < n && source.charAt(i) == '.' && Character.isDigit(source.charAt(i + 1)))
+                    throw new UnsupportedExpressionException("a decimal literal");
+                tokens.add(new Token(INT, source.substring(s, i)));
+            } else if (c == '"' || c == '\'') {
+                int e = source.indexOf(c, i + 1);
+                if (e < 0)
+                    throw new UnsupportedExpressionException("an unterminated string");
+                String text = source.substring(i + 1, e);
+                if (text.indexOf('\\') >= 0)
+                    throw new UnsupportedExpressionException("an escape sequence");
+                tokens.add(new Token(STRING, text));
+                i = e + 1;
+            } else {
+                String op = (i + 1 < n) ? (source.substring(i, i + 2)) : ("");
+                if ("==".equals(op) || "!=".equals(op) || "<=".equals(op) || ">=".equals(op) || "&&".equals(op) ||
+                        "||".equals(op) || "=~".equals(op) || "!~".equals(op) || "?:".equals(op)) {
+                    tokens.add(new Token(OP, op));
+                    i += 2;
+                } else {
+                    tokens.add(new Token(OP, String.valueOf(c)));
+                    i++;
+                }
+            }
+        }
+    }
+
+    private Token peek() {
+        return (pos < tokens.size()) ? (tokens.get(pos)) : (new Token(EOF, "end of expression"));
+    }
+
+    private Token next() {
+        Token t = peek();
+        pos++;
+        return t;
+    }
+
+    private boolean accept(String op) {
+        Token t = peek();
+        if ((t.type == OP || t.type == IDENT) && t.text.equals(op)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String op) throws UnsupportedExpressionException {
+        if (!accept(op))
+            throw new UnsupportedExpressionException("'" + peek().text + "' instead of '" + op + "'");
+    }
+
+    private String call(String helper, String... args) {
+        if (SIDE_EFFECTS.contains(helper))
+            sideEffects = true;
+        if (!INFALLIBLE.contains(helper))
+            fallible++;
+        StringBuilder sb = new StringBuilder(BASE).append('.').append(helper).append('(');
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(args[i]);
+        }
+        return sb.append(')').toString();
+    }
+
+    private String expression() throws UnsupportedExpressionException {
+        String c = or();
+        if (accept("?")) {
+            String a = expression();
+            expect(":");
+            String b = expression();
+            return "(" + call("test", c) + " ? (Object) (" + a + ") : (Object) (" + b + "))";
+        }
+        return c;
+    }
+
+    private String or() throws UnsupportedExpressionException {
+        String l = and();
+        while (accept("||") || accept("or")) {
+            String r = and();
+            l = "(" + call("truth", l) + " ? (Object) Boolean.TRUE : (Object) " + call("bool", call("truth", r)) + ")";
+        }
+        return l;
+    }
+
+    private String and() throws UnsupportedExpressionException {
+        String l = equality();
+        while (accept("&&") || accept("and")) {
+            String r = equality();
+            l = "(" + call("truth", l) + " ? (Object) " + call("bool", call("truth", r)) + " : (Object) Boolean.FALSE)";
+        }
+        return l;
+    }
+
+    private String equality() throws UnsupportedExpressionException {
+        String l = relational();
+        while (true) {
+            if (accept("==") || accept("eq")) {
+                l = call("eq", l, relational());
+            } else if (accept("!=") || accept("ne")) {
+                l = call("ne", l, relational());
+            } else {
+                return l;
+            }
+        }
+    }
+
+    private String relational() throws UnsupportedExpressionException {
+        String l = additive();
+        while (true) {
+            if (accept("<") || accept("lt")) {
+                l = call("lt", l, additive());
+            } else if (accept("<=") || accept("le")) {
+                l = call("le", l, additive());
+            } else if (accept(">") || accept("gt")) {
+                l = call("gt", l, additive());
+            } else if (accept(">=") || accept("ge")) {
+                l = call("ge", l, additive());
+            } else {
+                return l;
+            }
+        }
+    }
+
+    private String additive() throws UnsupportedExpressionException {
+        String l = multiplicative();
+        while (true) {
+            if (accept("+")) {
+                l = call("add", l, multiplicative());
+            } else if (accept("-")) {
+                l = call("subtract", l, multiplicative());
+            } else {
+                return l;
+            }
+        }
+    }
+
+    private String multiplicative() throws UnsupportedExpressionException {
+        String l = unary();
+        while (true) {
+            if (accept("*")) {
+                l = call("multiply", l, unary());
+            } else if (accept("/") || accept("div")) {
+                l = call("divide", l, unary());
+            } else if (accept("%") || accept("mod")) {
+                l = call("mod", l, unary());
+            } else {
+                return l;
+            }
+        }
+    }
+
+    private String unary() throws UnsupportedExpressionException {
+        if (accept("!") || accept("not")) {
+            return call("bool", "!" + call("truth", unary()));
+        }
+        if (accept("-")) {
+            Token t = next();
+            if (t.type != INT)
+                throw new UnsupportedExpressionException("the unary minus");
+            return integer("-" + t.text);
+        }
+        return postfix();
+    }
+
+    private String postfix() throws UnsupportedExpressionException {
+        String target = primary();
+        while (accept(".")) {
+            Token m = next();
+            if (m.type != IDENT || !accept("("))
+                throw new UnsupportedExpressionException("a property access");
+            List<String> args = new ArrayList<String>();
+            args.add(target);
+            if (!accept(")")) {
+                do {
+                    args.add(expression());
+                } while (accept(","));
+                expect(")");
+            }
+            String helper = METHODS.get(m.text + "/" + (args.size() - 1));
+            if (helper == null)
+                throw new UnsupportedExpressionException("the method " + m.text);
+            target = call(helper, args.toArray(new String[args.size()]));
+        }
+        return target;
+    }
+
+    private String primary() throws UnsupportedExpressionException {
+        Token t = next();
+        switch (t.type) {
+            case INT:
+                return integer(t.text);
+            case STRING:
+                return "\"" + t.text.replace("\"", "\\\"") + "\"";
+            case IDENT:
+                if ("true".equals(t.text))
+                    return "Boolean.TRUE";
+                if ("false".equals(t.text))
+                    return "Boolean.FALSE";
+                if ("null".equals(t.text))
+                    return "null";
+                if (RESERVED.contains(t.text))
+                    throw new UnsupportedExpressionException("the keyword " + t.text);
+                if (peek().type == OP && "(".equals(peek().text))
+                    throw new UnsupportedExpressionException("a function call");
+                return "this.var(ctx, " + variable(t.text) + ")";
+            case OP:
+                if ("(".equals(t.text)) {
+                    String e = expression();
+                    expect(")");
+                    return "(" + e + ")";
+                }
+                throw new UnsupportedExpressionException("'" + t.text + "'");
+            default:
+                throw new UnsupportedExpressionException("'" + t.text + "'");
+        }
+    }
+
+    private static String integer(String text) throws UnsupportedExpressionException {
+        try {
+            return "Integer.valueOf(" + Integer.parseInt(text) + ")";
+        } catch (NumberFormatException e) {
+            throw new UnsupportedExpressionException("a long literal");
+        }
+    }
+
+    /**
+     * Returns the index of the variable in the compiled expression
+     *
+     * @param name variable name
+     * @return the variable index
+     */
+    private int variable(String name) {
+        int i = variables.indexOf(name);
+        if (i < 0) {
+            variables.add(name);
+            i = variables.size() - 1;
+        }
+        return i;
+    }
+
+}
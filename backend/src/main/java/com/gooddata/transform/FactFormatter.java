@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.transform;
+
+import com.gooddata.Constants;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+
+/**
+ * Formats the numeric facts exactly as the {@link Constants#DEFAULT_INT_FMT_STRING} and
+ * {@link Constants#DEFAULT_DEC_FMT_STRING} DecimalFormat patterns do, without the DecimalFormat overhead.
+ * The class is stateless and thread safe. The fast path rounds the exact binary value of the doubles like
+ * the DecimalFormat of Java 8 and newer; the older runtimes round the Double.toString digits, so 1.015 is
+ * formatted as 1.02 there. When the runtime's DecimalFormat rounds differently or the default locale uses
+ * non-standard number symbols (both detected at the class initialization) all values are formatted by
+ * DecimalFormat.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public final class FactFormatter {
+
+    private static final ThreadLocal<DecimalFormat> decf = new ThreadLocal<DecimalFormat>() {
+        protected DecimalFormat initialValue() {
+            return new DecimalFormat(Constants.DEFAULT_DEC_FMT_STRING);
+        }
+    };
+
+    private static final ThreadLocal<DecimalFormat> intf = new ThreadLocal<DecimalFormat>() {
+        protected DecimalFormat initialValue() {
+            return new DecimalFormat(Constants.DEFAULT_INT_FMT_STRING);
+        }
+    };
+
+    // doubles below this magnitude have ulp < 0.001, so rounding the exact binary value gives the DecimalFormat result
+    private static final double EXACT_LIMIT = 1099511627776d; // 2^40
+
+    private static final char DECIMAL_SEPARATOR = decf.get().getDecimalFormatSymbols().getDecimalSeparator();
+
+    private static final boolean FAST = selfCheck();
+
+    private FactFormatter() {
+    }
+
+    /**
+     * Formats the integer fact ({@link Constants#DEFAULT_INT_FMT_STRING})
+     *
+     * @param value the value
+     * @return formatted value
+     */
+    public static String formatInteger(long value) {
+        if (!FAST)
+            return intf.get().format(value);
+        return Long.toString(value);
+    }
+
+    /**
+     * Formats the integer fact ({@link Constants#DEFAULT_INT_FMT_STRING})
+     *
+     * @param value the value
+     * @return formatted value
+     */
+    public static String formatInteger(BigInteger value) {
+        if (!FAST)
+            return intf.get().format(value);
+        return value.toString();
+    }
+
+    /**
+     * Formats the decimal fact ({@link Constants#DEFAULT_DEC_FMT_STRING})
+     *
+     * @param value the value
+     * @return formatted value
+     */
+    public static String formatDecimal(double value) {
+        if (!FAST || Double.isNaN(value) || Double.isInfinite(value))
+            return decf.get().format(value);
+        return fastDecimal(value);
+    }
+
+    /**
+     * Formats the decimal fact ({@link Constants#DEFAULT_DEC_FMT_STRING})
+     *
+     * @param value the value
+     * @return formatted value
+     */
+    public static String formatDecimal(BigDecimal value) {
+        if (!FAST)
+            return decf.get().format(value);
+        BigDecimal r = value.setScale(2, RoundingMode.HALF_EVEN);
+        BigInteger u = r.unscaledValue();
+        // DecimalFormat keeps the sign of the negative values that round to zero
+        boolean negative = value.signum() < 0;
+        if (u.bitLength() < 63)
+            return format(negative, Math.abs(u.longValue()));
+        return format(negative, u.abs());
+    }
+
+    private static String fastDecimal(double value) {
+        boolean negative = (Double.doubleToRawLongBits(value) < 0);
+        if (Math.abs(value) < EXACT_LIMIT)
+            return format(negative, cents(value));
+        // DecimalFormat uses the shortest decimal representation of the double (Double.toString)
+        BigDecimal shortest = new BigDecimal(Double.toString(value));
+        BigDecimal r = (shortest.scale() <= 2) ? (shortest.setScale(2)) :
+                (new BigDecimal(value).setScale(2, RoundingMode.HALF_EVEN));
+        return format(negative, r.unscaledValue().abs());
+    }
+
+    /**
+     * Rounds the exact binary value of the double multiplied by 100 (HALF_EVEN)
+     *
+     * @param value the value, |value| < 2^40
+     * @return the absolute value in cents
+     */
+    private static long cents(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        int exponent = (int) ((bits >>> 52) & 0x7ff);
+        long mantissa = bits & 0xfffffffffffffL;
+        if (exponent == 0) {
+            // subnormal, far below 0.005
+            return 0;
+        }
+        mantissa |= 0x10000000000000L;
+        // value = mantissa * 2^-shift
+        int shift = 1075 - exponent;
+        long m = mantissa * 100;
+        if (shift >= 61) {
+            // m < 2^60, so the value is below a half cent
+            return 0;
+        }
+        long q = m >>> shift;
+        long rem = m & ((1L << shift) - 1);
+        long half = 1L << (shift - 1);
+        if (rem > half || (rem == half && (q & 1) == 1))
+            q++;
+        return q;
+    }
+
+    private static String format(boolean negative, long cents) {
+        char[] buf = new char[24];
+        int pos = buf.length;
+        long c = cents;
+        buf[--pos] = (char) ('0' + c % 10);
+        c /= 10;
+        buf[--pos] = (char) ('0' + c % 10);
+        c /= 10;
+        buf[--pos] = DECIMAL_SEPARATOR;
+        while (c > 0) {
+            buf[--pos] = (char) ('0' + c % 10);
+            c /= 10;
+        }
+        if (negative)
+            buf[--pos] = '-';
+        return new String(buf, pos, buf.length - pos);
+    }
+
+    private static String format(boolean negative, BigInteger cents) {
+        String digits = cents.toString();
+        StringBuilder sb = new StringBuilder(digits.length() + 3);
+        if (negative)
+            sb.append('-');
+        int n = digits.length();
+        if (n > 2)
+            sb.append(digits, 0, n - 2);
+        sb.append(DECIMAL_SEPARATOR);
+        if (n < 2)
+            sb.append('0');
+        sb.append(digits, Math.max(0, n - 2), n);
+        return sb.toString();
+    }
+
+    /**
+     * Compares the fast formatting with DecimalFormat for a few values (locale specific symbols, the rounding
+     * of the values whose shortest decimal representation is a tie, e.g. 1.015 = 1.01499999999999990230...)
+     *
+     * @return true if the fast formatting produces the DecimalFormat output
+     */
+    private static boolean selfCheck() {
+        DecimalFormat d = new DecimalFormat(Constants.DEFAULT_DEC_FMT_STRING);
+        DecimalFormat i = new DecimalFormat(Constants.DEFAULT_INT_FMT_STRING);
+        double[] doubles = new double[]{0, -0.5, 1234567.891, -98765.4321, 0.125, 1e20, 1.015, 2.675, -1.005,
+                0.285};
+        for (double v : doubles) {
+            if (!d.format(v).equals(fastDecimal(v)))
+                return false;
+        }
+        long[] longs = new long[]{0, -1234567, 9876543210L};
+        for (long v : longs) {
+            if (!i.format(v).equals(Long.toString(v)))
+                return false;
+        }
+        return true;
+    }
+
+}
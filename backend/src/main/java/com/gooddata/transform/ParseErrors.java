@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.transform;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates the value parsing errors of the transformation per column. Counts the failures and keeps
+ * a few sample values instead of logging every failure. The instance isn't thread safe, each Transformer
+ * has its own aggregator and the stage merges them at the end of the extract.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ParseErrors {
+
+    /**
+     * Maximal number of the sample values kept per column and problem
+     */
+    public static final int MAX_SAMPLES = 3;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    // the column that is being transformed
+    private String column;
+    // the last updated entry (the same column usually fails repeatedly)
+    private Entry last;
+
+    /**
+     * Sets the column that is being transformed
+     *
+     * @param column the column name
+     */
+    public void setColumn(String column) {
+        this.column = column;
+    }
+
+    /**
+     * Records a failure of the current column
+     *
+     * @param problem the problem description (should be a constant)
+     * @param value   the value that failed
+     */
+    public void add(String problem, Object value) {
+        Entry e = last;
+        if (e == null || e.column != column || e.problem != problem) {
+            e = entry(column, problem);
+            last = e;
+        }
+        e.count++;
+        if (e.samples.size() < MAX_SAMPLES)
+            e.samples.add(String.valueOf(value));
+    }
+
+    /**
+     * Adds all failures recorded by another aggregator
+     *
+     * @param other the other aggregator
+     */
+    public void addAll(ParseErrors other) {
+        for (Entry o : other.entries.values()) {
+            Entry e = entry(o.column, o.problem);
+            e.count += o.count;
+            for (int i = 0; i < o.samples.size() && e.samples.size() < MAX_SAMPLES; i++) {
+                e.samples.add(o.samples.get(i));
+            }
+        }
+    }
+
+    /**
+     * Removes all recorded failures
+     */
+    public void clear() {
+        entries.clear();
+        last = null;
+    }
+
+    /**
+     * Returns the total number of failures
+     *
+     * @return number of failures
+     */
+    public long getCount() {
+        long cnt = 0;
+        for (Entry e : entries.values()) {
+            cnt += e.count;
+        }
+        return cnt;
+    }
+
+    /**
+     * Returns the number of failures per column
+     *
+     * @return column name -> number of failures
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (Entry e : entries.values()) {
+            Long c = counts.get(e.column);
+            counts.put(e.column, (c != null) ? (c + e.count) : (e.count));
+        }
+        return counts;
+    }
+
+    /**
+     * Logs one summary line per column and problem
+     *
+     * @param l the logger
+     */
+    public void log(Logger l) {
+        for (Entry e : entries.values()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Column '").append(e.column).append("': ").append(e.problem).append(" in ").append(e.count)
+                    .append((e.count > 1) ? (" rows") : (" row")).append(". Samples:");
+            for (String s : e.samples) {
+                sb.append(" '").append(s).append("'");
+            }
+            l.info(sb.toString());
+        }
+    }
+
+    private Entry entry(String column, String problem) {
+        String key = column + "\u0000" + problem;
+        Entry e = entries.get(key);
+        if (e == null) {
+            e = new Entry(column, problem);
+            entries.put(key, e);
+        }
+        return e;
+    }
+
+    private static class Entry {
+        final String column;
+        final String problem;
+        final List<String> samples = new ArrayList<String>(MAX_SAMPLES);
+        long count = 0;
+
+        Entry(String column, String problem) {
+            this.column = column;
+            this.problem = problem;
+        }
+    }
+
+}
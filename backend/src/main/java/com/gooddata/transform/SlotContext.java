@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.transform;
+
+import org.apache.commons.jexl2.JexlContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index based JEXL context. The variable names are resolved to slots once (see {@link TransformationPlan})
+ * and the context is reused for all rows. Rows are separated by a generation stamp, so starting a new row
+ * doesn't need to clear the slot values.
+ */
+class SlotContext implements JexlContext {
+
+    private final Map<String, Integer> slots;
+    private final Object[] values;
+    private final int[] stamps;
+    private int generation = 1;
+
+    // variables that weren't known when the plan was compiled (e.g. assignments in the expressions)
+    private Map<String, Object> extra;
+
+    SlotContext(Map<String, Integer> slots) {
+        this.slots = slots;
+        this.values = new Object[slots.size()];
+        this.stamps = new int[slots.size()];
+    }
+
+    /**
+     * Starts a new row. All variables set for the previous row become unbound.
+     */
+    void reset() {
+        if (generation == Integer.MAX_VALUE) {
+            for (int i = 0; i < stamps.length; i++) {
+                stamps[i] = 0;
+                values[i] = null;
+            }
+            generation = 0;
+        }
+        generation++;
+        if (extra != null)
+            extra.clear();
+    }
+
+    /**
+     * Returns the slot of the variable
+     *
+     * @param name variable name
+     * @return the variable's slot or -1 if the variable doesn't have any
+     */
+    int slot(String name) {
+        Integer slot = slots.get(name);
+        return (slot != null) ? (slot.intValue()) : (-1);
+    }
+
+    void set(int slot, Object value) {
+        values[slot] = value;
+        stamps[slot] = generation;
+    }
+
+    Object get(int slot) {
+        return (stamps[slot] == generation) ? (values[slot]) : (null);
+    }
+
+    boolean has(int slot) {
+        return stamps[slot] == generation;
+    }
+
+    public Object get(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null)
+            return get(slot.intValue());
+        return (extra != null) ? (extra.get(name)) : (null);
+    }
+
+    public void set(String name, Object value) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            set(slot.intValue(), value);
+        } else {
+            if (extra == null)
+                extra = new HashMap<String, Object>();
+            extra.put(name, value);
+        }
+    }
+
+    public boolean has(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null)
+            return has(slot.intValue());
+        return extra != null && extra.containsKey(name);
+    }
+
+}
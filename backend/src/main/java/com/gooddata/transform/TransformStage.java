@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.transform;
+
+import com.gooddata.exception.InternalErrorException;
+import com.gooddata.modeling.model.SourceSchema;
+import com.gooddata.util.CSVWriter;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ordered transformation stage. The caller (reader) adds the extracted rows, the rows are transformed
+ * in batches by a pool of workers (each worker thread uses its own Transformer) and a single writer thread
+ * writes the transformed batches to the CSV in the original order. With parallelism 1 the batches are transformed
+ * and written in the caller's thread. The batches (including their output rows) are reused.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class TransformStage {
+
+    private static Logger l = Logger.getLogger(TransformStage.class);
+
+    /**
+     * Number of rows transformed in one batch
+     */
+    public static final int BATCH_SIZE = 500;
+
+    private static final AtomicInteger STAGE_COUNT = new AtomicInteger();
+
+    // marks the end of the batch queue
+    private static final Future<Batch> END = new FutureTask<Batch>(new Callable<Batch>() {
+        public Batch call() {
+            return null;
+        }
+    });
+
+    private final CSVWriter cw;
+    private final boolean transform;
+    private final int dateLength;
+    private final int parallelism;
+
+    // cached transformer of the caller's thread (header, sequential mode)
+    private final Transformer transformer;
+    // thread confined transformers of the workers
+    private final ThreadLocal<Transformer> transformers;
+    // all transformers created by the stage (statistics)
+    private final List<Transformer> created = Collections.synchronizedList(new ArrayList<Transformer>());
+
+    private ExecutorService workers;
+    private BlockingQueue<Future<Batch>> queue;
+    private Thread writer;
+    private volatile Throwable failure;
+    private Batch batch;
+    // batches written by the writer thread that can be reused
+    private final Queue<Batch> free = new ConcurrentLinkedQueue<Batch>();
+    private boolean finished = false;
+    private ParseErrors parseErrors = new ParseErrors();
+    private boolean logParseErrors = true;
+
+    /**
+     * Creates the transformation stage
+     *
+     * @param schema           the source schema
+     * @param expressionEngine the transformation expressions engine
+     * @param cw               the target CSV writer (the caller closes it)
+     * @param transform        perform transformations?
+     * @param dateLength       cuts the date to first dateLength chars
+     * @param parallelism      number of the transformation threads
+     */
+    public TransformStage(final SourceSchema schema, final String expressionEngine, CSVWriter cw, boolean transform,
+                          int dateLength, int parallelism) {
+        this.cw = cw;
+        this.transform = transform;
+        this.dateLength = dateLength;
+        this.parallelism = Math.max(1, parallelism);
+        this.transformer = TransformerCache.get(schema, expressionEngine);
+        created.add(transformer);
+        this.transformers = new ThreadLocal<Transformer>() {
+            protected Transformer initialValue() {
+                Transformer t = Transformer.create(schema, expressionEngine);
+                created.add(t);
+                return t;
+            }
+        };
+        if (this.parallelism > 1) {
+            start(schema.getName());
+        }
+    }
+
+    private void start(String name) {
+        final String prefix = "GdcTransform-" + STAGE_COUNT.incrementAndGet() + "-" + name + "-";
+        workers = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private int cnt = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + (++cnt));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        // bounds the number of the batches in flight
+        queue = new ArrayBlockingQueue<Future<Batch>>(parallelism * 2);
+        writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, prefix + "writer");
+        writer.setDaemon(true);
+        writer.start();
+        l.debug("Started transformation stage with " + parallelism + " workers.");
+    }
+
+    /**
+     * Returns the header of the transformed CSV
+     *
+     * @param transform perform transformations?
+     * @return the header
+     */
+    public String[] getHeader(boolean transform) {
+        return transformer.getHeader(transform);
+    }
+
+    /**
+     * Adds the extracted row to the stage
+     *
+     * @param rowNumber the row number (for the error messages)
+     * @param row       the extracted row data, the stage takes the ownership of the array
+     * @throws IOException in case of IO issues
+     */
+    public void add(int rowNumber, Object[] row) throws IOException {
+        if (workers != null) {
+            checkFailure();
+        }
+        if (batch == null) {
+            batch = free.poll();
+            if (batch == null)
+                batch = new Batch();
+        }
+        batch.add(rowNumber, row);
+        if (batch.size == BATCH_SIZE) {
+            if (workers != null) {
+                submit();
+            } else {
+                process(transformer, batch);
+                write(batch);
+            }
+        }
+    }
+
+    /**
+     * Adds a copy of the extracted row to the stage. The copy is stored in an array owned by the batch,
+     * so the caller can reuse the row array (e.g. {@link com.gooddata.util.CSVReader#readNext(String[])}).
+     *
+     * @param rowNumber the row number (for the error messages)
+     * @param row       the extracted row data, the stage doesn't keep the array
+     * @throws IOException in case of IO issues
+     */
+    public void addCopy(int rowNumber, String[] row) throws IOException {
+        if (batch == null) {
+            batch = free.poll();
+            if (batch == null)
+                batch = new Batch();
+        }
+        add(rowNumber, batch.copy(row));
+    }
+
+    /**
+     * Waits until all added rows are written to the CSV and stops the stage
+     *
+     * @throws IOException in case of IO issues
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        if (workers != null) {
+            if (failure == null && batch != null && batch.size > 0) {
+                submit();
+            }
+            stop();
+            checkFailure();
+        } else if (batch != null && batch.size > 0) {
+            process(transformer, batch);
+            write(batch);
+        }
+        cw.flush();
+        finished = true;
+        logStatistics();
+    }
+
+    private void logStatistics() {
+        long hits = 0, misses = 0;
+        ParseErrors errors = new ParseErrors();
+        synchronized (created) {
+            for (Transformer t : created) {
+                hits += t.getDateArithmetics().getCacheHits();
+                misses += t.getDateArithmetics().getCacheMisses();
+                errors.addAll(t.getParseErrors());
+            }
+        }
+        if (hits + misses > 0) {
+            l.debug("Date arithmetics cache hits=" + hits + ", misses=" + misses + ", hit rate=" +
+                    (100 * hits / (hits + misses)) + "%.");
+        }
+        if (logParseErrors)
+            errors.log(l);
+        parseErrors.addAll(errors);
+    }
+
+    /**
+     * Returns the value parsing errors aggregated per column. The errors are available after the stage finishes.
+     *
+     * @return the parse errors
+     */
+    public ParseErrors getParseErrors() {
+        return parseErrors;
+    }
+
+    /**
+     * Sets the aggregator that receives the stage's parse errors when the stage finishes (e.g. the run statistics)
+     *
+     * @param parseErrors the parse errors aggregator
+     */
+    public void setParseErrors(ParseErrors parseErrors) {
+        this.parseErrors = parseErrors;
+    }
+
+    /**
+     * Sets whether the stage logs the parse errors summary when it finishes. The stages of a split input
+     * don't log, their caller logs the merged summary.
+     *
+     * @param logParseErrors log the parse errors summary?
+     */
+    public void setLogParseErrors(boolean logParseErrors) {
+        this.logParseErrors = logParseErrors;
+    }
+
+    /**
+     * Stops the stage without waiting for the remaining rows. Does nothing when the stage has been finished.
+     */
+    public void abort() {
+        if (workers != null && !finished) {
+            finished = true;
+            if (failure == null)
+                failure = new InternalErrorException("The transformation has been aborted.");
+            workers.shutdownNow();
+            writer.interrupt();
+        }
+    }
+
+    private void submit() {
+        final Batch b = batch;
+        batch = null;
+        Future<Batch> f = workers.submit(new Callable<Batch>() {
+            public Batch call() {
+                process(transformers.get(), b);
+                return b;
+            }
+        });
+        put(f);
+    }
+
+    private void stop() {
+        put(END);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new InternalErrorException("Interrupted while waiting for the transformation.", e);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private void put(Future<Batch> f) {
+        try {
+            queue.put(f);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new InternalErrorException("Interrupted while waiting for the transformation.", e);
+        }
+    }
+
+    /**
+     * The writer thread loop. Writes the batches in the order they have been submitted. After a failure
+     * drains the queue so the reader never blocks.
+     */
+    private void write() {
+        try {
+            while (true) {
+                Future<Batch> f = queue.take();
+                if (f == END)
+                    break;
+                if (failure != null) {
+                    f.cancel(true);
+                    continue;
+                }
+                try {
+                    Batch b = f.get();
+                    write(b);
+                    cw.flush();
+                    free.offer(b);
+                } catch (ExecutionException e) {
+                    fail(e.getCause());
+                } catch (IOException e) {
+                    fail(e);
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            l.debug("The transformation writer has been interrupted.");
+        }
+    }
+
+    private void fail(Throwable e) {
+        if (failure == null) {
+            l.debug("Transformation failed.", e);
+            failure = e;
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable e = failure;
+        if (e != null) {
+            abort();
+            if (e instanceof IOException)
+                throw (IOException) e;
+            if (e instanceof RuntimeException)
+                throw (RuntimeException) e;
+            if (e instanceof Error)
+                throw (Error) e;
+            throw new InternalErrorException(e);
+        }
+    }
+
+    /**
+     * Transforms the batch rows to the batch result
+     *
+     * @param t the transformer confined to the current thread
+     * @param b the batch
+     */
+    private void process(Transformer t, Batch b) {
+        if (transform) {
+            t.transformRows(b.rows, b.rowNumbers, b.size, dateLength, b.result);
+        } else {
+            for (int i = 0; i < b.size; i++) {
+                b.result[i] = toStrings(b.rows[i]);
+            }
+        }
+        // release the extracted rows
+        Arrays.fill(b.rows, 0, b.size, null);
+    }
+
+    private void write(Batch b) {
+        for (int i = 0; i < b.size; i++) {
+            cw.writeNext(b.result[i]);
+        }
+        b.size = 0;
+    }
+
+    private static String[] toStrings(Object[] row) {
+        if (row instanceof String[])
+            return (String[]) row;
+        String[] r = new String[row.length];
+        for (int i = 0; i < row.length; i++) {
+            r[i] = (row[i] != null) ? (row[i].toString()) : ("");
+        }
+        return r;
+    }
+
+    /**
+     * Rows transformed in one task and their reusable output block
+     */
+    private static class Batch {
+        final Object[][] rows = new Object[BATCH_SIZE][];
+        final int[] rowNumbers = new int[BATCH_SIZE];
+        final String[][] result = new String[BATCH_SIZE][];
+        // reused copies of the added rows
+        final String[][] copies = new String[BATCH_SIZE][];
+        int size = 0;
+
+        void add(int rowNumber, Object[] row) {
+            rowNumbers[size] = rowNumber;
+            rows[size++] = row;
+        }
+
+        String[] copy(String[] row) {
+            String[] c = copies[size];
+            if (c == null || c.length != row.length) {
+                c = new String[row.length];
+                copies[size] = c;
+            }
+            System.arraycopy(row, 0, c, 0, row.length);
+            return c;
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.transform;
+
+import com.gooddata.modeling.model.SourceColumn;
+import com.gooddata.modeling.model.SourceSchema;
+import com.gooddata.util.KeyDigest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of the {@link SourceSchema} row transformation. The column kinds, row positions and the
+ * expression variables are resolved once per schema, so the per-row work in
+ * {@link Transformer#transformRow(Object[], int)} is reduced to array indexing.
+ * The plan holds the per-row state (context and output buffer), so it must be confined to its {@link Transformer}.
+ */
+class TransformationPlan {
+
+    static final String IDENTITY_VARIABLE = SourceColumn.LDM_IDENTITY;
+    static final String DATE_ARITHMETICS_VARIABLE = "GdcDateArithmetics";
+
+    /**
+     * Core (non-transformed) columns in the order of the processed row
+     */
+    final SourceColumn[] cores;
+    final boolean[] coreFact;
+    final boolean[] coreDate;
+    final boolean[] coreKey;
+    final int[] coreSlot;
+
+    /**
+     * Output (non-IGNORE) columns in the schema order
+     */
+    final int[] outColumn;
+    final boolean[] outTransformed;
+    final int[] outSlot;
+    final String[] outName;
+
+    final boolean computeIdentity;
+    final int identitySlot;
+    final int arithmeticsSlot;
+
+    final SlotContext context;
+    final String[] output;
+    final KeyDigest key;
+
+    /**
+     * Compiles the plan
+     *
+     * @param schema the source schema
+     */
+    TransformationPlan(SourceSchema schema) {
+        List<SourceColumn> columns = schema.getColumns();
+        computeIdentity = (schema.getIdentityColumn() >= 0);
+        key = new KeyDigest(schema.getIdentityHash());
+        Map<String, Integer> slots = new HashMap<String, Integer>();
+        List<Integer> coreIdx = new ArrayList<Integer>();
+        List<Integer> outIdx = new ArrayList<Integer>();
+        for (int i = 0; i < columns.size(); i++) {
+            SourceColumn c = columns.get(i);
+            slot(slots, c.getName());
+            if (c.getTransformation() == null)
+                coreIdx.add(i);
+            if (!SourceColumn.LDM_TYPE_IGNORE.equalsIgnoreCase(c.getLdmType()))
+                outIdx.add(i);
+        }
+        identitySlot = slot(slots, IDENTITY_VARIABLE);
+        arithmeticsSlot = slot(slots, DATE_ARITHMETICS_VARIABLE);
+
+        int n = coreIdx.size();
+        cores = new SourceColumn[n];
+        coreFact = new boolean[n];
+        coreDate = new boolean[n];
+        coreKey = new boolean[n];
+        coreSlot = new int[n];
+        for (int i = 0; i < n; i++) {
+            SourceColumn c = columns.get(coreIdx.get(i));
+            String type = c.getLdmType();
+            cores[i] = c;
+            coreFact[i] = SourceColumn.LDM_TYPE_FACT.equalsIgnoreCase(type);
+            coreDate[i] = SourceColumn.LDM_TYPE_DATE.equalsIgnoreCase(type);
+            coreKey[i] = computeIdentity && (SourceColumn.LDM_TYPE_ATTRIBUTE.equalsIgnoreCase(type) ||
+                    SourceColumn.LDM_TYPE_DATE.equalsIgnoreCase(type) ||
+                    SourceColumn.LDM_TYPE_REFERENCE.equalsIgnoreCase(type));
+            coreSlot[i] = slots.get(c.getName());
+        }
+
+        n = outIdx.size();
+        outColumn = new int[n];
+        outTransformed = new boolean[n];
+        outSlot = new int[n];
+        outName = new String[n];
+        for (int i = 0; i < n; i++) {
+            SourceColumn c = columns.get(outIdx.get(i));
+            outColumn[i] = outIdx.get(i);
+            outTransformed[i] = (c.getTransformation() != null);
+            outSlot[i] = slots.get(c.getName());
+            outName[i] = c.getName();
+        }
+
+        context = new SlotContext(slots);
+        output = new String[n];
+    }
+
+    /**
+     * Returns the slot of the variable, allocates a new one if the variable hasn't been seen yet
+     *
+     * @param slots allocated slots
+     * @param name  variable name
+     * @return the variable's slot
+     */
+    private static int slot(Map<String, Integer> slots, String name) {
+        Integer s = slots.get(name);
+        if (s == null) {
+            s = slots.size();
+            slots.put(name, s);
+        }
+        return s;
+    }
+
+}
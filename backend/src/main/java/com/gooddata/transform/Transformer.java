@@ -28,18 +28,15 @@ import com.gooddata.exception.InvalidParameterException;
 import com.gooddata.modeling.model.SourceColumn;
 import com.gooddata.modeling.model.SourceSchema;
 import com.gooddata.util.DateUtil;
-import org.apache.commons.codec.digest.DigestUtils;
+import com.gooddata.util.KeyDigest;
 import org.apache.commons.jexl2.Expression;
-import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
-import org.apache.commons.jexl2.MapContext;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -53,10 +50,29 @@ public class Transformer {
 
     private static Logger l = Logger.getLogger(Transformer.class);
 
+    /**
+     * Interprets the transformation expressions by JEXL
+     */
+    public static final String EXPRESSION_ENGINE_JEXL = "JEXL";
+
+    /**
+     * Compiles the transformation expressions to JVM classes, falls back to JEXL for unsupported expressions
+     */
+    public static final String EXPRESSION_ENGINE_BYTECODE = "BYTECODE";
+
+    private static final String MISSING_VALUE_ERROR = "the column doesn't contain any value";
+
     private Expression[] expressions;
     private SourceSchema schema;
+    private TransformationPlan plan;
+    private final String expressionEngine;
 
     protected Transformer(SourceSchema schema) {
+        this(schema, EXPRESSION_ENGINE_JEXL);
+    }
+
+    protected Transformer(SourceSchema schema, String expressionEngine) {
+        this.expressionEngine = checkExpressionEngine(expressionEngine);
         setSchema(schema);
     }
 
@@ -64,31 +80,49 @@ public class Transformer {
         return new Transformer(schema);
     }
 
+    /**
+     * Creates the transformer
+     *
+     * @param schema           the source schema
+     * @param expressionEngine the transformation expressions engine (JEXL | BYTECODE), null for the default JEXL
+     * @return new Transformer
+     */
+    public static Transformer create(SourceSchema schema, String expressionEngine) {
+        return new Transformer(schema, expressionEngine);
+    }
+
+    /**
+     * Validates the expression engine name
+     *
+     * @param expressionEngine the expression engine name
+     * @return the normalized expression engine name
+     */
+    public static String checkExpressionEngine(String expressionEngine) {
+        if (expressionEngine == null || expressionEngine.length() <= 0)
+            return EXPRESSION_ENGINE_JEXL;
+        if (EXPRESSION_ENGINE_JEXL.equalsIgnoreCase(expressionEngine))
+            return EXPRESSION_ENGINE_JEXL;
+        if (EXPRESSION_ENGINE_BYTECODE.equalsIgnoreCase(expressionEngine))
+            return EXPRESSION_ENGINE_BYTECODE;
+        throw new InvalidParameterException("Unknown expression engine '" + expressionEngine + "'. Use " +
+                EXPRESSION_ENGINE_JEXL + " or " + EXPRESSION_ENGINE_BYTECODE + ".");
+    }
+
     private final String[] fk = new String[]{};
-    private final DateArithmetics da = new DateArithmetics();
+    private final ParseErrors errors = new ParseErrors();
+    private final DateArithmetics da = new DateArithmetics(errors);
 
     public String[] getHeader(boolean transform) {
-        List<SourceColumn> columns = schema.getColumns();
+        TransformationPlan p = plan;
         List<String> header = new ArrayList<String>();
-        for (int i = 0; i < columns.size(); i++) {
-            SourceColumn c = columns.get(i);
-            if (!SourceColumn.LDM_TYPE_IGNORE.equalsIgnoreCase(c.getLdmType())) {
-                if (transform) {
-                    header.add(c.getName());
-                } else {
-                    String t = c.getTransformation();
-                    if (t == null) {
-                        header.add(c.getName());
-                    }
-                }
+        for (int j = 0; j < p.outName.length; j++) {
+            if (transform || !p.outTransformed[j]) {
+                header.add(p.outName[j]);
             }
         }
         return header.toArray(fk);
     }
 
-    protected DecimalFormat decf = new DecimalFormat(Constants.DEFAULT_DEC_FMT_STRING);
-    protected DecimalFormat intf = new DecimalFormat(Constants.DEFAULT_INT_FMT_STRING);
-
     protected JexlEngine jexl = new JexlEngine();
 
     /**
@@ -99,86 +133,131 @@ public class Transformer {
      * @return
      */
     public String[] transformRow(Object[] row, int dateLength) {
+        String[] output = plan.output;
+        int cnt = transformRow(row, dateLength, output);
+        String[] nrow = new String[cnt];
+        System.arraycopy(output, 0, nrow, 0, cnt);
+        return nrow;
+    }
+
+    /**
+     * Runs all the row transformations and stores the transformed values to the target array
+     *
+     * @param row        the row data
+     * @param dateLength cuts the date to first dateLength chars
+     * @param target     the target array, must have at least {@link #getOutputWidth()} items
+     * @return number of values stored to the target array
+     */
+    public int transformRow(Object[] row, int dateLength, String[] target) {
         try {
-            if (row != null) {
-                List<SourceColumn> columns = schema.getColumns();
-                boolean computeIdentity = (schema.getIdentityColumn() >= 0);
-                int idx = 0;
-                String key = "";
-                JexlContext jc = new MapContext();
-                for (int i = 0; i < columns.size(); i++) {
-                    SourceColumn c = columns.get(i);
-                    String t = c.getTransformation();
-                    if (t == null) {
-                        // this is core (non-transformed) column
-                        if (idx < row.length) {
-                            if (SourceColumn.LDM_TYPE_FACT.equalsIgnoreCase(c.getLdmType())) {
-                                row[idx] = handleFact(row[idx]);
-                            }
-                            if (SourceColumn.LDM_TYPE_DATE.equalsIgnoreCase(c.getLdmType())) {
-                                row[idx] = handleDate(row[idx], c);
-                                row[idx] = cutStringDate(row[idx], dateLength);
-                            }
-                            // compute identity if required
-                            if (computeIdentity && SourceColumn.LDM_TYPE_ATTRIBUTE.equalsIgnoreCase(c.getLdmType()) ||
-                                    SourceColumn.LDM_TYPE_DATE.equalsIgnoreCase(c.getLdmType()) ||
-                                    SourceColumn.LDM_TYPE_REFERENCE.equalsIgnoreCase(c.getLdmType())) {
-                                key += row[idx] + "|";
-                            }
-                            jc.set(c.getName(), (row[idx] != null) ? (row[idx]) : (""));
-                            idx++;
-                        } else {
-                            throw new InvalidParameterException("Transform: The schema " + schema.getName() + " contains different" +
-                                    " number of columns than the processed row.");
-                        }
-                    }
+            return transformRowValues(row, dateLength, target);
+        } catch (Exception e) {
+            throw new InvalidParameterException("Transformation expression error (see debug log). " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs all the row transformations for a block of rows. The target rows are reused when they have the
+     * output width, so a target block can be passed repeatedly.
+     *
+     * @param rows       the rows data
+     * @param rowNumbers the row numbers reported in the error message, null for the position in the block (1-based)
+     * @param count      number of rows to transform
+     * @param dateLength cuts the date to first dateLength chars
+     * @param target     the target block, must have at least count rows
+     * @throws InvalidParameterException with the number of the failing row
+     */
+    public void transformRows(Object[][] rows, int[] rowNumbers, int count, int dateLength, String[][] target) {
+        int width = plan.output.length;
+        int i = 0;
+        try {
+            for (; i < count; i++) {
+                String[] out = target[i];
+                if (out == null || out.length != width)
+                    out = new String[width];
+                int cnt = transformRowValues(rows[i], dateLength, out);
+                if (cnt != width) {
+                    String[] nrow = new String[cnt];
+                    System.arraycopy(out, 0, nrow, 0, cnt);
+                    out = nrow;
                 }
-                // insert identity var
-                if (computeIdentity) {
-                    String identity = DigestUtils.md5Hex(key);
-                    jc.set("IDENTITY", identity);
+                target[i] = out;
+            }
+        } catch (Exception e) {
+            int rowNumber = (rowNumbers != null) ? (rowNumbers[i]) : (i + 1);
+            throw new InvalidParameterException("Transformation expression error (see debug log). " + e.getMessage() +
+                    " Error occured at row " + rowNumber, e);
+        }
+    }
+
+    private int transformRowValues(Object[] row, int dateLength, String[] target) {
+        if (row != null) {
+            TransformationPlan p = plan;
+            SourceColumn[] cores = p.cores;
+            if (cores.length > row.length) {
+                throw new InvalidParameterException("Transform: The schema " + schema.getName() + " contains different" +
+                        " number of columns than the processed row.");
+            }
+            SlotContext jc = p.context;
+            jc.reset();
+            KeyDigest key = p.key;
+            key.reset();
+            for (int i = 0; i < cores.length; i++) {
+                Object value = row[i];
+                if (p.coreFact[i]) {
+                    value = handleFact(value);
+                }
+                if (p.coreDate[i]) {
+                    value = handleDate(value, cores[i]);
+                    value = cutStringDate(value, dateLength);
+                }
+                row[i] = value;
+                // compute identity if required
+                if (p.coreKey[i]) {
+                    key.append(value).append('|');
                 }
+                jc.set(p.coreSlot[i], (value != null) ? (value) : (""));
+            }
+            // insert identity var
+            if (p.computeIdentity) {
+                String identity = key.hex();
+                jc.set(p.identitySlot, identity);
+            }
 
-                jc.set("GdcDateArithmetics", da);
-
-
-                idx = 0;
-                int cntWithoutIgnored = columns.size();
-                List<SourceColumn> ignored = schema.getIgnored();
-                if (ignored != null)
-                    cntWithoutIgnored -= ignored.size();
-                List<String> nrow = new ArrayList<String>(cntWithoutIgnored);
-                for (int i = 0; i < columns.size(); i++) {
-                    SourceColumn c = columns.get(i);
-                    String t = c.getTransformation();
-                    //System.err.println("Column "+c.getName()+" tx:"+c.getTransformation());
-                    String cid = c.getName();
-                    if (!SourceColumn.LDM_TYPE_IGNORE.equalsIgnoreCase(c.getLdmType())) {
-                        if (t == null) {
-                            Object value = jc.get(cid);
-                            if (value != null) {
-                                nrow.add(value.toString());
-                            } else {
-                                l.debug("The column " + cid + " doesn't contain any value.");
-                            }
+            jc.set(p.arithmeticsSlot, da);
 
-                        } else {
-                            Object result = expressions[i].evaluate(jc);
-                            String value = (result != null) ? (result.toString()) : ("");
-                            nrow.add(value);
-                            jc.set(cid, result);
-                        }
+            int cnt = 0;
+            for (int j = 0; j < p.outColumn.length; j++) {
+                if (p.outTransformed[j]) {
+                    errors.setColumn(p.outName[j]);
+                    Object result = expressions[p.outColumn[j]].evaluate(jc);
+                    target[cnt++] = (result != null) ? (result.toString()) : ("");
+                    jc.set(p.outSlot[j], result);
+                } else {
+                    Object value = jc.get(p.outSlot[j]);
+                    if (value != null) {
+                        target[cnt++] = value.toString();
+                    } else {
+                        errors.setColumn(p.outName[j]);
+                        errors.add(MISSING_VALUE_ERROR, "");
                     }
                 }
-                return nrow.toArray(fk);
-            } else {
-                throw new InvalidParameterException("The number of columns in the transformed row is different than in the schema.");
             }
-        } catch (Exception e) {
-            throw new InvalidParameterException("Transformation expression error (see debug log). " + e.getMessage(), e);
+            return cnt;
+        } else {
+            throw new InvalidParameterException("The number of columns in the transformed row is different than in the schema.");
         }
     }
 
+    /**
+     * Returns the number of columns produced by the transformation
+     *
+     * @return the number of transformed columns
+     */
+    public int getOutputWidth() {
+        return plan.output.length;
+    }
+
     private Object cutStringDate(Object o, int dateLength) {
         if (dateLength > 0) {
             if (o != null) {
@@ -229,17 +308,17 @@ public class Transformer {
             return "";
         if (o instanceof Number) {
             if (o instanceof Integer) {
-                return intf.format(o);
+                return FactFormatter.formatInteger(((Integer) o).longValue());
             } else if (o instanceof BigInteger) {
-                return intf.format(o);
+                return FactFormatter.formatInteger((BigInteger) o);
             } else if (o instanceof Long) {
-                return intf.format(o);
+                return FactFormatter.formatInteger(((Long) o).longValue());
             } else if (o instanceof Double) {
-                return decf.format(o);
+                return FactFormatter.formatDecimal(((Double) o).doubleValue());
             } else if (o instanceof Float) {
-                return decf.format(o);
+                return FactFormatter.formatDecimal(((Float) o).doubleValue());
             } else if (o instanceof BigDecimal) {
-                return decf.format(o);
+                return FactFormatter.formatDecimal((BigDecimal) o);
             }
         }
         return o;
@@ -255,6 +334,8 @@ public class Transformer {
             if (schema != null) {
                 List<SourceColumn> columns = schema.getColumns();
                 if (columns != null & columns.size() > 0) {
+                    TransformationPlan p = new TransformationPlan(schema);
+                    boolean compile = EXPRESSION_ENGINE_BYTECODE.equals(expressionEngine);
                     Expression[] es = new Expression[columns.size()];
                     for (int i = 0; i < columns.size(); i++) {
                         SourceColumn c = columns.get(i);
@@ -262,10 +343,16 @@ public class Transformer {
                             String t = c.getTransformation();
                             if (t != null) {
                                 es[i] = jexl.createExpression(t);
+                                if (compile) {
+                                    Expression ce = ExpressionCompiler.compile(t, es[i], p.context);
+                                    if (ce != null)
+                                        es[i] = ce;
+                                }
                             }
                         }
                     }
                     setExpressions(es);
+                    this.plan = p;
                     this.schema = schema;
                 } else {
                     throw new InvalidParameterException("The Transformer requires a non-empty schema to run.");
@@ -278,6 +365,28 @@ public class Transformer {
         }
     }
 
+    /**
+     * Returns the date arithmetics used by the transformations (e.g. for its cache statistics)
+     *
+     * @return the date arithmetics
+     */
+    public DateArithmetics getDateArithmetics() {
+        return da;
+    }
+
+    /**
+     * Returns the per column aggregator of the value parsing errors
+     *
+     * @return the parse errors
+     */
+    public ParseErrors getParseErrors() {
+        return errors;
+    }
+
+    public String getExpressionEngine() {
+        return expressionEngine;
+    }
+
     protected Expression[] getExpressions() {
         return expressions;
     }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.transform;
+
+import com.gooddata.modeling.model.SourceColumn;
+import com.gooddata.modeling.model.SourceSchema;
+import com.gooddata.util.KeyDigest;
+import org.apache.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the compiled transformers. The transformers are keyed by the content fingerprint of the schema
+ * (columns, types, formats, transformations) and the expression engine, so an equal schema loaded again
+ * (e.g. in a loop over datasets or partitions) doesn't recompile the transformation expressions.
+ * The Transformer isn't thread safe, so each thread gets its own instance. The cache keeps at most
+ * {@link #MAX_SCHEMAS} schemas (least recently used are evicted) and can be evicted explicitly.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class TransformerCache {
+
+    private static Logger l = Logger.getLogger(TransformerCache.class);
+
+    /**
+     * Maximal number of the cached schemas
+     */
+    public static final int MAX_SCHEMAS = 64;
+
+    private static final Map<String, ThreadLocal<Transformer>> cache =
+            new LinkedHashMap<String, ThreadLocal<Transformer>>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, ThreadLocal<Transformer>> eldest) {
+                    return size() > MAX_SCHEMAS;
+                }
+            };
+
+    /**
+     * Returns the calling thread's transformer for the schema. Compiles a new transformer if the thread
+     * hasn't used an equal schema yet. The statistics (parse errors, date cache counters) of the returned
+     * transformer are reset.
+     *
+     * @param schema           the source schema
+     * @param expressionEngine the transformation expressions engine (JEXL | BYTECODE), null for the default JEXL
+     * @return the calling thread's transformer
+     */
+    public static Transformer get(SourceSchema schema, String expressionEngine) {
+        String engine = Transformer.checkExpressionEngine(expressionEngine);
+        String key = fingerprint(schema, engine);
+        ThreadLocal<Transformer> transformers;
+        synchronized (cache) {
+            transformers = cache.get(key);
+            if (transformers == null) {
+                transformers = new ThreadLocal<Transformer>();
+                cache.put(key, transformers);
+            }
+        }
+        Transformer t = transformers.get();
+        if (t == null) {
+            l.debug("Compiling the transformer for the schema " + schema.getName());
+            t = Transformer.create(schema, engine);
+            transformers.set(t);
+        } else {
+            t.getDateArithmetics().resetStatistics();
+        }
+        return t;
+    }
+
+    /**
+     * Evicts the transformers of the schema (all threads)
+     *
+     * @param schema the source schema
+     */
+    public static void evict(SourceSchema schema) {
+        synchronized (cache) {
+            cache.remove(fingerprint(schema, Transformer.EXPRESSION_ENGINE_JEXL));
+            cache.remove(fingerprint(schema, Transformer.EXPRESSION_ENGINE_BYTECODE));
+        }
+    }
+
+    /**
+     * Evicts all cached transformers
+     */
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Returns the number of the cached schemas
+     *
+     * @return number of the cached schemas
+     */
+    public static int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Computes the content fingerprint of the schema. The fingerprint covers everything the compiled
+     * transformation depends on.
+     *
+     * @param schema           the source schema
+     * @param expressionEngine the expression engine
+     * @return the fingerprint
+     */
+    protected static String fingerprint(SourceSchema schema, String expressionEngine) {
+        KeyDigest d = new KeyDigest(KeyDigest.HASH_MD5);
+        d.append(expressionEngine).append('\n');
+        d.append(schema.getName()).append('\n');
+        d.append(schema.getIdentityHash()).append('\n');
+        List<SourceColumn> columns = schema.getColumns();
+        if (columns != null) {
+            for (SourceColumn c : columns) {
+                if (c != null) {
+                    d.append(c.getName()).append('\t');
+                    d.append(c.getLdmType()).append('\t');
+                    d.append(c.getFormat()).append('\t');
+                    d.append(c.isDatetime() ? 't' : 'f').append('\t');
+                    d.append(c.getTransformation()).append('\n');
+                }
+            }
+        }
+        return d.hex();
+    }
+
+}
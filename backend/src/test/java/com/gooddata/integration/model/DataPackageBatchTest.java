@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.integration.model;
+
+import com.gooddata.exception.InvalidParameterException;
+import com.gooddata.integration.rest.GdcRESTApiWrapper;
+import com.gooddata.util.FileUtil;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DataPackageBatchTest {
+
+    @Test
+    public void testBatchPackage() throws IOException {
+        DataPackageBatch batch = new DataPackageBatch();
+        File zip = File.createTempFile("batch", ".zip");
+        try {
+            assertTrue(batch.isEmpty());
+            File a = createDataFile("a");
+            batch.add("dataset.a", createManifest("dataset.a"), a);
+            batch.add("dataset.b", createManifest("dataset.b"), createDataFile("b"));
+            // the data file has been moved to the batch
+            assertFalse(a.exists());
+            try {
+                batch.add("dataset.a", createManifest("dataset.a"), createDataFile("a"));
+                fail("The duplicate dataset hasn't been reported.");
+            } catch (InvalidParameterException e) {
+                // expected
+            }
+            assertEquals(2, batch.getDatasets().size());
+
+            JSONArray manifests = JSONObject.fromObject(batch.getManifest()).getJSONArray("dataSetSLIManifestList");
+            assertEquals(2, manifests.size());
+            JSONObject b = manifests.getJSONObject(1).getJSONObject("dataSetSLIManifest");
+            assertEquals("dataset.b", b.getString("dataSet"));
+            assertEquals("dataset.b.csv", b.getString("file"));
+
+            batch.deploy(zip.getAbsolutePath(), Deflater.DEFAULT_COMPRESSION, 1);
+            List<String> entries = new ArrayList<String>();
+            ZipFile zf = new ZipFile(zip);
+            try {
+                for (Enumeration<? extends ZipEntry> e = zf.entries(); e.hasMoreElements();) {
+                    entries.add(e.nextElement().getName());
+                }
+            } finally {
+                zf.close();
+            }
+            assertEquals(3, entries.size());
+            assertTrue(entries.contains("dataset.a.csv"));
+            assertTrue(entries.contains("dataset.b.csv"));
+            assertTrue(entries.contains(GdcRESTApiWrapper.DLI_MANIFEST_FILENAME));
+        } finally {
+            batch.delete();
+            zip.delete();
+        }
+    }
+
+    private static File createDataFile(String value) throws IOException {
+        File f = File.createTempFile("data", ".csv");
+        FileUtil.writeStringToFile("name\n" + value + "\n", f.getAbsolutePath());
+        return f;
+    }
+
+    private static String createManifest(String dataset) {
+        return "{\"dataSetSLIManifest\":{\"parts\":[{\"columnName\":\"name\",\"mode\":\"FULL\"," +
+                "\"populates\":[\"label." + dataset.substring(8) + ".name\"]}],\"file\":\"data.csv\"," +
+                "\"dataSet\":\"" + dataset + "\"}}";
+    }
+
+}
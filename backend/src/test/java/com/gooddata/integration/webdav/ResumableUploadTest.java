@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.integration.webdav;
+
+import com.gooddata.exception.HttpMethodException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.httpclient.HttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ResumableUploadTest {
+
+    private static final int PART_SIZE = 64 * 1024;
+
+    private HttpServer server;
+    private WebDavStandIn dav;
+    private File file;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        dav = new WebDavStandIn();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", dav);
+        server.start();
+        data = new byte[PART_SIZE * 10 + 1234];
+        new Random(1).nextBytes(data);
+        file = File.createTempFile("upload", ".zip");
+        OutputStream os = new FileOutputStream(file);
+        os.write(data);
+        os.close();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        file.delete();
+    }
+
+    @Test
+    public void testPartsWithFailures() throws IOException {
+        // a server error and a connection dropped in the middle of the part
+        dav.failingPuts.add(3);
+        dav.droppedPuts.add(7);
+        ResumableUpload upload = createUpload();
+        upload.upload();
+        assertArrayEquals(data, dav.content);
+        // only the failed parts are sent again
+        assertEquals(2, upload.getRetries());
+        assertEquals(11 + 2, dav.puts);
+        // the resource isn't downloaded by default
+        assertEquals(0, dav.gets);
+    }
+
+    @Test
+    public void testRangesNotSupported() throws IOException {
+        dav.rangesSupported = false;
+        ResumableUpload upload = createUpload();
+        upload.upload();
+        assertArrayEquals(data, dav.content);
+        assertEquals(2, dav.puts);
+    }
+
+    @Test
+    public void testRangesIgnored() throws IOException {
+        dav.rangesIgnored = true;
+        ResumableUpload upload = createUpload();
+        upload.upload();
+        assertArrayEquals(data, dav.content);
+        // two parts are sent before the server is found to ignore the ranges
+        assertEquals(3, dav.puts);
+    }
+
+    @Test
+    public void testChecksumMismatch() throws IOException {
+        dav.corrupting = true;
+        ResumableUpload upload = createUpload();
+        upload.setVerifyContent(true);
+        try {
+            upload.upload();
+            fail("The corrupted upload hasn't been detected.");
+        } catch (HttpMethodException e) {
+            assertEquals(2, dav.gets);
+        }
+    }
+
+    @Test
+    public void testContentMd5Mismatch() throws IOException {
+        dav.corrupting = true;
+        dav.contentMd5 = true;
+        try {
+            createUpload().upload();
+            fail("The corrupted upload hasn't been detected.");
+        } catch (HttpMethodException e) {
+            assertEquals(0, dav.gets);
+        }
+    }
+
+    @Test
+    public void testEtagChecksum() throws IOException {
+        dav.etag = true;
+        ResumableUpload upload = createUpload();
+        upload.setVerifyContent(true);
+        upload.upload();
+        assertArrayEquals(data, dav.content);
+        // the matching ETag makes the download unnecessary
+        assertEquals(0, dav.gets);
+    }
+
+    @Test
+    public void testRetriesExhausted() throws IOException {
+        for (int i = 1; i <= 10; i++) {
+            dav.failingPuts.add(i);
+        }
+        ResumableUpload upload = createUpload();
+        upload.setMaxRetries(3);
+        try {
+            upload.upload();
+            fail("The failing upload hasn't been reported.");
+        } catch (HttpMethodException e) {
+            assertEquals(4, dav.puts);
+        }
+    }
+
+    private ResumableUpload createUpload() {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/uploads/test/upload.zip";
+        ResumableUpload upload = new ResumableUpload(new HttpClient(), file, url);
+        upload.setPartSize(PART_SIZE);
+        upload.setRetryInterval(1);
+        return upload;
+    }
+
+    /**
+     * WebDAV server stand-in that keeps a single resource, supports the PUT with the Content-Range and injects
+     * the failures
+     */
+    private static class WebDavStandIn implements HttpHandler {
+
+        final Set<Integer> failingPuts = new HashSet<Integer>();
+        final Set<Integer> droppedPuts = new HashSet<Integer>();
+        boolean rangesSupported = true;
+        boolean rangesIgnored = false;
+        boolean corrupting = false;
+        boolean contentMd5 = false;
+        boolean etag = false;
+        byte[] content;
+        int puts = 0;
+        int gets = 0;
+
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            if ("PUT".equals(method)) {
+                put(exchange);
+            } else if ("HEAD".equals(method)) {
+                if (content == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    exchange.getResponseHeaders().set("Content-Length", Integer.toString(content.length));
+                    if (contentMd5)
+                        exchange.getResponseHeaders().set("Content-MD5", new String(Base64.encodeBase64(md5())));
+                    if (etag)
+                        exchange.getResponseHeaders().set("ETag", "\"" + new String(Hex.encodeHex(md5())) + "\"");
+                    exchange.sendResponseHeaders(200, -1);
+                }
+            } else if ("GET".equals(method) && content != null) {
+                gets++;
+                exchange.sendResponseHeaders(200, content.length);
+                exchange.getResponseBody().write(content);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        }
+
+        private void put(HttpExchange exchange) throws IOException {
+            int n = ++puts;
+            if (droppedPuts.contains(n)) {
+                exchange.getRequestBody().read(new byte[1024]);
+                // the server closes the connection
+                throw new IOException("Dropped the connection.");
+            }
+            byte[] body = readBody(exchange.getRequestBody());
+            if (failingPuts.contains(n)) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            String range = exchange.getRequestHeaders().getFirst("Content-Range");
+            if (range == null || rangesIgnored) {
+                content = body;
+            } else if (!rangesSupported) {
+                exchange.sendResponseHeaders(501, -1);
+                return;
+            } else {
+                // bytes first-last/total
+                String[] r = range.substring("bytes ".length()).split("[-/]");
+                int first = Integer.parseInt(r[0]);
+                int total = Integer.parseInt(r[2]);
+                if (content == null || content.length != total) {
+                    byte[] resized = new byte[total];
+                    if (content != null)
+                        System.arraycopy(content, 0, resized, 0, Math.min(content.length, total));
+                    content = resized;
+                }
+                System.arraycopy(body, 0, content, first, body.length);
+            }
+            if (corrupting) {
+                content[content.length / 2]++;
+            }
+            exchange.sendResponseHeaders(201, -1);
+        }
+
+        private byte[] md5() {
+            try {
+                return MessageDigest.getInstance("MD5").digest(content);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e.getMessage());
+            }
+        }
+
+        private static byte[] readBody(InputStream is) throws IOException {
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                b.write(buffer, 0, n);
+            }
+            return b.toByteArray();
+        }
+    }
+
+}
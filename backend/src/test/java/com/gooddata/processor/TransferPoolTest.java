@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.exception.GdcIntegrationErrorException;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransferPoolTest {
+
+    @Test
+    public void testConcurrentTransfers() {
+        TransferPool pool = new TransferPool(3);
+        final CountDownLatch started = new CountDownLatch(3);
+        final AtomicInteger finished = new AtomicInteger();
+        try {
+            for (int i = 0; i < 3; i++) {
+                pool.submit("dataset" + i, new Callable<Object>() {
+                    public Object call() throws Exception {
+                        started.countDown();
+                        // all transfers run at the same time
+                        assertTrue(started.await(10, TimeUnit.SECONDS));
+                        finished.incrementAndGet();
+                        return null;
+                    }
+                });
+            }
+            assertTrue(pool.hasPending());
+            pool.await();
+            assertEquals(3, finished.get());
+            assertFalse(pool.hasPending());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailuresAggregated() {
+        TransferPool pool = new TransferPool(2);
+        final AtomicInteger finished = new AtomicInteger();
+        try {
+            for (int i = 0; i < 5; i++) {
+                final boolean fails = (i % 2 == 1);
+                pool.submit("dataset" + i, new Callable<Object>() {
+                    public Object call() throws Exception {
+                        if (fails)
+                            throw new IllegalStateException("broken");
+                        finished.incrementAndGet();
+                        return null;
+                    }
+                });
+            }
+            try {
+                pool.await();
+                fail("The failed transfers haven't been reported.");
+            } catch (GdcIntegrationErrorException e) {
+                assertTrue(e.getMessage().startsWith("Data transfer failed for 2 dataset(s):"));
+                assertTrue(e.getMessage().contains("dataset1: broken"));
+                assertTrue(e.getMessage().contains("dataset3: broken"));
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            // the failures don't stop the other datasets
+            assertEquals(3, finished.get());
+            assertFalse(pool.hasPending());
+            pool.await();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSameDatasetFailuresKept() {
+        TransferPool pool = new TransferPool(2);
+        try {
+            for (int i = 0; i < 2; i++) {
+                final String message = "broken" + i;
+                pool.submit("dataset", new Callable<Object>() {
+                    public Object call() throws Exception {
+                        throw new IllegalStateException(message);
+                    }
+                });
+            }
+            try {
+                pool.await();
+                fail("The failed transfers haven't been reported.");
+            } catch (GdcIntegrationErrorException e) {
+                assertTrue(e.getMessage().startsWith("Data transfer failed for 2 dataset(s):"));
+                assertTrue(e.getMessage().contains("dataset: broken0"));
+                assertTrue(e.getMessage().contains("dataset: broken1"));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.transform;
+
+import com.gooddata.Constants;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DecimalFormat;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class FactFormatterTest {
+
+    private final DecimalFormat decf = new DecimalFormat(Constants.DEFAULT_DEC_FMT_STRING);
+    private final DecimalFormat intf = new DecimalFormat(Constants.DEFAULT_INT_FMT_STRING);
+
+    @Test
+    public void testDecimalsMatchDecimalFormat() {
+        double[] special = new double[]{0, -0d, 0.005, -0.005, 0.015, 0.025, 1.005, 1.015, 2.675, 0.125, -0.001, 1e-10,
+                123456789012.345, 1e20, -1.2345678901234567E25, Double.MAX_VALUE, Double.MIN_VALUE,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double v : special) {
+            assertDecimal(v);
+        }
+        Random r = new Random(42);
+        for (int i = 0; i < 50000; i++) {
+            // magnitudes from 1e-4 to 1e18, cents ties and raw random bits
+            double v = (r.nextDouble() - 0.5) * Math.pow(10, r.nextInt(23) - 4);
+            assertDecimal(v);
+            assertDecimal(Math.round(v * 1000) / 1000d);
+            assertDecimal(Double.longBitsToDouble(r.nextLong()));
+            float f = (float) v;
+            assertEquals(Float.toString(f), decf.format(f), FactFormatter.formatDecimal(f));
+            BigDecimal bd = new BigDecimal(BigInteger.valueOf(r.nextLong()), r.nextInt(8));
+            assertEquals(bd.toString(), decf.format(bd), FactFormatter.formatDecimal(bd));
+            bd = new BigDecimal(new BigInteger(100, r).subtract(BigInteger.ONE.shiftLeft(99)), r.nextInt(6));
+            assertEquals(bd.toString(), decf.format(bd), FactFormatter.formatDecimal(bd));
+            // small magnitudes that round to zero or to a cent
+            bd = new BigDecimal(BigInteger.valueOf(r.nextInt(20001) - 10000), 3 + r.nextInt(4));
+            assertEquals(bd.toString(), decf.format(bd), FactFormatter.formatDecimal(bd));
+        }
+    }
+
+    @Test
+    public void testSmallBigDecimalsMatchDecimalFormat() {
+        String[] special = new String[]{"0", "-0", "0.00", "-0.001", "-0.004", "-0.005", "-0.0050", "-0.0051",
+                "0.005", "0.015", "-0.015", "0.025", "-0.025", "0.0049999", "-0.0049999", "-0.00", "1E-10", "-1E-10"};
+        for (String v : special) {
+            BigDecimal bd = new BigDecimal(v);
+            assertEquals(v, decf.format(bd), FactFormatter.formatDecimal(bd));
+        }
+    }
+
+    @Test
+    public void testIntegersMatchDecimalFormat() {
+        long[] special = new long[]{0, -1, Long.MIN_VALUE, Long.MAX_VALUE, Integer.MIN_VALUE};
+        for (long v : special) {
+            assertEquals(intf.format(v), FactFormatter.formatInteger(v));
+        }
+        Random r = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            long v = r.nextLong() >> r.nextInt(64);
+            assertEquals(intf.format(v), FactFormatter.formatInteger(v));
+            BigInteger b = new BigInteger(1 + r.nextInt(120), r).subtract(BigInteger.valueOf(r.nextInt(1000)));
+            assertEquals(intf.format(b), FactFormatter.formatInteger(b));
+        }
+    }
+
+    private void assertDecimal(double v) {
+        assertEquals(Double.toString(v), decf.format(v), FactFormatter.formatDecimal(v));
+    }
+
+}
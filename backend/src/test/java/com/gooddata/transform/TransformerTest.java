@@ -4,11 +4,26 @@
 package com.gooddata.transform;
 
 import com.gooddata.Constants;
+import com.gooddata.connector.AbstractConnector;
+import com.gooddata.exception.InvalidParameterException;
+import com.gooddata.modeling.model.SourceColumn;
+import com.gooddata.modeling.model.SourceSchema;
+import com.gooddata.util.CSVWriter;
 import com.gooddata.util.DateUtil;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.jexl2.Expression;
 import org.joda.time.DateTime;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TransformerTest {
 
@@ -24,4 +39,220 @@ public class TransformerTest {
         
     }
 
+    @Test
+    public void testDateFactsCache() {
+        DateArithmetics da = new DateArithmetics();
+        String fmt = Constants.DEFAULT_DATE_FMT_STRING;
+        assertEquals("40192", da.computeDateFact("2010-01-15", fmt));
+        assertEquals("40192", da.computeDateFact("2010-01-15", fmt));
+        assertEquals("", da.computeDateFact("not a date", fmt));
+        assertEquals("", da.computeDateFact("not a date", fmt));
+        assertEquals("0", da.computeTimeFact("2010-01-15", fmt));
+        // the unparseable value is parsed once, but both occurrences are reported
+        assertEquals(2, da.getCacheHits());
+        assertEquals(3, da.getCacheMisses());
+        assertEquals(2, da.getParseErrors().getCount());
+    }
+
+    @Test
+    public void testParseErrors() throws IOException {
+        Transformer t = Transformer.create(createSchema());
+        for (int i = 0; i < 5; i++) {
+            t.transformRow(new Object[]{"Alpha", 10, "x", "bad" + i}, AbstractConnector.DATE_LENGTH_UNRESTRICTED);
+        }
+        t.transformRow(new Object[]{"Alpha", 10, "x", "2010-01-15"}, AbstractConnector.DATE_LENGTH_UNRESTRICTED);
+        ParseErrors errors = t.getParseErrors();
+        assertEquals(5, errors.getCount());
+        assertEquals(Long.valueOf(5), errors.getCounts().get("created_dt"));
+
+        ParseErrors total = new ParseErrors();
+        total.addAll(errors);
+        total.addAll(errors);
+        assertEquals(10, total.getCount());
+        assertEquals(1, total.getCounts().size());
+        total.clear();
+        assertEquals(0, total.getCount());
+    }
+
+    @Test
+    public void testTransformerCache() throws InterruptedException {
+        TransformerCache.clear();
+        final Transformer t = TransformerCache.get(createSchema(), null);
+        // an equal schema reuses the compiled transformer
+        assertTrue(t == TransformerCache.get(createSchema(), Transformer.EXPRESSION_ENGINE_JEXL));
+        assertEquals(1, TransformerCache.size());
+        // a changed transformation doesn't
+        SourceSchema changed = createSchema();
+        changed.getColumns().get(4).setTransformation("name.toLowerCase()");
+        assertTrue(t != TransformerCache.get(changed, null));
+        assertEquals(2, TransformerCache.size());
+        // other threads get their own instance
+        final Transformer[] other = new Transformer[1];
+        Thread thread = new Thread() {
+            public void run() {
+                other[0] = TransformerCache.get(createSchema(), null);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertTrue(other[0] != null && other[0] != t);
+        TransformerCache.evict(createSchema());
+        assertEquals(1, TransformerCache.size());
+        assertTrue(t != TransformerCache.get(createSchema(), null));
+        TransformerCache.clear();
+    }
+
+    @Test
+    public void testTransformRow() {
+        Transformer t = Transformer.create(createSchema());
+        assertArrayEquals(new String[]{"name", "amount", "created", "upper", "id", "created_dt"}, t.getHeader(true));
+        assertArrayEquals(new String[]{"Alpha", "10", "2010-01-15", "ALPHA", DigestUtils.md5Hex("Alpha|2010-01-15|"), "40192"},
+                t.transformRow(new Object[]{"Alpha", 10, "x", "2010-01-15"}, AbstractConnector.DATE_LENGTH_UNRESTRICTED));
+        // the compiled plan is reused for the subsequent rows
+        assertArrayEquals(new String[]{"beta", "2.50", "", "BETA", DigestUtils.md5Hex("beta||"), ""},
+                t.transformRow(new Object[]{"beta", 2.5d, "y", null}, AbstractConnector.DATE_LENGTH_UNRESTRICTED));
+    }
+
+    @Test
+    public void testTransformRows() {
+        Transformer t = Transformer.create(createSchema());
+        String[][] target = new String[2][];
+        Object[][] rows = new Object[][]{{"Alpha", 10, "x", "2010-01-15"}, {"beta", 2.5d, "y", null}};
+        t.transformRows(rows, null, 2, AbstractConnector.DATE_LENGTH_UNRESTRICTED, target);
+        assertArrayEquals(new String[]{"Alpha", "10", "2010-01-15", "ALPHA", DigestUtils.md5Hex("Alpha|2010-01-15|"), "40192"}, target[0]);
+        assertArrayEquals(new String[]{"beta", "2.50", "", "BETA", DigestUtils.md5Hex("beta||"), ""}, target[1]);
+        // the target block is reused, the failing row is reported
+        String[] reused = target[0];
+        rows = new Object[][]{{"gamma", 1, "z", "2010-01-16"}, {"delta"}};
+        try {
+            t.transformRows(rows, new int[]{7, 9}, 2, AbstractConnector.DATE_LENGTH_UNRESTRICTED, target);
+            fail("The transformation error hasn't been reported.");
+        } catch (InvalidParameterException e) {
+            assertTrue(e.getMessage().endsWith(" Error occured at row 9"));
+        }
+        assertTrue(reused == target[0]);
+        assertEquals("gamma", target[0][0]);
+    }
+
+    @Test
+    public void testBytecodeExpressionEngine() {
+        SourceSchema s = createSchema();
+        SourceColumn stage = new SourceColumn("stage", SourceColumn.LDM_TYPE_ATTRIBUTE, "Stage");
+        s.getColumns().add(0, stage);
+        SourceColumn closed = new SourceColumn("closed", SourceColumn.LDM_TYPE_ATTRIBUTE, "Closed");
+        closed.setTransformation("(stage.indexOf(\"Closed\")>=0)?(\"true\"):(\"false\")");
+        s.addColumn(closed);
+        SourceColumn label = new SourceColumn("label", SourceColumn.LDM_TYPE_ATTRIBUTE, "Label");
+        label.setTransformation("upper + \", \" + stage + 1");
+        s.addColumn(label);
+        SourceColumn unsupported = new SourceColumn("unsupported", SourceColumn.LDM_TYPE_ATTRIBUTE, "Unsupported");
+        unsupported.setTransformation("size(name) > 3 ? 'long' : 'short'");
+        s.addColumn(unsupported);
+
+        Transformer jexl = Transformer.create(s, Transformer.EXPRESSION_ENGINE_JEXL);
+        Transformer bytecode = Transformer.create(s, "bytecode");
+        Expression[] compiled = bytecode.getExpressions();
+        List<SourceColumn> columns = s.getColumns();
+        assertTrue(compiled[columns.indexOf(closed)] instanceof CompiledExpression);
+        assertTrue(compiled[columns.indexOf(label)] instanceof CompiledExpression);
+        assertFalse(compiled[columns.indexOf(unsupported)] instanceof CompiledExpression);
+        assertFalse(jexl.getExpressions()[columns.indexOf(closed)] instanceof CompiledExpression);
+        Object[][] rows = new Object[][]{
+                {"Closed Won", "Alpha", 10, "x", "2010-01-15"},
+                {"Open", "beta", 2.5d, "y", null},
+                {"", "", null, "", "1900-01-01"}};
+        for (Object[] row : rows) {
+            assertArrayEquals(jexl.transformRow(row.clone(), AbstractConnector.DATE_LENGTH_UNRESTRICTED),
+                    bytecode.transformRow(row.clone(), AbstractConnector.DATE_LENGTH_UNRESTRICTED));
+        }
+    }
+
+    @Test
+    public void testBytecodeParseErrorsSameAsJexl() {
+        SourceSchema s = createSchema();
+        SourceColumn day = new SourceColumn("day", SourceColumn.LDM_TYPE_ATTRIBUTE, "Day");
+        // the substring falls back to JEXL after the date fact has recorded the parse error
+        day.setTransformation("GdcDateArithmetics.computeDateFact(created, \"yyyy-MM-dd\").substring(0, 3)");
+        s.addColumn(day);
+        SourceColumn fact = new SourceColumn("fact", SourceColumn.LDM_TYPE_ATTRIBUTE, "Fact");
+        fact.setTransformation("GdcDateArithmetics.computeDateFact(created, \"yyyy-MM-dd\")");
+        s.addColumn(fact);
+
+        Transformer jexl = Transformer.create(s, Transformer.EXPRESSION_ENGINE_JEXL);
+        Transformer bytecode = Transformer.create(s, Transformer.EXPRESSION_ENGINE_BYTECODE);
+        List<SourceColumn> columns = s.getColumns();
+        assertFalse(bytecode.getExpressions()[columns.indexOf(day)] instanceof CompiledExpression);
+        assertTrue(bytecode.getExpressions()[columns.indexOf(fact)] instanceof CompiledExpression);
+        Object[][] rows = new Object[][]{
+                {"Alpha", 10, "x", "bad"},
+                {"Alpha", 10, "x", "bad"},
+                {"Alpha", 10, "x", "2010-01-15"}};
+        for (Object[] row : rows) {
+            try {
+                jexl.transformRow(row.clone(), AbstractConnector.DATE_LENGTH_UNRESTRICTED);
+            } catch (InvalidParameterException e) {
+                // the substring of the empty date fact fails in both engines
+            }
+            try {
+                bytecode.transformRow(row.clone(), AbstractConnector.DATE_LENGTH_UNRESTRICTED);
+            } catch (InvalidParameterException e) {
+                // the same as above
+            }
+        }
+        assertEquals(jexl.getParseErrors().getCounts(), bytecode.getParseErrors().getCounts());
+        assertEquals(jexl.getDateArithmetics().getCacheHits(), bytecode.getDateArithmetics().getCacheHits());
+        assertEquals(jexl.getDateArithmetics().getCacheMisses(), bytecode.getDateArithmetics().getCacheMisses());
+    }
+
+    @Test
+    public void testParallelTransformStage() throws IOException {
+        SourceSchema s = createSchema();
+        String[] expected = transformWithStage(s, 1, 1234);
+        assertArrayEquals(expected, transformWithStage(s, 4, 1234));
+        try {
+            transformWithStage(s, 3, TransformStage.BATCH_SIZE * 3 + 7);
+            fail("The transformation error hasn't been reported.");
+        } catch (InvalidParameterException e) {
+            assertTrue(e.getMessage().endsWith(" Error occured at row " + (TransformStage.BATCH_SIZE * 3 + 7)));
+        }
+    }
+
+    private static String[] transformWithStage(SourceSchema s, int parallelism, int rows) throws IOException {
+        StringWriter out = new StringWriter();
+        CSVWriter cw = new CSVWriter(out);
+        TransformStage ts = new TransformStage(s, Transformer.EXPRESSION_ENGINE_JEXL, cw, true,
+                AbstractConnector.DATE_LENGTH_UNRESTRICTED, parallelism);
+        try {
+            for (int i = 1; i <= rows; i++) {
+                // the last row misses a column when the row count isn't divisible by the batch size
+                Object[] row = (i == rows && rows % TransformStage.BATCH_SIZE == 7) ?
+                        new Object[]{"name" + i, i} : new Object[]{"name" + i, i, "x", "2010-01-15"};
+                ts.add(i, row);
+            }
+            ts.finish();
+        } finally {
+            ts.abort();
+        }
+        cw.close();
+        return out.toString().split("\n");
+    }
+
+    private static SourceSchema createSchema() {
+        SourceSchema s = SourceSchema.createSchema("test");
+        s.addColumn(new SourceColumn("name", SourceColumn.LDM_TYPE_ATTRIBUTE, "Name"));
+        s.addColumn(new SourceColumn("amount", SourceColumn.LDM_TYPE_FACT, "Amount"));
+        s.addColumn(new SourceColumn("skip", SourceColumn.LDM_TYPE_IGNORE, "Skip"));
+        SourceColumn created = new SourceColumn("created", SourceColumn.LDM_TYPE_DATE, "Created");
+        created.setFormat(Constants.DEFAULT_DATE_FMT_STRING);
+        s.addColumn(created);
+        SourceColumn upper = new SourceColumn("upper", SourceColumn.LDM_TYPE_ATTRIBUTE, "Upper");
+        upper.setTransformation("name.toUpperCase()");
+        s.addColumn(upper);
+        SourceColumn id = new SourceColumn("id", SourceColumn.LDM_TYPE_CONNECTION_POINT, "Id");
+        id.setTransformation(SourceColumn.LDM_IDENTITY);
+        s.addColumn(id);
+        AbstractConnector.expandDates(s);
+        return s;
+    }
+
 }
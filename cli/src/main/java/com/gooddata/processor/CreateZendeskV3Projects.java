@@ -23,7 +23,6 @@
 
 package com.gooddata.processor;
 
-import com.gooddata.Constants;
 import com.gooddata.exception.*;
 import com.gooddata.integration.model.Project;
 import com.gooddata.integration.rest.GdcRESTApiWrapper;
@@ -31,6 +30,7 @@ import com.gooddata.integration.rest.configuration.NamePasswordConfiguration;
 import com.gooddata.util.CSVReader;
 import com.gooddata.util.CSVWriter;
 import com.gooddata.util.FileUtil;
+import com.gooddata.util.PollSchedule;
 import com.gooddata.util.StringUtil;
 import org.apache.commons.cli.*;
 import org.apache.log4j.Logger;
@@ -358,10 +358,11 @@ public class CreateZendeskV3Projects {
     private void checkProjectCreationStatus(String projectId, CliParams p, ProcessingContext ctx) throws InterruptedException {
         l.debug("Checking project " + projectId + " loading status.");
         String status = null;
+        PollSchedule poll = new PollSchedule();
         do {
+            poll.sleep();
             status = ctx.getRestApi(p).getProjectStatus(projectId);
             l.debug("Project " + projectId + " loading  status = " + status);
-            Thread.sleep(Constants.POLL_INTERVAL);
         } while (!("DELETED".equalsIgnoreCase(status) || "ENABLED".equalsIgnoreCase(status)));
     }
 
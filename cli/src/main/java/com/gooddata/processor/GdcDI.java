@@ -23,10 +23,10 @@
 
 package com.gooddata.processor;
 
-import com.gooddata.Constants;
 import com.gooddata.connector.*;
 import com.gooddata.exception.*;
 import com.gooddata.integration.model.Column;
+import com.gooddata.integration.model.DataPackageBatch;
 import com.gooddata.integration.model.SLI;
 import com.gooddata.integration.rest.GdcRESTApiWrapper;
 import com.gooddata.integration.rest.MetadataObject;
@@ -37,6 +37,8 @@ import com.gooddata.processor.parser.DIScriptParser;
 import com.gooddata.processor.parser.ParseException;
 import com.gooddata.util.DatabaseToCsv;
 import com.gooddata.util.FileUtil;
+import com.gooddata.util.NetUtil;
+import com.gooddata.util.PollSchedule;
 import com.gooddata.util.StringUtil;
 import org.apache.commons.cli.*;
 import org.apache.log4j.Logger;
@@ -82,6 +84,8 @@ public class GdcDI implements Executor {
     public static String[] CLI_PARAM_HTTP_PROXY_PASSWORD = {"proxypassword", "P"};
     public static String[] CLI_PARAM_TIMEZONE = {"timezone", "T"};
     public static String[] CLI_PARAM_AUTHORIZATION_TOKEN = {"authtoken", "a"};
+    public static String[] CLI_PARAM_HTTP_CONNECTIONS = {"connections", "C"};
+    public static String[] CLI_PARAM_HTTP_TIMEOUT = {"timeout", "W"};
     public static String CLI_PARAM_SCRIPT = "script";
 
     private static String DEFAULT_PROPERTIES = "gdi.properties";
@@ -99,6 +103,8 @@ public class GdcDI implements Executor {
             new Option(CLI_PARAM_FTP_PORT[1], CLI_PARAM_FTP_PORT[0], true, "Data stage port (deprecated)"),
             new Option(CLI_PARAM_HTTP_PROXY_USERNAME[1], CLI_PARAM_HTTP_PROXY_USERNAME[0], true, "HTTP proxy username."),
             new Option(CLI_PARAM_HTTP_PROXY_PASSWORD[1], CLI_PARAM_HTTP_PROXY_PASSWORD[0], true, "HTTP proxy password."),
+            new Option(CLI_PARAM_HTTP_CONNECTIONS[1], CLI_PARAM_HTTP_CONNECTIONS[0], true, "Maximal number of the kept-alive HTTP connections to a host (default is 16)."),
+            new Option(CLI_PARAM_HTTP_TIMEOUT[1], CLI_PARAM_HTTP_TIMEOUT[0], true, "HTTP connect and read timeout in seconds (the read timeout isn't limited by default)."),
             new Option(CLI_PARAM_HOST[1], CLI_PARAM_HOST[0], true, "GoodData host"),
             new Option(CLI_PARAM_FTP_HOST[1], CLI_PARAM_FTP_HOST[0], true, "GoodData data stage host (deprecated)"),
             new Option(CLI_PARAM_PROJECT[1], CLI_PARAM_PROJECT[0], true, "GoodData project identifier (a string like nszfbgkr75otujmc4smtl6rf5pnmz9yl)"),
@@ -343,6 +349,10 @@ public class GdcDI implements Executor {
             }
             finishedSucessfuly = false;
         } finally {
+            context.shutdownTransfers();
+            DataPackageBatch batch = context.takeDataPackageBatch();
+            if (batch != null)
+                batch.delete();
             /*
             if (cliParams != null)
                 context.getRestApi(cliParams).logout();
@@ -384,6 +394,18 @@ public class GdcDI implements Executor {
         if(cp.containsKey(CLI_PARAM_HTTP_PROXY_PASSWORD[0])) {
             System.setProperty("http.proxyPassword", cp.get(CLI_PARAM_HTTP_PROXY_PASSWORD[0]));
         }
+        if(cp.containsKey(CLI_PARAM_HTTP_CONNECTIONS[0])) {
+            System.setProperty(NetUtil.HTTP_MAX_CONNECTIONS_PER_HOST, cp.get(CLI_PARAM_HTTP_CONNECTIONS[0]));
+        }
+        if(cp.containsKey(CLI_PARAM_HTTP_TIMEOUT[0])) {
+            try {
+                String timeout = Integer.toString(Integer.parseInt(cp.get(CLI_PARAM_HTTP_TIMEOUT[0]).trim()) * 1000);
+                System.setProperty(NetUtil.HTTP_CONNECTION_TIMEOUT, timeout);
+                System.setProperty(NetUtil.HTTP_SOCKET_TIMEOUT, timeout);
+            } catch (NumberFormatException e) {
+                throw new InvalidArgumentException("Invalid HTTP timeout value '" + cp.get(CLI_PARAM_HTTP_TIMEOUT[0]) + "'.");
+            }
+        }
 
         if (cp.containsKey(CLI_PARAM_VERSION[0])) {
 
@@ -466,6 +488,8 @@ public class GdcDI implements Executor {
         List<Command> cmds = new ArrayList<Command>();
         cmds.addAll(parseCmd(commandsStr));
         for (Command command : cmds) {
+            if (!isConcurrentWithTransfers(command))
+                context.awaitTransfers();
             boolean processed = false;
             for (int i = 0; i < connectors.length && !processed; i++) {
                 processed = connectors[i].processCommand(command, cliParams, context);
@@ -473,6 +497,8 @@ public class GdcDI implements Executor {
             if (!processed)
                 this.processCommand(command, cliParams, context);
         }
+        context.awaitTransfers();
+        transferPendingBatch();
     }
 
     /**
@@ -485,6 +511,8 @@ public class GdcDI implements Executor {
         List<Command> cmds = new ArrayList<Command>();
         cmds.addAll(parseCmd(FileUtil.readStringFromFile(scriptFile.getAbsolutePath())));
         for (Command command : cmds) {
+            if (!isConcurrentWithTransfers(command))
+                context.awaitTransfers();
             boolean processed = false;
             for (int i = 0; i < connectors.length && !processed; i++) {
                 processed = connectors[i].processCommand(command, cliParams, context);
@@ -494,6 +522,24 @@ public class GdcDI implements Executor {
             if (!processed)
                 throw new InvalidCommandException("Unknown command '" + command.getCommand() + "'");
         }
+        context.awaitTransfers();
+        transferPendingBatch();
+    }
+
+    /**
+     * Tests if the command can run while the concurrent data transfers (TransferData concurrent="true") are still
+     * in progress. The connector setup commands and other concurrent transfers can, the rest of the commands
+     * waits until the transfers finish.
+     *
+     * @param command the command
+     * @return true if the command doesn't need to wait for the pending transfers
+     */
+    private static boolean isConcurrentWithTransfers(Command command) {
+        String name = command.getCommand();
+        if (name.toLowerCase().startsWith("use") || name.toLowerCase().startsWith("load"))
+            return true;
+        return name.toLowerCase().startsWith("transfer") &&
+                "true".equalsIgnoreCase(command.getParameters().getProperty("concurrent"));
     }
 
     /**
@@ -611,6 +657,8 @@ public class GdcDI implements Executor {
                 exportProject(c, cli, ctx);
             } else if (c.match("ImportProject")) {
                 importProject(c, cli, ctx);
+            } else if (c.match("TransferBatch")) {
+                transferBatch(c, cli, ctx);
             } else if (c.match("Lock")) {
                 lock(c, cli, ctx);
             } else if (c.match("GetReports")) {
@@ -677,10 +725,11 @@ public class GdcDI implements Executor {
             if (taskUri != null && taskUri.length() > 0) {
                 l.debug("Checking MAQL DML execution status.");
                 String status = "";
+                PollSchedule poll = new PollSchedule();
                 while (!"OK".equalsIgnoreCase(status) && !"ERROR".equalsIgnoreCase(status) && !"WARNING".equalsIgnoreCase(status)) {
+                    poll.sleep();
                     status = ctx.getRestApi(p).getMigrationStatus(taskUri);
                     l.debug("MAQL DML execution status = " + status);
-                    Thread.sleep(Constants.POLL_INTERVAL);
                 }
                 l.info("MAQL DML execution finished with status " + status);
                 if ("ERROR".equalsIgnoreCase(status)) {
@@ -730,10 +779,11 @@ public class GdcDI implements Executor {
             if (taskUri != null && taskUri.length() > 0) {
                 l.debug("Checking project export status.");
                 String status = "";
+                PollSchedule poll = new PollSchedule();
                 while (!"OK".equalsIgnoreCase(status) && !"ERROR".equalsIgnoreCase(status) && !"WARNING".equalsIgnoreCase(status)) {
+                    poll.sleep();
                     status = ctx.getRestApi(p).getMigrationStatus(taskUri);
                     l.debug("Project export status = " + status);
-                    Thread.sleep(Constants.POLL_INTERVAL);
                 }
                 l.info("Project export finished with status " + status);
                 if ("OK".equalsIgnoreCase(status) || "WARNING".equalsIgnoreCase(status)) {
@@ -773,10 +823,11 @@ public class GdcDI implements Executor {
             if (taskUri != null && taskUri.length() > 0) {
                 l.debug("Checking project import status.");
                 String status = "";
+                PollSchedule poll = new PollSchedule();
                 while (!"OK".equalsIgnoreCase(status) && !"ERROR".equalsIgnoreCase(status) && !"WARNING".equalsIgnoreCase(status)) {
+                    poll.sleep();
                     status = ctx.getRestApi(p).getMigrationStatus(taskUri);
                     l.debug("Project import status = " + status);
-                    Thread.sleep(Constants.POLL_INTERVAL);
                 }
                 l.info("Project import finished with status " + status);
                 if ("ERROR".equalsIgnoreCase(status)) {
@@ -830,10 +881,11 @@ public class GdcDI implements Executor {
                 if (taskUri != null && taskUri.length() > 0) {
                     l.debug("Checking MD export status.");
                     String status = "";
+                    PollSchedule poll = new PollSchedule();
                     while (!"OK".equalsIgnoreCase(status) && !"ERROR".equalsIgnoreCase(status) && !"WARNING".equalsIgnoreCase(status)) {
+                        poll.sleep();
                         status = ctx.getRestApi(p).getTaskManStatus(taskUri);
                         l.debug("MD export status = " + status);
-                        Thread.sleep(Constants.POLL_INTERVAL);
                     }
                     l.info("MD export finished with status " + status);
                     if ("OK".equalsIgnoreCase(status) || "WARNING".equalsIgnoreCase(status)) {
@@ -885,10 +937,11 @@ public class GdcDI implements Executor {
             if (taskUri != null && taskUri.length() > 0) {
                 l.debug("Checking MD import status.");
                 String status = "";
+                PollSchedule poll = new PollSchedule();
                 while (!"OK".equalsIgnoreCase(status) && !"ERROR".equalsIgnoreCase(status) && !"WARNING".equalsIgnoreCase(status)) {
+                    poll.sleep();
                     status = ctx.getRestApi(p).getTaskManStatus(taskUri);
                     l.debug("MD import status = " + status);
-                    Thread.sleep(Constants.POLL_INTERVAL);
                 }
                 l.info("MD import finished with status " + status);
                 if ("ERROR".equalsIgnoreCase(status)) {
@@ -1120,10 +1173,11 @@ public class GdcDI implements Executor {
     private void checkProjectCreationStatus(String projectId, CliParams p, ProcessingContext ctx) throws InterruptedException {
         l.debug("Checking project " + projectId + " loading status.");
         String status = null;
+        PollSchedule poll = new PollSchedule();
         do {
+            poll.sleep();
             status = ctx.getRestApi(p).getProjectStatus(projectId);
             l.debug("Project " + projectId + " loading  status = " + status);
-            Thread.sleep(Constants.POLL_INTERVAL);
         } while (!("DELETED".equalsIgnoreCase(status) || "ENABLED".equalsIgnoreCase(status)));
     }
 
@@ -1203,10 +1257,11 @@ public class GdcDI implements Executor {
                 if (taskUri != null && taskUri.length() > 0) {
                     l.debug("Checking migration status.");
                     String status = "";
+                    PollSchedule poll = new PollSchedule();
                     while (!"OK".equalsIgnoreCase(status) && !"ERROR".equalsIgnoreCase(status) && !"WARNING".equalsIgnoreCase(status)) {
+                        poll.sleep();
                         status = ctx.getRestApi(p).getMigrationStatus(taskUri);
                         l.debug("Migration status = " + status);
-                        Thread.sleep(Constants.POLL_INTERVAL);
                     }
                     l.info("Migration finished with status " + status);
                 } else {
@@ -1448,6 +1503,55 @@ public class GdcDI implements Executor {
         l.info("Retrieved project id=" + ctx.getProjectId() + " from " + fileName);
     }
 
+    /**
+     * Transfers the datasets collected by the TransferData(batch="true") commands in one data package
+     *
+     * @param c   command
+     * @param p   cli parameters
+     * @param ctx current context
+     * @throws IOException          in case of an IO issue
+     * @throws InterruptedException internal problem with making file writable
+     */
+    private void transferBatch(Command c, CliParams p, ProcessingContext ctx) throws IOException, InterruptedException {
+        String pid = ctx.getProjectIdMandatory();
+        boolean waitForFinish = !"false".equalsIgnoreCase(c.getParam("waitForFinish"));
+        int compressionLevel = AbstractConnector.getCompressionLevel(c);
+        int compressionThreads = AbstractConnector.getCompressionThreads(c);
+        boolean verify = "true".equalsIgnoreCase(c.getParam("verify"));
+        c.paramsProcessed();
+
+        DataPackageBatch batch = ctx.takeDataPackageBatch();
+        if (batch == null || batch.isEmpty()) {
+            l.info("No datasets have been added to the batch load.");
+            if (batch != null)
+                batch.delete();
+            return;
+        }
+        AbstractConnector.transferBatch(batch, pid, waitForFinish, compressionLevel, compressionThreads, verify, p,
+                ctx);
+    }
+
+    /**
+     * Transfers the batch load that hasn't been transferred by the TransferBatch command at the end of the script
+     */
+    private void transferPendingBatch() {
+        DataPackageBatch batch = context.takeDataPackageBatch();
+        if (batch == null)
+            return;
+        if (batch.isEmpty()) {
+            batch.delete();
+            return;
+        }
+        l.info("Transferring the batch load of the datasets " + batch.getDatasets() + " at the end of the script.");
+        try {
+            AbstractConnector.transferBatch(batch, context.getProjectIdMandatory(), true, cliParams, context);
+        } catch (IOException e) {
+            throw new ProcessingException(e);
+        } catch (InterruptedException e) {
+            throw new ProcessingException(e);
+        }
+    }
+
     /**
      * Lock project command processor
      *
@@ -53,7 +53,7 @@ public class Constants {
     // Maximum retries
     public final static int MAX_RETRY = 1000;
 
-    // polling interval
+    // polling interval (the longest interval of the adaptive polling, see PollSchedule)
     public final static int POLL_INTERVAL = 10000;
     public final static int RETRY_INTERVAL = 1000;
 
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-memory pipe that hands the bytes written by one thread to a reader in another thread. The bytes
+ * are passed in chunks of {@link #CHUNK_SIZE}, at most the given number of chunks is buffered, so a writer
+ * that is faster than the reader blocks until the reader catches up. A failure on either side (see
+ * {@link #fail(Throwable)}) unblocks the other side and is reported to it as an IOException.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class BlockingPipe {
+
+    /**
+     * Size of the chunks that are passed through the pipe
+     */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Default number of the buffered chunks
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private static final byte[] EOF = new byte[0];
+    private static final long POLL_INTERVAL = 100;
+
+    private final BlockingQueue<byte[]> chunks;
+    private final OutputStream out = new PipeOutputStream();
+    private final InputStream in = new PipeInputStream();
+    private volatile Throwable failure;
+
+    /**
+     * Creates the pipe that buffers {@link #DEFAULT_CAPACITY} chunks
+     */
+    public BlockingPipe() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates the pipe
+     *
+     * @param capacity the maximal number of the buffered chunks
+     */
+    public BlockingPipe(int capacity) {
+        chunks = new ArrayBlockingQueue<byte[]>(capacity);
+    }
+
+    /**
+     * Returns the writing end of the pipe. The stream must be closed when all data are written.
+     *
+     * @return the output stream
+     */
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * Returns the reading end of the pipe. Closing the stream before the end of the data fails the pipe.
+     *
+     * @return the input stream
+     */
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    /**
+     * Fails the pipe, the subsequent reads and writes throw IOException. Only the first failure is kept.
+     *
+     * @param cause the failure cause
+     */
+    public synchronized void fail(Throwable cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        // unblocks the writer
+        chunks.clear();
+    }
+
+    /**
+     * Returns the first failure of the pipe
+     *
+     * @return the failure cause or null
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable cause = failure;
+        if (cause != null) {
+            IOException e = new IOException("The data pipe has failed: " + cause.getMessage());
+            e.initCause(cause);
+            throw e;
+        }
+    }
+
+    private void put(byte[] chunk) throws IOException {
+        try {
+            checkFailure();
+            while (!chunks.offer(chunk, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+            // the chunk might have been queued after the reader failed
+            checkFailure();
+        } catch (InterruptedException e) {
+            fail(e);
+            throw new InterruptedIOException("Interrupted while writing to the data pipe.");
+        }
+    }
+
+    private byte[] take() throws IOException {
+        try {
+            checkFailure();
+            byte[] chunk;
+            while ((chunk = chunks.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null) {
+                checkFailure();
+            }
+            checkFailure();
+            return chunk;
+        } catch (InterruptedException e) {
+            fail(e);
+            throw new InterruptedIOException("Interrupted while reading from the data pipe.");
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        private boolean closed;
+
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                send();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    send();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        public void flush() throws IOException {
+            if (count > 0) {
+                send();
+            }
+        }
+
+        public void close() throws IOException {
+            if (!closed) {
+                flush();
+                closed = true;
+                put(EOF);
+            }
+        }
+
+        private void send() throws IOException {
+            if (closed)
+                throw new IOException("The data pipe is closed.");
+            byte[] chunk = buffer;
+            if (count < chunk.length) {
+                chunk = new byte[count];
+                System.arraycopy(buffer, 0, chunk, 0, count);
+            } else {
+                buffer = new byte[CHUNK_SIZE];
+            }
+            count = 0;
+            put(chunk);
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+
+        private byte[] chunk;
+        private int pos;
+        private boolean eof;
+
+        public int read() throws IOException {
+            if (!next())
+                return -1;
+            return chunk[pos++] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!next())
+                return -1;
+            int n = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        public int available() {
+            return chunk == null ? 0 : chunk.length - pos;
+        }
+
+        public void close() {
+            if (!eof) {
+                fail(new IOException("The data pipe reader has been closed."));
+            }
+        }
+
+        private boolean next() throws IOException {
+            while (!eof && (chunk == null || pos == chunk.length)) {
+                chunk = take();
+                pos = 0;
+                if (chunk == EOF) {
+                    eof = true;
+                }
+            }
+            return !eof;
+        }
+    }
+
+}
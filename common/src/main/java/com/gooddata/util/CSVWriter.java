@@ -18,14 +18,23 @@ package com.gooddata.util;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * A very simple CSV writer released under a commercial-friendly license.
+ * <p/>
+ * The writer created for an OutputStream encodes the fields directly to a pooled UTF-8 byte buffer
+ * (the output bytes are the same as of the writer created for an UTF-8 OutputStreamWriter). The buffer
+ * is written when it is full or when {@link #FLUSH_INTERVAL} has elapsed since the last write, so the rows
+ * needn't be flushed one by one. {@link #flush()} always writes the buffered rows.
  *
  * @author Glen Smith
  */
@@ -33,8 +42,36 @@ public class CSVWriter implements Closeable {
 
     public static final int INITIAL_STRING_SIZE = 512;
 
+    /**
+     * Size of the byte buffer of the writer created for an OutputStream
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximal interval (ms) the rows stay in the buffer of the writer created for an OutputStream
+     */
+    public static final long FLUSH_INTERVAL = 1000;
+
+    // released byte buffers
+    private static final Queue<byte[]> BUFFERS = new ConcurrentLinkedQueue<byte[]>();
+    private static final int MAX_POOLED_BUFFERS = 16;
+
     private final StringBuilder writeStringBuilder;
 
+    // the byte mode (the writer has been created for an OutputStream)
+    private OutputStream out;
+
+    private byte[] buffer;
+
+    private int count = 0;
+
+    // pending high surrogate of a surrogate pair
+    private char highSurrogate = 0;
+
+    private long lastFlush;
+
+    private IOException failure;
+
     private Writer rawWriter;
 
     private PrintWriter pw;
@@ -165,6 +202,48 @@ public class CSVWriter implements Closeable {
         this.writeStringBuilder = new StringBuilder(INITIAL_STRING_SIZE);
     }
 
+    /**
+     * Constructs UTF-8 CSVWriter using a comma for the separator.
+     *
+     * @param out the stream to an underlying CSV source.
+     */
+    public CSVWriter(OutputStream out) {
+        this(out, DEFAULT_SEPARATOR, DEFAULT_QUOTE_CHARACTER, DEFAULT_ESCAPE_CHARACTER, DEFAULT_LINE_END);
+    }
+
+    /**
+     * Constructs UTF-8 CSVWriter with supplied separator, quote char and escape char.
+     *
+     * @param out        the stream to an underlying CSV source.
+     * @param separator  the delimiter to use for separating entries
+     * @param quotechar  the character to use for quoted elements
+     * @param escapechar the character to use for escaping quotechars or escapechars
+     */
+    public CSVWriter(OutputStream out, char separator, char quotechar, char escapechar) {
+        this(out, separator, quotechar, escapechar, DEFAULT_LINE_END);
+    }
+
+    /**
+     * Constructs UTF-8 CSVWriter with supplied separator, quote char, escape char and line ending.
+     *
+     * @param out        the stream to an underlying CSV source.
+     * @param separator  the delimiter to use for separating entries
+     * @param quotechar  the character to use for quoted elements
+     * @param escapechar the character to use for escaping quotechars or escapechars
+     * @param lineEnd    the line feed terminator to use
+     */
+    public CSVWriter(OutputStream out, char separator, char quotechar, char escapechar, String lineEnd) {
+        this.out = out;
+        this.separator = separator;
+        this.quotechar = quotechar;
+        this.escapechar = escapechar;
+        this.lineEnd = lineEnd;
+        this.writeStringBuilder = null;
+        byte[] b = BUFFERS.poll();
+        this.buffer = (b != null) ? (b) : (new byte[BUFFER_SIZE]);
+        this.lastFlush = System.currentTimeMillis();
+    }
+
     /**
      * Writes the entire list to a CSV file. The list is assumed to be a
      * String[]
@@ -227,6 +306,11 @@ public class CSVWriter implements Closeable {
         if (nextLine == null)
             return;
 
+        if (out != null) {
+            encodeNext(nextLine, nullAware);
+            return;
+        }
+
         StringBuilder sb = writeStringBuilder;
         sb.delete(0, sb.length());
         for (int i = 0; i < nextLine.length; i++) {
@@ -260,6 +344,182 @@ public class CSVWriter implements Closeable {
 
     }
 
+    /**
+     * Writes the lines that have been already formatted (e.g. by another CSVWriter with the same settings).
+     *
+     * @param lines  the UTF-8 formatted lines including the line ends
+     * @param offset the first byte
+     * @param length number of the bytes
+     */
+    public void writeFormatted(byte[] lines, int offset, int length) {
+        if (out != null) {
+            drain();
+            if (buffer != null && failure == null) {
+                try {
+                    out.write(lines, offset, length);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        } else {
+            try {
+                pw.write(new String(lines, offset, length, "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Encodes the line to the byte buffer. The quotes and escapes are resolved in a single scan of each field.
+     *
+     * @param nextLine  the line fields
+     * @param nullAware write nulls as NULL?
+     */
+    private void encodeNext(String[] nextLine, boolean nullAware) {
+        if (buffer == null) {
+            // closed, the same as the PrintWriter
+            return;
+        }
+        final boolean quoted = (quotechar != NO_QUOTE_CHARACTER);
+        for (int i = 0; i < nextLine.length; i++) {
+            if (i != 0) {
+                put(separator);
+            }
+            String nextElement = nextLine[i];
+            if (nextElement == null) {
+                if (nullAware) {
+                    put("NULL");
+                    continue;
+                }
+                nextElement = "";
+            }
+            if (!quoted) {
+                encodeField(nextElement);
+            } else if (alwaysQuoted) {
+                put(quotechar);
+                encodeField(nextElement);
+                put(quotechar);
+            } else if (quotechar < 0x80 && count + 10 + nextElement.length() * 6 <= buffer.length) {
+                // the field fits to the buffer, the space for the opening quote is reserved and released
+                // when the field needn't quotes
+                int start = count++;
+                if (encodeField(nextElement)) {
+                    buffer[start] = (byte) quotechar;
+                    put(quotechar);
+                } else {
+                    System.arraycopy(buffer, start + 1, buffer, start, count - start - 1);
+                    count--;
+                }
+            } else {
+                // the field may not fit in the buffer, the quotes are decided in front
+                boolean doQuote = nextElement.indexOf(separator) != -1
+                        || stringContainsSpecialCharacters(nextElement);
+                if (doQuote)
+                    put(quotechar);
+                encodeField(nextElement);
+                if (doQuote)
+                    put(quotechar);
+            }
+        }
+        put(lineEnd);
+        long now = System.currentTimeMillis();
+        if (now - lastFlush >= FLUSH_INTERVAL) {
+            drain();
+            if (failure == null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes the escaped field value
+     *
+     * @param value the field value
+     * @return true if the value contains a separator, quote or escape character
+     */
+    private boolean encodeField(String value) {
+        boolean doQuote = false;
+        final boolean escaped = (escapechar != NO_ESCAPE_CHARACTER);
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c == separator) {
+                doQuote = true;
+            } else if (c == quotechar || c == escapechar) {
+                doQuote = true;
+                if (escaped)
+                    put(escapechar);
+            }
+            put(c);
+        }
+        return doQuote;
+    }
+
+    private void put(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            put(s.charAt(i));
+        }
+    }
+
+    /**
+     * Encodes the character to UTF-8. The malformed surrogates are replaced by '?' like in the OutputStreamWriter.
+     *
+     * @param c the character
+     */
+    private void put(char c) {
+        if (count + 8 > buffer.length) {
+            drain();
+        }
+        final byte[] b = buffer;
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                b[count++] = (byte) (0xF0 | (cp >> 18));
+                b[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[count++] = (byte) (0x80 | (cp & 0x3F));
+                return;
+            }
+            b[count++] = '?';
+        }
+        if (c < 0x80) {
+            b[count++] = (byte) c;
+        } else if (c < 0x800) {
+            b[count++] = (byte) (0xC0 | (c >> 6));
+            b[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            b[count++] = '?';
+        } else {
+            b[count++] = (byte) (0xE0 | (c >> 12));
+            b[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            b[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the stream. The first IO error is kept and reported by the flush or close.
+     */
+    private void drain() {
+        lastFlush = System.currentTimeMillis();
+        if (count > 0 && failure == null) {
+            try {
+                out.write(buffer, 0, count);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        count = 0;
+    }
+
     private void quote(StringBuilder sb, boolean really) {
         if (quotechar != NO_QUOTE_CHARACTER) {
             if (really) {
@@ -294,6 +554,17 @@ public class CSVWriter implements Closeable {
      */
     public void flush() throws IOException {
 
+        if (out != null) {
+            if (buffer == null)
+                return;
+            drain();
+            if (failure == null)
+                out.flush();
+            if (failure != null)
+                throw failure;
+            return;
+        }
+
         pw.flush();
 
     }
@@ -304,6 +575,23 @@ public class CSVWriter implements Closeable {
      * @throws IOException if bad things happen
      */
     public void close() throws IOException {
+        if (out != null) {
+            if (buffer == null)
+                return;
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                put('?');
+            }
+            drain();
+            byte[] b = buffer;
+            buffer = null;
+            if (BUFFERS.size() < MAX_POOLED_BUFFERS)
+                BUFFERS.offer(b);
+            out.close();
+            if (failure != null)
+                throw failure;
+            return;
+        }
         flush();
         pw.close();
         rawWriter.close();
@@ -313,6 +601,8 @@ public class CSVWriter implements Closeable {
      * Checks to see if the there has been an error in the printstream.
      */
     public boolean checkError() {
+        if (out != null)
+            return failure != null;
         return pw.checkError();
     }
 
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the gzip, bzip2 and ZIP compressed inputs transparently. The format is detected from the magic bytes
+ * of the stream, the uncompressed inputs are returned as they are. The compressed inputs are decompressed
+ * on a separate thread that feeds the reader through a {@link BlockingPipe}, so the decompression runs
+ * concurrently with the parsing. Only the first entry of a ZIP archive is read.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class CompressedInput {
+
+    private static Logger l = Logger.getLogger(CompressedInput.class);
+
+    /**
+     * Uncompressed input
+     */
+    public static final String FORMAT_NONE = "NONE";
+
+    /**
+     * gzip compressed input
+     */
+    public static final String FORMAT_GZIP = "GZIP";
+
+    /**
+     * bzip2 compressed input
+     */
+    public static final String FORMAT_BZIP2 = "BZIP2";
+
+    /**
+     * ZIP archive
+     */
+    public static final String FORMAT_ZIP = "ZIP";
+
+    private static final int MAGIC_LENGTH = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    /**
+     * Detects the compression format from the magic bytes
+     *
+     * @param magic the leading bytes of the input
+     * @param len   number of the valid bytes
+     * @return one of the FORMAT_ constants
+     */
+    public static String detectFormat(byte[] magic, int len) {
+        if (len >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b)
+            return FORMAT_GZIP;
+        if (len >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h')
+            return FORMAT_BZIP2;
+        if (len >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4)
+            return FORMAT_ZIP;
+        return FORMAT_NONE;
+    }
+
+    /**
+     * Detects the compression format of the file
+     *
+     * @param file the file
+     * @return one of the FORMAT_ constants
+     * @throws IOException IO issues
+     */
+    public static String detectFormat(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] magic = new byte[MAGIC_LENGTH];
+            return detectFormat(magic, readMagic(is, magic));
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Tests if the file is compressed
+     *
+     * @param file the file
+     * @return true if the file is compressed by a supported format
+     * @throws IOException IO issues
+     */
+    public static boolean isCompressed(File file) throws IOException {
+        return !FORMAT_NONE.equals(detectFormat(file));
+    }
+
+    /**
+     * Opens the file, compressed files are decompressed
+     *
+     * @param file the file
+     * @return the uncompressed content
+     * @throws IOException IO issues
+     */
+    public static InputStream open(File file) throws IOException {
+        return open(new FileInputStream(file));
+    }
+
+    /**
+     * Wraps the stream, compressed streams are decompressed on a separate thread
+     *
+     * @param is the input stream
+     * @return the uncompressed content
+     * @throws IOException IO issues
+     */
+    public static InputStream open(InputStream is) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(is, BUFFER_SIZE);
+        bis.mark(MAGIC_LENGTH);
+        byte[] magic = new byte[MAGIC_LENGTH];
+        int len = readMagic(bis, magic);
+        bis.reset();
+        String format = detectFormat(magic, len);
+        if (FORMAT_NONE.equals(format))
+            return bis;
+        l.debug("Reading " + format + " compressed input.");
+        InputStream decompressed;
+        try {
+            decompressed = createDecompressor(format, bis);
+        } catch (IOException e) {
+            bis.close();
+            throw e;
+        }
+        return decompress(decompressed);
+    }
+
+    private static InputStream createDecompressor(String format, InputStream is) throws IOException {
+        if (FORMAT_GZIP.equals(format))
+            return new GZIPInputStream(is, BUFFER_SIZE);
+        if (FORMAT_BZIP2.equals(format))
+            return new BZip2CompressorInputStream(is, true);
+        ZipInputStream zis = new ZipInputStream(is);
+        ZipEntry e = zis.getNextEntry();
+        while (e != null && e.isDirectory()) {
+            e = zis.getNextEntry();
+        }
+        if (e == null)
+            throw new IOException("The ZIP archive doesn't contain any file.");
+        l.debug("Reading the ZIP archive entry " + e.getName());
+        return zis;
+    }
+
+    /**
+     * Runs the decompression on a separate thread
+     *
+     * @param decompressed the decompressing stream
+     * @return the reading end of the pipe
+     */
+    private static InputStream decompress(final InputStream decompressed) {
+        final BlockingPipe pipe = new BlockingPipe();
+        Thread t = new Thread("GdcDecompress-" + threadNumber.incrementAndGet()) {
+            public void run() {
+                OutputStream os = pipe.getOutputStream();
+                try {
+                    byte[] buf = new byte[BUFFER_SIZE];
+                    int cnt;
+                    while ((cnt = decompressed.read(buf)) != -1) {
+                        os.write(buf, 0, cnt);
+                    }
+                    os.close();
+                } catch (Throwable e) {
+                    l.debug("The decompression has stopped.", e);
+                    pipe.fail(e);
+                } finally {
+                    try {
+                        decompressed.close();
+                    } catch (IOException e) {
+                        // do nothing
+                    }
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+        return pipe.getInputStream();
+    }
+
+    private static int readMagic(InputStream is, byte[] magic) throws IOException {
+        int len = 0;
+        int cnt;
+        while (len < magic.length && (cnt = is.read(magic, len, magic.length - len)) != -1) {
+            len += cnt;
+        }
+        return len;
+    }
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Record offset index of a UTF-8 CSV file. Splits the file to byte ranges that start at record boundaries,
+ * so the ranges can be parsed concurrently by the {@link MappedCsvReader}. The boundaries are found by a quote
+ * aware scan of the raw bytes that follows the {@link CSVReader} rules, so a quoted field with line breaks
+ * is never split. The index is stored to a sidecar file (data file name + {@link #SUFFIX}) and reused while
+ * the data file doesn't change.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class CsvIndex {
+
+    private static Logger l = Logger.getLogger(CsvIndex.class);
+
+    /**
+     * Suffix of the sidecar index file
+     */
+    public static final String SUFFIX = ".idx";
+
+    /**
+     * Default (minimal) size of a range
+     */
+    public static final long DEFAULT_RANGE_SIZE = 8 * 1024 * 1024;
+
+    private static final int MAGIC = 0x47444349;
+    private static final int VERSION = 1;
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    // start offsets of the ranges, the last item is the file length
+    private final long[] offsets;
+    // number of the records in front of the ranges
+    private final long[] records;
+
+    private CsvIndex(long[] offsets, long[] records) {
+        this.offsets = offsets;
+        this.records = records;
+    }
+
+    /**
+     * Returns the index of the file. Loads the sidecar index if it is up to date, scans the file and stores
+     * the sidecar index otherwise.
+     *
+     * @param f          the UTF-8 CSV file
+     * @param separator  the field separator
+     * @param quote      the quote character
+     * @param escape     the escape character
+     * @param skipSpaces whether the spaces in front of quoted columns are skipped
+     * @param rangeSize  the minimal size of a range
+     * @return the index, null if the file can't be split (it isn't a well formed CSV)
+     * @throws IOException in case of IO issues
+     */
+    public static CsvIndex getIndex(File f, char separator, char quote, char escape, boolean skipSpaces,
+                                    long rangeSize) throws IOException {
+        if (separator >= 0x80 || quote >= 0x80 || escape >= 0x80)
+            return null;
+        File sidecar = new File(f.getPath() + SUFFIX);
+        CsvIndex index = load(sidecar, f, separator, quote, escape, skipSpaces, rangeSize);
+        if (index == null) {
+            l.debug("Building the record index of the CSV file " + f.getName());
+            index = build(f, (byte) separator, (byte) quote, (byte) escape, skipSpaces, rangeSize);
+            if (index != null) {
+                try {
+                    index.save(sidecar, f, separator, quote, escape, skipSpaces, rangeSize);
+                } catch (IOException e) {
+                    l.debug("Can't store the record index " + sidecar + ": " + e.getMessage());
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Scans the file and finds the range boundaries
+     *
+     * @param f          the UTF-8 CSV file
+     * @param separator  the field separator
+     * @param quote      the quote character
+     * @param escape     the escape character
+     * @param skipSpaces whether the spaces in front of quoted columns are skipped
+     * @param rangeSize  the minimal size of a range
+     * @return the index, null if the file isn't a well formed CSV
+     * @throws IOException in case of IO issues
+     */
+    static CsvIndex build(File f, byte separator, byte quote, byte escape, boolean skipSpaces, long rangeSize) throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        List<Long> records = new ArrayList<Long>();
+        offsets.add(0L);
+        records.add(0L);
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            byte[] data = new byte[BLOCK_SIZE];
+            // the parser state (see CSVReader)
+            boolean quoted = false;
+            boolean pending = false;
+            boolean fieldEmpty = true;
+            boolean recordStart = true;
+            int skipBytes = 0;
+            byte last = 0;
+            long recordCount = 0;
+            long next = rangeSize;
+            for (long windowStart = 0; windowStart < size; windowStart += WINDOW_SIZE) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.min(WINDOW_SIZE, size - windowStart));
+                long blockStart = windowStart;
+                while (window.hasRemaining()) {
+                    int limit = Math.min(data.length, window.remaining());
+                    window.get(data, 0, limit);
+                    for (int i = 0; i < limit; i++) {
+                        byte c = data[i];
+                        if (skipBytes > 0) {
+                            skipBytes--;
+                            continue;
+                        }
+                        // a range can start where a new range parser has the same state (the CR affects the next char)
+                        if (recordStart && last != '\r' && blockStart + i >= next) {
+                            offsets.add(blockStart + i);
+                            records.add(recordCount);
+                            next = blockStart + i + rangeSize;
+                        }
+                        boolean eol = false;
+                        if (pending) {
+                            pending = false;
+                            if (last == escape && (c == escape || c == quote)) {
+                                fieldEmpty = false;
+                            } else if (last == quote) {
+                                if (quoted) {
+                                    if (c == '\r' || c == '\n') {
+                                        quoted = false;
+                                        eol = true;
+                                    } else if (c == separator) {
+                                        quoted = false;
+                                        fieldEmpty = true;
+                                    } else {
+                                        return null;
+                                    }
+                                } else if (fieldEmpty) {
+                                    quoted = true;
+                                } else {
+                                    return null;
+                                }
+                            }
+                            if (c < 0)
+                                skipBytes = sequenceLength(c) - 1;
+                        } else if (c == escape || c == quote) {
+                            if (fieldEmpty && !quoted)
+                                quoted = true;
+                            else
+                                pending = true;
+                        } else if (c == separator) {
+                            fieldEmpty = !quoted;
+                        } else if (c == '\r' || c == '\n') {
+                            eol = true;
+                        } else if (!skipSpaces || c < 0 || c > ' ') {
+                            // the leading spaces don't prevent a quoted field when they are skipped
+                            fieldEmpty = false;
+                        }
+                        if (eol) {
+                            if (!quoted && last == '\r') {
+                                // skipped by the parser, the record start doesn't change
+                                last = c;
+                                continue;
+                            }
+                            if (quoted) {
+                                fieldEmpty = false;
+                            } else {
+                                fieldEmpty = true;
+                                recordCount++;
+                                last = c;
+                                recordStart = true;
+                                continue;
+                            }
+                        }
+                        recordStart = false;
+                        last = c;
+                    }
+                    blockStart += limit;
+                }
+            }
+            // a quote at the end of the file closes the quoted field
+            if (quoted && !(pending && last == quote)) {
+                return null;
+            }
+            long[] o = new long[offsets.size() + 1];
+            long[] r = new long[records.size()];
+            for (int i = 0; i < r.length; i++) {
+                o[i] = offsets.get(i);
+                r[i] = records.get(i);
+            }
+            o[r.length] = size;
+            return new CsvIndex(o, r);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static int sequenceLength(byte c) {
+        if ((c & 0xE0) == 0xC0)
+            return 2;
+        if ((c & 0xF0) == 0xE0)
+            return 3;
+        if ((c & 0xF8) == 0xF0)
+            return 4;
+        return 1;
+    }
+
+    private static CsvIndex load(File sidecar, File f, char separator, char quote, char escape, boolean skipSpaces,
+                                 long rangeSize) {
+        if (!sidecar.exists() || sidecar.lastModified() < f.lastModified())
+            return null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != f.length()
+                        || in.readLong() != f.lastModified() || in.readLong() != rangeSize || in.readChar() != separator
+                        || in.readChar() != quote || in.readChar() != escape
+                        || in.readBoolean() != skipSpaces)
+                    return null;
+                int n = in.readInt();
+                long[] offsets = new long[n + 1];
+                long[] records = new long[n];
+                for (int i = 0; i < n; i++) {
+                    offsets[i] = in.readLong();
+                    records[i] = in.readLong();
+                }
+                offsets[n] = f.length();
+                l.debug("Using the record index " + sidecar);
+                return new CsvIndex(offsets, records);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            l.debug("Can't read the record index " + sidecar + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void save(File sidecar, File f, char separator, char quote, char escape, boolean skipSpaces, long rangeSize) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sidecar)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(f.length());
+            out.writeLong(f.lastModified());
+            out.writeLong(rangeSize);
+            out.writeChar(separator);
+            out.writeChar(quote);
+            out.writeChar(escape);
+            out.writeBoolean(skipSpaces);
+            out.writeInt(records.length);
+            for (int i = 0; i < records.length; i++) {
+                out.writeLong(offsets[i]);
+                out.writeLong(records[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the number of the ranges
+     *
+     * @return number of the ranges
+     */
+    public int getRangeCount() {
+        return records.length;
+    }
+
+    /**
+     * Returns the first byte of the range
+     *
+     * @param range the range number
+     * @return the range start offset
+     */
+    public long getStart(int range) {
+        return offsets[range];
+    }
+
+    /**
+     * Returns the end of the range (exclusive)
+     *
+     * @param range the range number
+     * @return the range end offset
+     */
+    public long getEnd(int range) {
+        return offsets[range + 1];
+    }
+
+    /**
+     * Returns the number of the records in front of the range
+     *
+     * @param range the range number
+     * @return number of the records in front of the range
+     */
+    public long getRecordsBefore(int range) {
+        return records[range];
+    }
+
+}
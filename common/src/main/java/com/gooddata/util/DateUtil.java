@@ -25,20 +25,23 @@ package com.gooddata.util;
 
 import com.gooddata.Constants;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Date Utilities
  */
 public class DateUtil {
 
-    private static Map<String, DateTimeFormatter> formatters = new HashMap<String, DateTimeFormatter>();
+    // formatters are immutable and thread safe, the registry is read without locking
+    private static ConcurrentMap<String, DateTimeFormatter> formatters = new ConcurrentHashMap<String, DateTimeFormatter>();
 
-    public static synchronized DateTimeFormatter getDateFormatter(String fmt, boolean isDateTime) {
+    public static DateTimeFormatter getDateFormatter(String fmt, boolean isDateTime) {
         if (fmt == null || fmt.length() <= 0) {
             if (isDateTime)
                 fmt = Constants.DEFAULT_DATETIME_FMT_STRING;
@@ -53,7 +56,9 @@ public class DateUtil {
         DateTimeFormatter frmtr = formatters.get(fmt);
         if (frmtr == null) {
             frmtr = DateTimeFormat.forPattern(fmt);
-            formatters.put(fmt, frmtr);
+            DateTimeFormatter existing = formatters.putIfAbsent(fmt, frmtr);
+            if (existing != null)
+                frmtr = existing;
         }
         return frmtr;
     }
@@ -61,52 +66,107 @@ public class DateUtil {
     private static final DateTimeFormatter baseFmt = DateTimeFormat.forPattern(Constants.DEFAULT_DATETIME_FMT_STRING);
     private static final DateTime base = baseFmt.parseDateTime("1900-01-01 00:00:00");
 
+    /**
+     * Number of the GoodData dates (days since 1900-01-01) whose text representation is cached
+     */
+    private static final int GOODDATA_DATE_CACHE_SIZE = 80000;
+    private static final AtomicReferenceArray<String> goodDataDates = new AtomicReferenceArray<String>(GOODDATA_DATE_CACHE_SIZE);
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+    // days between 0000-03-01 and 1970-01-01
+    private static final long EPOCH_DAY_SHIFT = 719468L;
 
     public static String convertUnixTimeToString(String value) {
-        DateTime dt;
+        long l;
         try {
-            long l = Long.parseLong(value);
-            dt = new DateTime(l * 1000);
+            l = Long.parseLong(value);
         } catch (NumberFormatException e) {
             return "";
         }
-        return baseFmt.print(dt);
+        return formatUnixTime(l);
     }
 
     public static String convertUnixTimeToString(Number value) {
-        DateTime dt;
-        try {
-            long l = value.longValue();
-            dt = new DateTime(l * 1000);
-        } catch (NumberFormatException e) {
-            return "";
-        }
-        return baseFmt.print(dt);
+        return formatUnixTime(value.longValue());
     }
 
-
     public static String convertGoodDataDateToString(String value) {
-        DateTime dt;
+        int l;
         try {
-            int l = Integer.parseInt(value);
-            if(l==0) return "";
-            dt = base.plusDays(l-1);
+            l = Integer.parseInt(value);
         } catch (NumberFormatException e) {
             return "";
         }
-        return baseFmt.print(dt);
+        return formatGoodDataDate(l);
     }
 
     public static String convertGoodDataDateToString(Number value) {
-        DateTime dt;
-        try {
-            int l = value.intValue();
-            if(l==0) return "";
-            dt = base.plusDays(l-1);
-        } catch (NumberFormatException e) {
+        return formatGoodDataDate(value.intValue());
+    }
+
+    private static String formatGoodDataDate(int l) {
+        if (l == 0)
             return "";
+        if (l > 0 && l <= GOODDATA_DATE_CACHE_SIZE) {
+            String ret = goodDataDates.get(l - 1);
+            if (ret == null) {
+                ret = baseFmt.print(base.plusDays(l - 1));
+                goodDataDates.set(l - 1, ret);
+            }
+            return ret;
+        }
+        return baseFmt.print(base.plusDays(l - 1));
+    }
+
+    /**
+     * Formats the UNIX time in the default time zone (yyyy-MM-dd HH:mm:ss) without creating the Joda DateTime
+     *
+     * @param seconds the UNIX time
+     * @return the formatted date
+     */
+    private static String formatUnixTime(long seconds) {
+        long millis = seconds * 1000;
+        long local = millis + DateTimeZone.getDefault().getOffset(millis);
+        long days = local / MILLIS_PER_DAY;
+        long ms = local % MILLIS_PER_DAY;
+        if (ms < 0) {
+            days--;
+            ms += MILLIS_PER_DAY;
+        }
+        // civil date from the epoch days (proleptic Gregorian calendar as the Joda ISO chronology)
+        long z = days + EPOCH_DAY_SHIFT;
+        long era = ((z >= 0) ? (z) : (z - 146096)) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) ((mp < 10) ? (mp + 3) : (mp - 9));
+        long year = yoe + era * 400 + ((month <= 2) ? (1) : (0));
+        if (year < 1000 || year > 9999) {
+            return baseFmt.print(new DateTime(millis));
+        }
+        int sec = (int) (ms / 1000);
+        char[] buf = new char[19];
+        put(buf, 0, (int) year, 4);
+        buf[4] = '-';
+        put(buf, 5, month, 2);
+        buf[7] = '-';
+        put(buf, 8, day, 2);
+        buf[10] = ' ';
+        put(buf, 11, sec / 3600, 2);
+        buf[13] = ':';
+        put(buf, 14, (sec / 60) % 60, 2);
+        buf[16] = ':';
+        put(buf, 17, sec % 60, 2);
+        return new String(buf);
+    }
+
+    private static void put(char[] buf, int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
         }
-        return baseFmt.print(dt);
     }
 
 }
@@ -30,8 +30,8 @@ import org.apache.log4j.Logger;
 import java.io.*;
 import java.net.URL;
 import java.util.UUID;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * File utils
@@ -53,12 +53,25 @@ public class FileUtil {
      * @throws IOException
      */
     public static void compressDir(String dirPath, String archiveName) throws IOException {
+        compressDir(dirPath, archiveName, Deflater.DEFAULT_COMPRESSION, 1);
+    }
+
+    /**
+     * Compresses local directory to the archiveName
+     *
+     * @param dirPath     path to the directory
+     * @param archiveName the name of the ZIP archive that is going to be created
+     * @param level       the compression level (see {@link ParallelZipOutputStream})
+     * @param threads     number of the compression threads
+     * @throws IOException
+     */
+    public static void compressDir(String dirPath, String archiveName, int level, int threads) throws IOException {
         l.debug("Compressing " + dirPath + " -> " + archiveName);
         File d = new File(dirPath);
         if (d.isDirectory()) {
             File[] files = d.listFiles();
             byte data[] = new byte[BUF_SIZE];
-            ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archiveName)));
+            ParallelZipOutputStream out = new ParallelZipOutputStream(new FileOutputStream(archiveName), level, threads);
             for (File file : files) {
                 BufferedInputStream fi = new BufferedInputStream(new FileInputStream(file), BUF_SIZE);
                 ZipEntry entry = new ZipEntry(file.getName());
@@ -313,7 +326,7 @@ public class FileUtil {
     public static String[] getCsvHeader(URL url, CsvConfiguration csvConfiguration) throws IOException {
         BufferedReader reader = null;
         try {
-            reader = createBufferedUtf8Reader(url);
+            reader = createBufferedUtf8Reader(CompressedInput.open(url.openStream()));
             CSVReader csvIn = new CSVReader(reader, csvConfiguration);
             return csvIn.readNext();
         } finally {
@@ -538,7 +551,7 @@ public class FileUtil {
      * @throws IOException
      */
     public static CSVWriter createUtf8CsvWriter(OutputStream outputStream) throws IOException {
-        return new CSVWriter(new OutputStreamWriter(outputStream, "utf8"));
+        return new CSVWriter(outputStream);
     }
 
 
@@ -550,7 +563,7 @@ public class FileUtil {
      * @throws IOException
      */
     public static CSVWriter createUtf8CsvEscapingWriter(File file) throws IOException {
-        return new CSVWriter(new OutputStreamWriter(new FileOutputStream(file), "utf8"), ',', '"', '"');
+        return new CSVWriter(new FileOutputStream(file), ',', '"', '"');
     }
 
 }
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import com.gooddata.exception.InvalidParameterException;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Reusable builder of the hashed row keys (e.g. the IDENTITY column). The key parts are collected into a reused
+ * buffer and hashed without creating the intermediate strings and digests. The default MD5 hash produces exactly
+ * the same hex string as <code>DigestUtils.md5Hex(key)</code>. The instance isn't thread safe.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class KeyDigest {
+
+    /**
+     * MD5 hash (default, compatible with the previously generated keys)
+     */
+    public static final String HASH_MD5 = "MD5";
+
+    /**
+     * Non-cryptographic 128-bit MurmurHash3 (x64 variant), faster, the keys differ from the MD5 keys
+     */
+    public static final String HASH_MURMUR3 = "MURMUR3";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // DigestUtils encodes the key with the platform default charset
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final boolean ASCII_COMPATIBLE = isAsciiCompatible(CHARSET);
+
+    private final boolean md5;
+    private final MessageDigest digest;
+    private final byte[] hash = new byte[16];
+    private final char[] hex = new char[32];
+    private CharsetEncoder encoder;
+    private char[] chars = new char[256];
+    private byte[] bytes = new byte[256];
+    private int length = 0;
+
+    /**
+     * Creates the key digest
+     *
+     * @param hash the hash name (MD5 | MURMUR3), null for the default MD5
+     */
+    public KeyDigest(String hash) {
+        md5 = HASH_MD5.equals(checkHash(hash));
+        if (md5) {
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e.getMessage());
+            }
+        } else {
+            digest = null;
+        }
+    }
+
+    /**
+     * Creates the MD5 key digest
+     */
+    public KeyDigest() {
+        this(HASH_MD5);
+    }
+
+    /**
+     * Validates the hash name
+     *
+     * @param hash the hash name
+     * @return the normalized hash name
+     */
+    public static String checkHash(String hash) {
+        if (hash == null || hash.length() <= 0 || HASH_MD5.equalsIgnoreCase(hash))
+            return HASH_MD5;
+        if (HASH_MURMUR3.equalsIgnoreCase(hash))
+            return HASH_MURMUR3;
+        throw new InvalidParameterException("Unknown identity hash '" + hash + "'. Use " + HASH_MD5 + " or " +
+                HASH_MURMUR3 + ".");
+    }
+
+    /**
+     * Clears the key
+     *
+     * @return this key digest
+     */
+    public KeyDigest reset() {
+        length = 0;
+        return this;
+    }
+
+    /**
+     * Appends the key part
+     *
+     * @param value the key part (appended the same way as by StringBuilder.append(Object))
+     * @return this key digest
+     */
+    public KeyDigest append(Object value) {
+        return append((value instanceof String) ? ((String) value) : (String.valueOf(value)));
+    }
+
+    /**
+     * Appends the key part
+     *
+     * @param value the key part
+     * @return this key digest
+     */
+    public KeyDigest append(String value) {
+        if (value == null)
+            value = "null";
+        int n = value.length();
+        ensureChars(length + n);
+        value.getChars(0, n, chars, length);
+        length += n;
+        return this;
+    }
+
+    /**
+     * Appends a character (e.g. the separator)
+     *
+     * @param c the character
+     * @return this key digest
+     */
+    public KeyDigest append(char c) {
+        ensureChars(length + 1);
+        chars[length++] = c;
+        return this;
+    }
+
+    /**
+     * Hashes the collected key and clears it
+     *
+     * @return the lowercase hex representation of the 128-bit hash
+     */
+    public String hex() {
+        int n = encode();
+        if (md5) {
+            digest.update(bytes, 0, n);
+            try {
+                digest.digest(hash, 0, hash.length);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e.getMessage());
+            }
+        } else {
+            murmur3(bytes, n, hash);
+        }
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX[(hash[i] >> 4) & 0x0f];
+            hex[2 * i + 1] = HEX[hash[i] & 0x0f];
+        }
+        length = 0;
+        return new String(hex);
+    }
+
+    /**
+     * Hashes the key
+     *
+     * @param key the key
+     * @return the lowercase hex representation of the 128-bit hash
+     */
+    public String hex(String key) {
+        return reset().append(key).hex();
+    }
+
+    /**
+     * Encodes the collected characters to the bytes buffer the same way as String.getBytes()
+     *
+     * @return number of encoded bytes
+     */
+    private int encode() {
+        if (ASCII_COMPATIBLE) {
+            ensureBytes(length);
+            int i = 0;
+            while (i < length && chars[i] < 0x80) {
+                bytes[i] = (byte) chars[i];
+                i++;
+            }
+            if (i == length)
+                return length;
+        }
+        if (encoder == null) {
+            encoder = CHARSET.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        ensureBytes((int) (length * encoder.maxBytesPerChar()) + 16);
+        CharBuffer in = CharBuffer.wrap(chars, 0, length);
+        ByteBuffer out = ByteBuffer.wrap(bytes);
+        encoder.reset();
+        CoderResult r = encoder.encode(in, out, true);
+        if (!r.isUnderflow())
+            throw new IllegalStateException("Can't encode the key: " + r);
+        encoder.flush(out);
+        return out.position();
+    }
+
+    private void ensureChars(int n) {
+        if (n > chars.length) {
+            char[] c = new char[Math.max(n, chars.length * 2)];
+            System.arraycopy(chars, 0, c, 0, length);
+            chars = c;
+        }
+    }
+
+    private void ensureBytes(int n) {
+        if (n > bytes.length) {
+            bytes = new byte[Math.max(n, bytes.length * 2)];
+        }
+    }
+
+    private static boolean isAsciiCompatible(Charset cs) {
+        char[] ascii = new char[0x80];
+        for (int i = 0; i < ascii.length; i++)
+            ascii[i] = (char) i;
+        try {
+            byte[] b = new String(ascii).getBytes(cs.name());
+            if (b.length != ascii.length)
+                return false;
+            for (int i = 0; i < b.length; i++)
+                if (b[i] != i)
+                    return false;
+            return true;
+        } catch (java.io.UnsupportedEncodingException e) {
+            return false;
+        }
+    }
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * MurmurHash3 x64 128-bit, seed 0
+     *
+     * @param data   the data
+     * @param length the data length
+     * @param out    the 16 bytes of the hash (big endian h1, h2)
+     */
+    static void murmur3(byte[] data, int length, byte[] out) {
+        long h1 = 0;
+        long h2 = 0;
+        int blocks = length / 16;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(data, i * 16);
+            long k2 = getLong(data, i * 16 + 8);
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        int tail = blocks * 16;
+        long k1 = 0;
+        long k2 = 0;
+        switch (length & 15) {
+            case 15: k2 ^= ((long) data[tail + 14] & 0xff) << 48;
+            case 14: k2 ^= ((long) data[tail + 13] & 0xff) << 40;
+            case 13: k2 ^= ((long) data[tail + 12] & 0xff) << 32;
+            case 12: k2 ^= ((long) data[tail + 11] & 0xff) << 24;
+            case 11: k2 ^= ((long) data[tail + 10] & 0xff) << 16;
+            case 10: k2 ^= ((long) data[tail + 9] & 0xff) << 8;
+            case 9:
+                k2 ^= ((long) data[tail + 8] & 0xff);
+                k2 *= C2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= C1;
+                h2 ^= k2;
+            case 8: k1 ^= ((long) data[tail + 7] & 0xff) << 56;
+            case 7: k1 ^= ((long) data[tail + 6] & 0xff) << 48;
+            case 6: k1 ^= ((long) data[tail + 5] & 0xff) << 40;
+            case 5: k1 ^= ((long) data[tail + 4] & 0xff) << 32;
+            case 4: k1 ^= ((long) data[tail + 3] & 0xff) << 24;
+            case 3: k1 ^= ((long) data[tail + 2] & 0xff) << 16;
+            case 2: k1 ^= ((long) data[tail + 1] & 0xff) << 8;
+            case 1:
+                k1 ^= ((long) data[tail] & 0xff);
+                k1 *= C1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= C2;
+                h1 ^= k1;
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        putLong(out, 0, h1);
+        putLong(out, 8, h2);
+    }
+
+    private static long getLong(byte[] b, int i) {
+        return ((long) b[i] & 0xff) | (((long) b[i + 1] & 0xff) << 8) | (((long) b[i + 2] & 0xff) << 16) |
+                (((long) b[i + 3] & 0xff) << 24) | (((long) b[i + 4] & 0xff) << 32) | (((long) b[i + 5] & 0xff) << 40) |
+                (((long) b[i + 6] & 0xff) << 48) | (((long) b[i + 7] & 0xff) << 56);
+    }
+
+    private static void putLong(byte[] b, int i, long v) {
+        for (int j = 7; j >= 0; j--) {
+            b[i + j] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+}
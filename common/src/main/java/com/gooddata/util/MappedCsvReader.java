@@ -0,0 +1,550 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import com.gooddata.exception.InvalidParameterException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * CSV reader of a memory mapped UTF-8 file. The separators, quotes and line ends are found on the raw bytes
+ * (they are ASCII characters that never occur inside a UTF-8 multibyte sequence), only the field contents
+ * are decoded to strings. The parsing rules are the same as the rules of the {@link CSVReader}.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class MappedCsvReader extends CSVReader {
+
+    // size of the mapped file window
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    // size of the block copied from the window
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final String UTF8 = "UTF-8";
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    // end of the read byte range
+    private final long rangeEnd;
+    private long windowEnd;
+    private MappedByteBuffer window;
+
+    // configuration
+    private final byte separator;
+    private final byte quote;
+    private final byte escape;
+    private boolean hasCommentSupport = false;
+    private boolean skipSpaces = false;
+    private byte commentChar;
+    // the ASCII characters that end a run of the ordinary characters (outside and inside of a quoted field)
+    private final boolean[] special = new boolean[128];
+    private final boolean[] specialQuoted = new boolean[128];
+
+    // the reused input block
+    private final byte[] data = new byte[BLOCK_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    // status variables
+    private String[] openRecord = new String[16];
+    private int openRecordSize = 0;
+    // the open field is either a slice of the input block or the content of the field buffer
+    private byte[] openField = new byte[256];
+    private int openFieldLength = 0;
+    private int sliceStart = 0;
+    private int sliceLength = 0;
+    private char[] decoded = new char[256];
+    private boolean recordComplete = false;
+    private byte lastChar = 0;
+    private boolean quotedField = false;
+    private int quotedFieldStartRow = 0;
+    private int quotedFieldStartCol = 0;
+    private boolean wasEscapeOrNotOpeningQuote = false;
+    private boolean commentedLine = false;
+    // continuation bytes of a multibyte character consumed after an escape or quote
+    private int skipBytes = 0;
+
+    private int row = 1;
+    private int col = 0;
+
+    /**
+     * Constructs MappedCsvReader using a comma for the separator.
+     *
+     * @param f the UTF-8 CSV file
+     * @throws IOException if the file can't be opened
+     */
+    public MappedCsvReader(File f) throws IOException {
+        this(f, DEFAULT_SEPARATOR, DEFAULT_QUOTE_CHARACTER, DEFAULT_ESCAPE_CHARACTER, false);
+    }
+
+    /**
+     * Constructs MappedCsvReader with supplied separator.
+     *
+     * @param f         the UTF-8 CSV file
+     * @param separator the delimiter to use for separating entries.
+     * @throws IOException if the file can't be opened
+     */
+    public MappedCsvReader(File f, char separator) throws IOException {
+        this(f, separator, DEFAULT_QUOTE_CHARACTER, DEFAULT_ESCAPE_CHARACTER, false);
+    }
+
+    /**
+     * Constructs MappedCsvReader with supplied separator and quote char.
+     *
+     * @param f          the UTF-8 CSV file
+     * @param separator  the delimiter to use for separating entries
+     * @param quotechar  the character to use for quoted elements
+     * @param escape     the character to use for escaping a separator or quote
+     * @param skipSpaces whether should spaces in front of quoted columns be skipped or taken as an error
+     * @throws IOException if the file can't be opened
+     */
+    public MappedCsvReader(File f, char separator, char quotechar, char escape, boolean skipSpaces) throws IOException {
+        this(f, 0, -1, separator, quotechar, escape, skipSpaces);
+    }
+
+    /**
+     * Constructs MappedCsvReader of a byte range of the file. The range must start and end at record boundaries
+     * (see {@link CsvIndex}).
+     *
+     * @param f          the UTF-8 CSV file
+     * @param start      the first byte of the range
+     * @param end        the end of the range (exclusive), -1 for the end of the file
+     * @param separator  the delimiter to use for separating entries
+     * @param quotechar  the character to use for quoted elements
+     * @param escape     the character to use for escaping a separator or quote
+     * @param skipSpaces whether should spaces in front of quoted columns be skipped or taken as an error
+     * @throws IOException if the file can't be opened
+     */
+    public MappedCsvReader(File f, long start, long end, char separator, char quotechar, char escape, boolean skipSpaces)
+            throws IOException {
+        super(null, separator, quotechar, escape, skipSpaces);
+        this.separator = ascii(separator);
+        this.quote = ascii(quotechar);
+        this.escape = ascii(escape);
+        this.skipSpaces = skipSpaces;
+        special[this.separator] = special[this.quote] = special[this.escape] = special['\n'] = special['\r'] = true;
+        // the separator and the comment char are ordinary characters of a quoted field
+        specialQuoted[this.quote] = specialQuoted[this.escape] = specialQuoted['\n'] = specialQuoted['\r'] = true;
+        file = new RandomAccessFile(f, "r");
+        channel = file.getChannel();
+        long size = channel.size();
+        this.rangeEnd = (end < 0 || end > size) ? (size) : (end);
+        this.windowEnd = Math.min(start, rangeEnd);
+    }
+
+    private static byte ascii(char c) {
+        if (c >= 0x80)
+            throw new InvalidParameterException("The memory mapped CSV reader supports ASCII separators, quotes and " +
+                    "escapes only. Found '" + c + "'.");
+        return (byte) c;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String[] readNext(String[] reuse) throws IOException {
+        while (!recordComplete) {
+            if (pos >= limit) {
+                if (eof || !fill()) {
+                    return readLast(reuse);
+                }
+            }
+            processData();
+        }
+        recordComplete = false;
+        return takeRecord(reuse);
+    }
+
+    /**
+     * Copies the next block of the mapped file to the input block, the open field slice is copied
+     * to the field buffer first.
+     *
+     * @return false at the end of the file
+     * @throws IOException if the mapping fails
+     */
+    private boolean fill() throws IOException {
+        materializeSlice();
+        if (window == null || !window.hasRemaining()) {
+            if (windowEnd >= rangeEnd) {
+                eof = true;
+                window = null;
+                pos = limit = 0;
+                return false;
+            }
+            long size = Math.min(WINDOW_SIZE, rangeEnd - windowEnd);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowEnd, size);
+            windowEnd += size;
+        }
+        int size = Math.min(data.length, window.remaining());
+        window.get(data, 0, size);
+        pos = 0;
+        limit = size;
+        return true;
+    }
+
+    private String[] readLast(String[] reuse) throws IOException {
+        if (wasEscapeOrNotOpeningQuote) {
+            handlePreviousEscapeOrQuote(-1);
+        }
+        if (quotedField) {
+            throw new IllegalStateException("Missing quote character to close the quote char at ["
+                    + quotedFieldStartRow + "," + quotedFieldStartCol + "]");
+        }
+        if (openRecordSize == 0 && openFieldLength() == 0) {
+            return null;
+        }
+        if (openFieldLength() > 0) {
+            addField();
+        }
+        return takeRecord(reuse);
+    }
+
+    /**
+     * Processes the input block until a record is complete or the block is exhausted
+     *
+     * @throws IOException in case of invalid encoding
+     */
+    private void processData() throws IOException {
+        final byte[] data = this.data;
+        while (pos < limit && !recordComplete) {
+            final byte c = data[pos];
+            if (skipBytes > 0) {
+                skipBytes--;
+                pos++;
+                continue;
+            }
+            final boolean[] special = quotedField ? this.specialQuoted : this.special;
+            if (!wasEscapeOrNotOpeningQuote && !commentedLine && (c < 0 || !special[c])) {
+                // a run of the ordinary bytes is appended at once, the column counts the characters
+                int end = pos;
+                int continuation = 0;
+                final int limit = this.limit;
+                byte b = c;
+                while (true) {
+                    if (b < 0) {
+                        if ((b & 0xC0) == 0x80)
+                            continuation++;
+                        else if ((b & 0xF8) == 0xF0)
+                            continuation--; // a supplementary character is a surrogate pair
+                    }
+                    if (++end >= limit)
+                        break;
+                    b = data[end];
+                    if (b >= 0 && special[b])
+                        break;
+                }
+                addCharacters(pos, end - pos);
+                col += end - pos - continuation;
+                lastChar = data[end - 1];
+                pos = end;
+                continue;
+            }
+            pos++;
+            col++;
+            if (wasEscapeOrNotOpeningQuote) {
+                handlePreviousEscapeOrQuote(c);
+                if (c < 0) {
+                    // the whole multibyte character is consumed
+                    skipBytes = sequenceLength(c) - 1;
+                }
+            } else if (c == escape || c == quote) {
+                handleEscapeOrQuote();
+            } else if (c == separator) {
+                handleSeparator(c);
+            } else if (c == '\n' || c == '\r') {
+                handleCrOrLf(c);
+            } else if (hasCommentSupport && (c == commentChar)) {
+                handleComment(c);
+            }
+            // the rest of a commented line is skipped
+            lastChar = c;
+        }
+    }
+
+    private void handleCrOrLf(final byte c) throws IOException {
+        if (!quotedField && (lastChar == '\r')) {
+            return;
+        }
+        handleEndOfLine(c);
+    }
+
+    private void handleComment(final byte c) {
+        if (commentedLine)
+            return;
+        if (openRecordSize == 0 && (openFieldLength() == 0) && !quotedField) {
+            commentedLine = true;
+        } else {
+            addCharacter(c);
+        }
+    }
+
+    private void handleEndOfLine(final byte c) throws IOException {
+        if (commentedLine) {
+            commentedLine = false;
+        } else if (quotedField) {
+            addCharacter(c);
+        } else {
+            addField();
+            recordComplete = true;
+            quotedField = false;
+        }
+        row++;
+        col = 0;
+    }
+
+    private String[] takeRecord(String[] reuse) {
+        String[] result = (reuse != null && reuse.length == openRecordSize) ? (reuse) : (new String[openRecordSize]);
+        System.arraycopy(openRecord, 0, result, 0, openRecordSize);
+        Arrays.fill(openRecord, 0, openRecordSize, null);
+        openRecordSize = 0;
+        return result;
+    }
+
+    private void handleSeparator(final byte c) throws IOException {
+        if (commentedLine)
+            return;
+        if (quotedField) {
+            addCharacter(c);
+        } else {
+            addField();
+        }
+    }
+
+    /**
+     * Handles the character following an escape or a not opening quote
+     *
+     * @param c the character, -1 at the end of the file
+     * @throws IOException in case of invalid encoding
+     */
+    private void handlePreviousEscapeOrQuote(int c) throws IOException {
+        boolean wasEscape = false;
+        if (lastChar == escape && c != -1) {
+            if (c == escape || c == quote) {
+                addCharacter((byte) c);
+                wasEscape = true;
+            }
+        }
+
+        if (!wasEscape && (lastChar == quote)) {
+            if (quotedField) { // closing quote should be followed by separator
+                if (c == -1 || c == '\r' || c == '\n') {
+                    quotedField = false;
+                    if (c != -1) {
+                        handleCrOrLf((byte) c);
+                    } // c == -1 is handled after the main loop
+                } else if (c == separator) {
+                    quotedField = false;
+                    handleSeparator((byte) c);
+                } else {
+                    throw new IllegalStateException(
+                            "separator expected after a closing quote; found " + charAt(pos - 1) + getPositionString());
+                }
+            } else if (openFieldLength() == 0) {
+                startQuotedField();
+            } else {
+                throw new IllegalStateException("odd quote character at " + getPositionString());
+            }
+        }
+
+        wasEscapeOrNotOpeningQuote = false;
+    }
+
+    private void handleEscapeOrQuote() {
+        if (commentedLine)
+            return;
+
+        // handle start of a new quoted field
+        if (isOpenFieldBlank() && !quotedField) {
+            startQuotedField();
+            wasEscapeOrNotOpeningQuote = false;
+        } else {
+            wasEscapeOrNotOpeningQuote = true;
+        }
+    }
+
+    private boolean isOpenFieldBlank() {
+        materializeSlice();
+        if (!skipSpaces)
+            return openFieldLength == 0;
+        // the same as String.trim().length() == 0 (the multibyte characters aren't blank)
+        for (int i = 0; i < openFieldLength; i++) {
+            if (openField[i] < 0 || openField[i] > ' ')
+                return false;
+        }
+        return true;
+    }
+
+    private void addField() throws IOException {
+        String field;
+        if (sliceLength > 0) {
+            field = decode(data, sliceStart, sliceLength);
+            sliceLength = 0;
+        } else {
+            field = decode(openField, 0, openFieldLength);
+            openFieldLength = 0;
+        }
+        if (openRecordSize == openRecord.length) {
+            String[] record = new String[openRecordSize * 2];
+            System.arraycopy(openRecord, 0, record, 0, openRecordSize);
+            openRecord = record;
+        }
+        openRecord[openRecordSize++] = field;
+        quotedField = false;
+    }
+
+    /**
+     * Decodes the UTF-8 bytes, ASCII is copied directly
+     *
+     * @param b   the bytes
+     * @param off the offset
+     * @param len the length
+     * @return the decoded string
+     * @throws UnsupportedEncodingException never
+     */
+    private String decode(byte[] b, int off, int len) throws UnsupportedEncodingException {
+        for (int i = off, end = off + len; i < end; i++) {
+            if (b[i] < 0)
+                return new String(b, off, len, UTF8);
+        }
+        if (decoded.length < len)
+            decoded = new char[Math.max(len, decoded.length * 2)];
+        final char[] c = decoded;
+        for (int i = 0; i < len; i++) {
+            c[i] = (char) b[off + i];
+        }
+        return new String(c, 0, len);
+    }
+
+    private int openFieldLength() {
+        return openFieldLength + sliceLength;
+    }
+
+    /**
+     * Appends the bytes of the input block to the open field. The bytes of an empty field
+     * are kept as a slice of the input block.
+     *
+     * @param start  the start position in the input block
+     * @param length the number of bytes
+     */
+    private void addCharacters(final int start, final int length) {
+        if (openFieldLength == 0 && sliceLength == 0) {
+            sliceStart = start;
+            sliceLength = length;
+        } else {
+            materializeSlice();
+            ensureFieldCapacity(openFieldLength + length);
+            System.arraycopy(data, start, openField, openFieldLength, length);
+            openFieldLength += length;
+        }
+    }
+
+    private void addCharacter(final byte c) {
+        materializeSlice();
+        ensureFieldCapacity(openFieldLength + 1);
+        openField[openFieldLength++] = c;
+    }
+
+    private void materializeSlice() {
+        if (sliceLength > 0) {
+            ensureFieldCapacity(openFieldLength + sliceLength);
+            System.arraycopy(data, sliceStart, openField, openFieldLength, sliceLength);
+            openFieldLength += sliceLength;
+            sliceLength = 0;
+        }
+    }
+
+    private void ensureFieldCapacity(int capacity) {
+        if (capacity > openField.length) {
+            byte[] field = new byte[Math.max(capacity, openField.length * 2)];
+            System.arraycopy(openField, 0, field, 0, openFieldLength);
+            openField = field;
+        }
+    }
+
+    private void startQuotedField() {
+        quotedField = true;
+        quotedFieldStartRow = row;
+        quotedFieldStartCol = col;
+    }
+
+    /**
+     * Returns the (possibly multibyte) character at the position of the input block for the error messages
+     *
+     * @param p the position
+     * @return the character
+     * @throws UnsupportedEncodingException never
+     */
+    private String charAt(int p) throws UnsupportedEncodingException {
+        return new String(data, p, Math.min(sequenceLength(data[p]), limit - p), UTF8);
+    }
+
+    /**
+     * Returns the length of the UTF-8 sequence started by the byte
+     *
+     * @param c the first byte
+     * @return the sequence length
+     */
+    private static int sequenceLength(byte c) {
+        if ((c & 0xE0) == 0xC0)
+            return 2;
+        if ((c & 0xF0) == 0xE0)
+            return 3;
+        if ((c & 0xF8) == 0xF0)
+            return 4;
+        return 1;
+    }
+
+    /**
+     * Closes the mapped file.
+     *
+     * @throws IOException if the close fails
+     */
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+        file.close();
+    }
+
+    private String getPositionString() {
+        return " [" + row + "," + col + "]";
+    }
+
+    public void setCommentChar(char c) {
+        hasCommentSupport = true;
+        commentChar = ascii(c);
+        special[commentChar] = true;
+    }
+
+    public int getRow() {
+        return row;
+    }
+}
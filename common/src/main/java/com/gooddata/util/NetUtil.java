@@ -24,10 +24,14 @@
 package com.gooddata.util;
 
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.NTCredentials;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthPolicy;
 import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
 import org.apache.log4j.Logger;
 
 import java.util.ArrayList;
@@ -40,6 +44,130 @@ public class NetUtil {
 
     private static Logger l = Logger.getLogger(NetUtil.class);
 
+    /**
+     * System property with the maximal number of the pooled connections to a single host
+     */
+    public static final String HTTP_MAX_CONNECTIONS_PER_HOST = "gdc.http.maxConnectionsPerHost";
+
+    /**
+     * System property with the maximal number of all pooled connections
+     */
+    public static final String HTTP_MAX_TOTAL_CONNECTIONS = "gdc.http.maxTotalConnections";
+
+    /**
+     * System property with the connect timeout in milliseconds (0 waits forever)
+     */
+    public static final String HTTP_CONNECTION_TIMEOUT = "gdc.http.connectionTimeout";
+
+    /**
+     * System property with the socket (read) timeout in milliseconds (0 waits forever)
+     */
+    public static final String HTTP_SOCKET_TIMEOUT = "gdc.http.socketTimeout";
+
+    /**
+     * System property with the time in milliseconds after that an idle kept-alive connection is closed
+     */
+    public static final String HTTP_IDLE_TIMEOUT = "gdc.http.idleTimeout";
+
+    /**
+     * System property with the time in milliseconds a request waits for a free pooled connection (0 waits forever)
+     */
+    public static final String HTTP_CONNECTION_MANAGER_TIMEOUT = "gdc.http.connectionManagerTimeout";
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 16;
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 64;
+    public static final int DEFAULT_CONNECTION_TIMEOUT = 60000;
+    public static final int DEFAULT_SOCKET_TIMEOUT = 0;
+    public static final int DEFAULT_IDLE_TIMEOUT = 60000;
+    public static final int DEFAULT_CONNECTION_MANAGER_TIMEOUT = 600000;
+
+    private static MultiThreadedHttpConnectionManager connectionManager = null;
+    private static IdleConnectionTimeoutThread idleConnectionCloser = null;
+
+    /**
+     * Returns the connection pool that is shared by all HTTP clients created by {@link #createHttpClient()}.
+     * The connections are kept alive and reused by the subsequent requests to the same host. The pool is
+     * configured by the gdc.http.* system properties when it is first used.
+     *
+     * @return the shared connection manager
+     */
+    public static synchronized HttpConnectionManager getConnectionManager() {
+        if (connectionManager == null) {
+            int maxPerHost = getIntProperty(HTTP_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_CONNECTIONS_PER_HOST);
+            int maxTotal = Math.max(maxPerHost, getIntProperty(HTTP_MAX_TOTAL_CONNECTIONS, DEFAULT_MAX_TOTAL_CONNECTIONS));
+            int connectionTimeout = getIntProperty(HTTP_CONNECTION_TIMEOUT, DEFAULT_CONNECTION_TIMEOUT);
+            int socketTimeout = getIntProperty(HTTP_SOCKET_TIMEOUT, DEFAULT_SOCKET_TIMEOUT);
+            int idleTimeout = getIntProperty(HTTP_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+            l.debug("Configuring the HTTP connection pool with maxConnectionsPerHost=" + maxPerHost +
+                    ", maxTotalConnections=" + maxTotal + ", connectionTimeout=" + connectionTimeout +
+                    ", socketTimeout=" + socketTimeout + ", idleTimeout=" + idleTimeout);
+            MultiThreadedHttpConnectionManager cm = new MultiThreadedHttpConnectionManager();
+            HttpConnectionManagerParams params = cm.getParams();
+            params.setDefaultMaxConnectionsPerHost(maxPerHost);
+            params.setMaxTotalConnections(maxTotal);
+            params.setConnectionTimeout(connectionTimeout);
+            params.setSoTimeout(socketTimeout);
+            // the kept-alive connections that the server has closed aren't reused
+            params.setStaleCheckingEnabled(true);
+            params.setTcpNoDelay(true);
+            if (idleTimeout > 0) {
+                IdleConnectionTimeoutThread closer = new IdleConnectionTimeoutThread();
+                closer.setName("GdcHttpIdleConnectionCloser");
+                closer.setDaemon(true);
+                closer.setConnectionTimeout(idleTimeout);
+                closer.setTimeoutInterval(Math.max(1000, idleTimeout / 2));
+                closer.addConnectionManager(cm);
+                closer.start();
+                idleConnectionCloser = closer;
+            }
+            connectionManager = cm;
+        }
+        return connectionManager;
+    }
+
+    /**
+     * Closes all pooled connections, the next {@link #getConnectionManager()} call creates a new pool with
+     * the current configuration
+     */
+    public static synchronized void shutdownConnectionManager() {
+        if (idleConnectionCloser != null) {
+            idleConnectionCloser.shutdown();
+            idleConnectionCloser = null;
+        }
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+        }
+    }
+
+    /**
+     * Creates a HTTP client with the proxy configured. The client uses the shared connection pool
+     * (see {@link #getConnectionManager()}), so it can be used by multiple threads. The methods executed by
+     * the client must be released. A request fails when it doesn't get a pooled connection within the
+     * gdc.http.connectionManagerTimeout, so a leaked connection doesn't block the other requests forever.
+     *
+     * @return the HTTP client
+     */
+    public static HttpClient createHttpClient() {
+        HttpClient client = new HttpClient(getConnectionManager());
+        client.getParams().setConnectionManagerTimeout(
+                getIntProperty(HTTP_CONNECTION_MANAGER_TIMEOUT, DEFAULT_CONNECTION_MANAGER_TIMEOUT));
+        configureHttpProxy(client);
+        return client;
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String v = System.getProperty(name);
+        if (v == null || v.trim().length() <= 0)
+            return defaultValue;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            l.warn("Invalid value of the " + name + " property '" + v + "', using " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
     public static void configureHttpProxy(HttpClient client) {
         final String proxyHost = System.getProperty("http.proxyHost");
         final int proxyPort = System.getProperty("http.proxyPort") == null
@@ -0,0 +1,558 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZIP archive writer that deflates the entries in parallel. The entry data are split to blocks of
+ * {@link #BLOCK_SIZE} that are compressed independently on a thread pool. Every block but the last one
+ * is ended by a sync flush, so the compressed blocks concatenate to a single valid DEFLATE stream.
+ * The blocks are primed with the last 32KB of the preceding block, so the compression ratio stays close
+ * to the single threaded one. The entries use the data descriptor, the archive can be written to
+ * a non-seekable stream. The ZIP64 extensions are used when the sizes or offsets exceed 4GB.
+ * The sync flush is only available since Java 7, the stream delegates to the single threaded
+ * {@link ZipOutputStream} on the older runtimes.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ParallelZipOutputStream extends OutputStream {
+
+    /**
+     * The fastest compression level that stores the data without compression
+     */
+    public static final int STORE = Deflater.NO_COMPRESSION;
+
+    /**
+     * Size of the independently compressed blocks
+     */
+    public static final int BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final AtomicInteger poolNumber = new AtomicInteger();
+
+    // Deflater.deflate(byte[], int, int, int) and Deflater.SYNC_FLUSH exist since Java 7
+    private static final Method DEFLATE_FLUSH;
+    private static final Integer SYNC_FLUSH;
+
+    static {
+        Method m = null;
+        Integer f = null;
+        try {
+            m = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+            f = Deflater.class.getField("SYNC_FLUSH").getInt(null);
+        } catch (Exception e) {
+            m = null;
+        }
+        DEFLATE_FLUSH = m;
+        SYNC_FLUSH = f;
+    }
+
+    /**
+     * Returns true if the runtime supports the parallel compression
+     *
+     * @return true if the blocks can be compressed in parallel
+     */
+    public static boolean isParallelSupported() {
+        return DEFLATE_FLUSH != null;
+    }
+
+    private final OutputStream out;
+    private final ZipOutputStream fallback;
+    private final int level;
+    private final int threads;
+    private final ExecutorService pool;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final LinkedList<Future<Block>> pending = new LinkedList<Future<Block>>();
+    private final CRC32 crc = new CRC32();
+    private final byte[] header = new byte[64];
+    private final byte[] single = new byte[1];
+
+    private Entry entry;
+    private byte[] block;
+    private int count;
+    private byte[] dictionary;
+    private long written;
+    private boolean closed;
+
+    /**
+     * Creates the single threaded ZIP writer with the default compression level
+     *
+     * @param out the target stream
+     */
+    public ParallelZipOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION, 1);
+    }
+
+    /**
+     * Creates the ZIP writer
+     *
+     * @param out     the target stream
+     * @param level   the compression level (0-9, {@link #STORE} or {@link Deflater#DEFAULT_COMPRESSION})
+     * @param threads number of the compression threads, 1 compresses in the calling thread
+     */
+    public ParallelZipOutputStream(OutputStream out, int level, int threads) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        if (threads <= 0)
+            throw new IllegalArgumentException("The number of compression threads must be positive.");
+        this.out = new BufferedOutputStream(out, BLOCK_SIZE);
+        this.level = level;
+        this.threads = threads;
+        if (!isParallelSupported()) {
+            fallback = new ZipOutputStream(this.out);
+            fallback.setLevel(level);
+            pool = null;
+            return;
+        }
+        fallback = null;
+        if (threads > 1) {
+            final String prefix = "GdcZip-" + poolNumber.incrementAndGet() + "-";
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int n = 0;
+
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, prefix + (++n));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        } else {
+            pool = null;
+        }
+    }
+
+    /**
+     * Starts a new deflated entry, the previous entry is closed
+     *
+     * @param e the entry (only the name and time are used)
+     * @throws IOException IO issues
+     */
+    public void putNextEntry(ZipEntry e) throws IOException {
+        ensureOpen();
+        if (fallback != null) {
+            fallback.putNextEntry(new ZipEntry(e.getName()));
+            return;
+        }
+        if (entry != null) {
+            closeEntry();
+        }
+        entry = new Entry(e.getName(), e.getTime() == -1 ? System.currentTimeMillis() : e.getTime(), written);
+        crc.reset();
+        dictionary = null;
+        block = new byte[BLOCK_SIZE];
+        count = 0;
+        // the local file header, the sizes follow the data in the data descriptor
+        int n = 0;
+        n = putInt(header, n, 0x04034b50);
+        n = putShort(header, n, 20);
+        n = putShort(header, n, entry.flags);
+        n = putShort(header, n, 8);
+        n = putInt(header, n, entry.dosTime);
+        n = putInt(header, n, 0);
+        n = putInt(header, n, 0);
+        n = putInt(header, n, 0);
+        n = putShort(header, n, entry.name.length);
+        n = putShort(header, n, 0);
+        writeOut(header, 0, n);
+        writeOut(entry.name, 0, entry.name.length);
+    }
+
+    /**
+     * Finishes the current entry
+     *
+     * @throws IOException IO issues
+     */
+    public void closeEntry() throws IOException {
+        ensureOpen();
+        if (fallback != null) {
+            fallback.closeEntry();
+            return;
+        }
+        if (entry == null)
+            return;
+        submit(true);
+        while (!pending.isEmpty()) {
+            writeBlock();
+        }
+        entry.crc = crc.getValue();
+        int n = 0;
+        n = putInt(header, n, 0x08074b50);
+        n = putInt(header, n, (int) entry.crc);
+        if (entry.csize >= ZIP64_MAGIC || entry.size >= ZIP64_MAGIC) {
+            n = putLong(header, n, entry.csize);
+            n = putLong(header, n, entry.size);
+        } else {
+            n = putInt(header, n, (int) entry.csize);
+            n = putInt(header, n, (int) entry.size);
+        }
+        writeOut(header, 0, n);
+        entries.add(entry);
+        entry = null;
+        block = null;
+        dictionary = null;
+    }
+
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (fallback != null) {
+            fallback.write(b, off, len);
+            return;
+        }
+        if (entry == null)
+            throw new IOException("No current ZIP entry.");
+        while (len > 0) {
+            int n = Math.min(len, BLOCK_SIZE - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == BLOCK_SIZE) {
+                submit(false);
+            }
+        }
+    }
+
+    /**
+     * Writes the blocks that are already compressed. The block that is being filled isn't flushed.
+     *
+     * @throws IOException IO issues
+     */
+    public void flush() throws IOException {
+        ensureOpen();
+        if (fallback != null) {
+            fallback.flush();
+            return;
+        }
+        while (!pending.isEmpty() && pending.getFirst().isDone()) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    /**
+     * Finishes the current entry, writes the central directory and closes the target stream
+     *
+     * @throws IOException IO issues
+     */
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            if (fallback != null) {
+                fallback.finish();
+            } else {
+                if (entry != null) {
+                    closeEntry();
+                }
+                writeCentralDirectory();
+            }
+            out.flush();
+        } finally {
+            closed = true;
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("The ZIP stream is closed.");
+    }
+
+    private void submit(boolean last) throws IOException {
+        crc.update(block, 0, count);
+        entry.size += count;
+        final byte[] data = block;
+        final int len = count;
+        final byte[] dict = dictionary;
+        final boolean finish = last;
+        if (pool == null) {
+            entry.csize += writeOut(compress(data, len, dict, finish));
+        } else {
+            pending.add(pool.submit(new Callable<Block>() {
+                public Block call() {
+                    return compress(data, len, dict, finish);
+                }
+            }));
+            // at most two blocks per thread are kept in memory
+            while (pending.size() > threads * 2) {
+                writeBlock();
+            }
+        }
+        if (!last) {
+            dictionary = new byte[DICTIONARY_SIZE];
+            System.arraycopy(data, len - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+            block = pool == null ? data : new byte[BLOCK_SIZE];
+        }
+        count = 0;
+    }
+
+    private void writeBlock() throws IOException {
+        Future<Block> f = pending.removeFirst();
+        try {
+            entry.csize += writeOut(f.get());
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while compressing the ZIP entry " + entry.getName());
+        } catch (ExecutionException e) {
+            IOException ioe = new IOException("Failed to compress the ZIP entry " + entry.getName());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+    }
+
+    private Block compress(byte[] data, int len, byte[] dict, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dict != null && level != STORE) {
+                deflater.setDictionary(dict);
+            }
+            deflater.setInput(data, 0, len);
+            Block b = new Block(len + (len >> 3) + 64);
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    b.ensureSpace();
+                    b.length += deflater.deflate(b.data, b.length, b.data.length - b.length);
+                }
+            } else {
+                // a full output buffer means the flush may not be complete
+                int n;
+                int space;
+                do {
+                    b.ensureSpace();
+                    space = b.data.length - b.length;
+                    n = syncFlush(deflater, b.data, b.length, space);
+                    b.length += n;
+                } while (n == space);
+            }
+            return b;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int syncFlush(Deflater deflater, byte[] b, int off, int len) {
+        try {
+            return (Integer) DEFLATE_FLUSH.invoke(deflater, b, off, len, SYNC_FLUSH);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            Throwable t = e.getCause();
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long start = written;
+        for (Entry e : entries) {
+            boolean zip64 = e.size >= ZIP64_MAGIC || e.csize >= ZIP64_MAGIC || e.offset >= ZIP64_MAGIC;
+            int extra = 0;
+            if (zip64) {
+                extra = 4 + (e.size >= ZIP64_MAGIC ? 8 : 0) + (e.csize >= ZIP64_MAGIC ? 8 : 0)
+                        + (e.offset >= ZIP64_MAGIC ? 8 : 0);
+            }
+            int n = 0;
+            n = putInt(header, n, 0x02014b50);
+            n = putShort(header, n, zip64 ? 45 : 20);
+            n = putShort(header, n, zip64 ? 45 : 20);
+            n = putShort(header, n, e.flags);
+            n = putShort(header, n, 8);
+            n = putInt(header, n, e.dosTime);
+            n = putInt(header, n, (int) e.crc);
+            n = putInt(header, n, (int) Math.min(e.csize, ZIP64_MAGIC));
+            n = putInt(header, n, (int) Math.min(e.size, ZIP64_MAGIC));
+            n = putShort(header, n, e.name.length);
+            n = putShort(header, n, extra);
+            n = putShort(header, n, 0);
+            n = putShort(header, n, 0);
+            n = putShort(header, n, 0);
+            n = putInt(header, n, 0);
+            n = putInt(header, n, (int) Math.min(e.offset, ZIP64_MAGIC));
+            writeOut(header, 0, n);
+            writeOut(e.name, 0, e.name.length);
+            if (zip64) {
+                n = 0;
+                n = putShort(header, n, 0x0001);
+                n = putShort(header, n, extra - 4);
+                if (e.size >= ZIP64_MAGIC)
+                    n = putLong(header, n, e.size);
+                if (e.csize >= ZIP64_MAGIC)
+                    n = putLong(header, n, e.csize);
+                if (e.offset >= ZIP64_MAGIC)
+                    n = putLong(header, n, e.offset);
+                writeOut(header, 0, n);
+            }
+        }
+        long size = written - start;
+        int n;
+        if (start >= ZIP64_MAGIC || size >= ZIP64_MAGIC || entries.size() >= ZIP64_MAGIC_COUNT) {
+            long end = written;
+            n = 0;
+            n = putInt(header, n, 0x06064b50);
+            n = putLong(header, n, 44);
+            n = putShort(header, n, 45);
+            n = putShort(header, n, 45);
+            n = putInt(header, n, 0);
+            n = putInt(header, n, 0);
+            n = putLong(header, n, entries.size());
+            n = putLong(header, n, entries.size());
+            n = putLong(header, n, size);
+            n = putLong(header, n, start);
+            writeOut(header, 0, n);
+            n = 0;
+            n = putInt(header, n, 0x07064b50);
+            n = putInt(header, n, 0);
+            n = putLong(header, n, end);
+            n = putInt(header, n, 1);
+            writeOut(header, 0, n);
+        }
+        n = 0;
+        n = putInt(header, n, 0x06054b50);
+        n = putShort(header, n, 0);
+        n = putShort(header, n, 0);
+        n = putShort(header, n, Math.min(entries.size(), ZIP64_MAGIC_COUNT));
+        n = putShort(header, n, Math.min(entries.size(), ZIP64_MAGIC_COUNT));
+        n = putInt(header, n, (int) Math.min(size, ZIP64_MAGIC));
+        n = putInt(header, n, (int) Math.min(start, ZIP64_MAGIC));
+        n = putShort(header, n, 0);
+        writeOut(header, 0, n);
+    }
+
+    private int writeOut(Block b) throws IOException {
+        writeOut(b.data, 0, b.length);
+        return b.length;
+    }
+
+    private void writeOut(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        written += len;
+    }
+
+    private static int putShort(byte[] b, int off, int v) {
+        b[off] = (byte) v;
+        b[off + 1] = (byte) (v >>> 8);
+        return off + 2;
+    }
+
+    private static int putInt(byte[] b, int off, int v) {
+        putShort(b, off, v);
+        putShort(b, off + 2, v >>> 16);
+        return off + 4;
+    }
+
+    private static int putLong(byte[] b, int off, long v) {
+        putInt(b, off, (int) v);
+        putInt(b, off + 4, (int) (v >>> 32));
+        return off + 8;
+    }
+
+    private static int toDosTime(long time) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(time);
+        int year = c.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (c.get(Calendar.MONTH) + 1) << 21 | c.get(Calendar.DAY_OF_MONTH) << 16
+                | c.get(Calendar.HOUR_OF_DAY) << 11 | c.get(Calendar.MINUTE) << 5 | c.get(Calendar.SECOND) >> 1;
+    }
+
+    private static class Entry {
+
+        private final String nameString;
+        private final byte[] name;
+        private final int flags;
+        private final int dosTime;
+        private final long offset;
+        private long crc;
+        private long size;
+        private long csize;
+
+        private Entry(String name, long time, long offset) throws IOException {
+            this.nameString = name;
+            this.name = name.getBytes("UTF-8");
+            // data descriptor, UTF-8 name
+            this.flags = this.name.length == name.length() ? 0x0008 : 0x0808;
+            this.dosTime = toDosTime(time);
+            this.offset = offset;
+        }
+
+        private String getName() {
+            return nameString;
+        }
+    }
+
+    private static class Block {
+
+        private byte[] data;
+        private int length;
+
+        private Block(int size) {
+            data = new byte[size];
+        }
+
+        private void ensureSpace() {
+            if (length == data.length) {
+                byte[] grown = new byte[data.length * 2];
+                System.arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+        }
+    }
+
+}
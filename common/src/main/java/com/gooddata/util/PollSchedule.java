@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import com.gooddata.Constants;
+import org.apache.log4j.Logger;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Adaptive schedule of the asynchronous task polling. The first polls are fast, so the short tasks finish quickly,
+ * the interval then grows exponentially up to {@link Constants#POLL_INTERVAL}. The intervals are randomized, so
+ * the concurrent pollers don't hit the server at the same time. The server can ask for a specific interval with
+ * the Retry-After response header (see {@link #retryAfter(String)}).
+ * A schedule is used by a single polling loop:
+ * <pre>
+ * PollSchedule poll = new PollSchedule();
+ * while (!finished) {
+ *     finished = checkStatus();
+ *     poll.sleep();
+ * }
+ * </pre>
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class PollSchedule {
+
+    private static Logger l = Logger.getLogger(PollSchedule.class);
+
+    /**
+     * Default interval of the first poll in milliseconds
+     */
+    public static final long DEFAULT_INITIAL_INTERVAL = 500;
+
+    /**
+     * Default growth of the interval after each poll
+     */
+    public static final double DEFAULT_MULTIPLIER = 2;
+
+    /**
+     * Default randomization of the interval (+/- 20%)
+     */
+    public static final double DEFAULT_JITTER = 0.2;
+
+    /**
+     * The longest interval requested by the Retry-After header that is honored
+     */
+    public static final long MAX_RETRY_AFTER = 300000;
+
+    // the Retry-After interval of the last response received by the current thread
+    private static final ThreadLocal<Long> retryAfter = new ThreadLocal<Long>();
+
+    private final long initialInterval;
+    private final long maxInterval;
+    private final double multiplier;
+    private final double jitter;
+    private final Random random = new Random();
+    private long interval;
+    private int polls = 0;
+
+    /**
+     * Creates the default schedule
+     */
+    public PollSchedule() {
+        this(DEFAULT_INITIAL_INTERVAL, Constants.POLL_INTERVAL, DEFAULT_MULTIPLIER, DEFAULT_JITTER);
+    }
+
+    /**
+     * Creates the schedule
+     *
+     * @param initialInterval the interval of the first poll in milliseconds
+     * @param maxInterval     the longest interval in milliseconds
+     * @param multiplier      growth of the interval after each poll
+     * @param jitter          randomization of the interval (0 disables the randomization)
+     */
+    public PollSchedule(long initialInterval, long maxInterval, double multiplier, double jitter) {
+        this.initialInterval = initialInterval;
+        this.maxInterval = Math.max(initialInterval, maxInterval);
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.interval = initialInterval;
+    }
+
+    /**
+     * Returns the interval before the next poll and advances the schedule. The Retry-After interval received
+     * by the current thread since the last poll takes precedence.
+     *
+     * @return the interval in milliseconds
+     */
+    public long nextInterval() {
+        polls++;
+        Long requested = retryAfter.get();
+        if (requested != null) {
+            retryAfter.remove();
+            l.debug("Server requested the next poll in " + requested + " ms.");
+            return requested;
+        }
+        long next = interval;
+        interval = Math.min(maxInterval, (long) (interval * multiplier));
+        if (jitter > 0)
+            next = Math.round(next * (1 - jitter + 2 * jitter * random.nextDouble()));
+        return next;
+    }
+
+    /**
+     * Waits for the next poll
+     *
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public void sleep() throws InterruptedException {
+        Thread.sleep(nextInterval());
+    }
+
+    /**
+     * Starts the schedule again with the fast polls
+     */
+    public void reset() {
+        interval = initialInterval;
+        polls = 0;
+    }
+
+    /**
+     * Number of the polls so far
+     *
+     * @return the number of the polls
+     */
+    public int getPolls() {
+        return polls;
+    }
+
+    /**
+     * Records the Retry-After header of a response received by the current thread. The next poll of the schedule
+     * that runs in this thread waits for the requested interval.
+     *
+     * @param value the header value (seconds or a HTTP date), ignored if null or invalid
+     */
+    public static void retryAfter(String value) {
+        long millis = parseRetryAfter(value);
+        if (millis >= 0)
+            retryAfter.set(Math.min(millis, MAX_RETRY_AFTER));
+    }
+
+    /**
+     * Parses the Retry-After header value
+     *
+     * @param value the header value (seconds or a HTTP date)
+     * @return the interval in milliseconds, -1 if the value is invalid
+     */
+    public static long parseRetryAfter(String value) {
+        if (value == null || value.trim().length() <= 0)
+            return -1;
+        value = value.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return (seconds >= 0) ? seconds * 1000 : -1;
+        } catch (NumberFormatException e) {
+            // HTTP date
+        }
+        try {
+            SimpleDateFormat fmt = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            return Math.max(0, fmt.parse(value).getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            l.debug("Invalid Retry-After header value '" + value + "'.");
+            return -1;
+        }
+    }
+
+}
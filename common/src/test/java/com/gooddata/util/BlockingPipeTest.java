@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class BlockingPipeTest {
+
+    @Test
+    public void testTransfer() throws Exception {
+        final BlockingPipe pipe = new BlockingPipe(2);
+        final byte[] data = new byte[BlockingPipe.CHUNK_SIZE * 10 + 17];
+        new Random(7).nextBytes(data);
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    OutputStream os = pipe.getOutputStream();
+                    os.write(data, 0, 5);
+                    os.write(data[5]);
+                    os.flush();
+                    os.write(data, 6, data.length - 6);
+                    os.close();
+                } catch (IOException e) {
+                    pipe.fail(e);
+                }
+            }
+        };
+        writer.start();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        InputStream is = pipe.getInputStream();
+        byte[] buf = new byte[1000];
+        int cnt;
+        while ((cnt = is.read(buf)) != -1) {
+            read.write(buf, 0, cnt);
+        }
+        writer.join();
+        Assert.assertNull(pipe.getFailure());
+        Assert.assertTrue(Arrays.equals(data, read.toByteArray()));
+    }
+
+    @Test
+    public void testReaderFailureStopsWriter() throws Exception {
+        final BlockingPipe pipe = new BlockingPipe(2);
+        final IOException[] error = new IOException[1];
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    // writes more than the pipe can buffer
+                    OutputStream os = pipe.getOutputStream();
+                    os.write(new byte[BlockingPipe.CHUNK_SIZE * 10]);
+                    os.close();
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            }
+        };
+        writer.start();
+        pipe.getInputStream().read();
+        pipe.fail(new IOException("upload failed"));
+        writer.join(5000);
+        Assert.assertFalse(writer.isAlive());
+        Assert.assertNotNull(error[0]);
+        Assert.assertEquals("upload failed", error[0].getCause().getMessage());
+    }
+
+    @Test
+    public void testWriterFailureStopsReader() throws Exception {
+        BlockingPipe pipe = new BlockingPipe();
+        pipe.getOutputStream().write(1);
+        pipe.getOutputStream().flush();
+        pipe.fail(new IOException("extraction failed"));
+        try {
+            pipe.getInputStream().read();
+            Assert.fail("The pipe failure hasn't been reported.");
+        } catch (IOException e) {
+            Assert.assertEquals("extraction failed", e.getCause().getMessage());
+        }
+    }
+
+}
@@ -29,6 +29,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 
 public class CSVReaderTest {
 
@@ -152,4 +153,23 @@ public class CSVReaderTest {
             Assert.assertEquals(3, line.length);
         }
     }
+
+    @Test
+    public void testReuse() throws IOException {
+        CSVReader csv = new CSVReader(new StringReader("a,\"b,c\"\nd,e\nf,g,h\n# comment\ni"));
+        csv.setCommentChar('#');
+        String[] line = new String[2];
+        Assert.assertTrue(line == csv.readNext(line));
+        Assert.assertEquals("b,c", line[1]);
+        Assert.assertTrue(line == csv.readNext(line));
+        Assert.assertEquals("e", line[1]);
+        String[] other = csv.readNext(line);
+        Assert.assertTrue(line != other);
+        Assert.assertEquals(3, other.length);
+        // the comment is skipped, the last line doesn't need the line separator
+        other = csv.readNext(line);
+        Assert.assertEquals(1, other.length);
+        Assert.assertEquals("i", other[0]);
+        Assert.assertNull(csv.readNext(line));
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+
+public class CSVWriterTest {
+
+    private static final String[][] ROWS = new String[][]{
+            {"plain", "with,separator", "with \"quotes\"", "", null},
+            {"\u00e9\u4e2d\u20ac", "pair \uD83D\uDE00", "lone \uD83D", "lone \uDE00", "\0"},
+            {"multi\nline", "back\\slash", "' single"},
+            {}
+    };
+
+    @Test
+    public void testBytesSameAsWriter() throws IOException {
+        char[][] configs = new char[][]{{',', '"', '"'}, {';', '\'', '\\'},
+                {',', CSVWriter.NO_QUOTE_CHARACTER, CSVWriter.NO_ESCAPE_CHARACTER}, {'\u00a7', '\u20ac', '"'}};
+        for (char[] c : configs) {
+            for (boolean alwaysQuoted : new boolean[]{true, false}) {
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                CSVWriter w1 = new CSVWriter(new OutputStreamWriter(expected, "utf8"), c[0], c[1], c[2]);
+                CSVWriter w2 = new CSVWriter(actual, c[0], c[1], c[2]);
+                w1.setAlwaysQuoted(alwaysQuoted);
+                w2.setAlwaysQuoted(alwaysQuoted);
+                for (String[] row : ROWS) {
+                    w1.writeNext(row);
+                    w2.writeNext(row);
+                    w1.writeNext(row, true);
+                    w2.writeNext(row, true);
+                }
+                w1.close();
+                w2.close();
+                Assert.assertTrue(new String(c) + alwaysQuoted, Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+            }
+        }
+    }
+
+    @Test
+    public void testLongField() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < CSVWriter.BUFFER_SIZE * 2) {
+            sb.append("\u4e2d,\"");
+        }
+        String[] row = new String[]{"a", sb.toString(), "b"};
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        CSVWriter w1 = new CSVWriter(new OutputStreamWriter(expected, "utf8"));
+        CSVWriter w2 = new CSVWriter(actual);
+        w1.setAlwaysQuoted(false);
+        w2.setAlwaysQuoted(false);
+        w1.writeNext(row);
+        w2.writeNext(row);
+        w1.close();
+        w2.close();
+        Assert.assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+    }
+
+    @Test
+    public void testFlushWritesImmediately() throws IOException {
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        CSVWriter w = new CSVWriter(actual);
+        w.writeNext(new String[]{"a", "b"});
+        w.flush();
+        Assert.assertEquals("\"a\",\"b\"\n", actual.toString("UTF-8"));
+        w.writeNext(new String[]{"c"});
+        w.flush();
+        Assert.assertEquals("\"a\",\"b\"\n\"c\"\n", actual.toString("UTF-8"));
+        w.close();
+    }
+}
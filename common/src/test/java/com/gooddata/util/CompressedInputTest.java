@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import junit.framework.Assert;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class CompressedInputTest {
+
+    @Test
+    public void testFormats() throws IOException {
+        byte[] data = createData();
+        Assert.assertTrue(Arrays.equals(data, read(CompressedInput.open(new ByteArrayInputStream(data)))));
+
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(gz), data);
+        Assert.assertEquals(CompressedInput.FORMAT_GZIP, CompressedInput.detectFormat(gz.toByteArray(), 4));
+        Assert.assertTrue(Arrays.equals(data, read(CompressedInput.open(new ByteArrayInputStream(gz.toByteArray())))));
+
+        ByteArrayOutputStream bz = new ByteArrayOutputStream();
+        write(new BZip2CompressorOutputStream(bz), data);
+        Assert.assertEquals(CompressedInput.FORMAT_BZIP2, CompressedInput.detectFormat(bz.toByteArray(), 4));
+        Assert.assertTrue(Arrays.equals(data, read(CompressedInput.open(new ByteArrayInputStream(bz.toByteArray())))));
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        ZipOutputStream zos = new ZipOutputStream(zip);
+        zos.putNextEntry(new ZipEntry("data.csv"));
+        write(zos, data);
+        Assert.assertEquals(CompressedInput.FORMAT_ZIP, CompressedInput.detectFormat(zip.toByteArray(), 4));
+        Assert.assertTrue(Arrays.equals(data, read(CompressedInput.open(new ByteArrayInputStream(zip.toByteArray())))));
+
+        // short inputs aren't mistaken for compressed ones
+        Assert.assertEquals(CompressedInput.FORMAT_NONE, CompressedInput.detectFormat(new byte[]{'P', 'K'}, 2));
+        Assert.assertEquals(0, read(CompressedInput.open(new ByteArrayInputStream(new byte[0]))).length);
+    }
+
+    @Test
+    public void testCorruptedInput() throws IOException {
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(gz), createData());
+        byte[] corrupted = gz.toByteArray();
+        Arrays.fill(corrupted, 100, 200, (byte) 0);
+        try {
+            read(CompressedInput.open(new ByteArrayInputStream(corrupted)));
+            Assert.fail("The corrupted input hasn't been reported.");
+        } catch (IOException e) {
+            Assert.assertNotNull(e.getCause());
+        }
+    }
+
+    @Test
+    public void testHeaderOfCompressedCsv() throws IOException {
+        // the reader stops after the header, the decompression is stopped too
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(gz), createData());
+        CSVReader cr = FileUtil.createUtf8CsvReader(CompressedInput.open(new ByteArrayInputStream(gz.toByteArray())));
+        Assert.assertTrue(Arrays.equals(new String[]{"id", "name"}, cr.readNext()));
+        cr.close();
+    }
+
+    private static byte[] createData() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write("id,name\n".getBytes("UTF-8"));
+        for (int i = 0; i < 100000; i++) {
+            bos.write((i + ",\"Name " + (i % 97) + "\"\n").getBytes("UTF-8"));
+        }
+        return bos.toByteArray();
+    }
+
+    private static void write(OutputStream os, byte[] data) throws IOException {
+        os.write(data);
+        os.close();
+    }
+
+    private static byte[] read(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int cnt;
+        while ((cnt = is.read(buf)) != -1) {
+            bos.write(buf, 0, cnt);
+        }
+        is.close();
+        return bos.toByteArray();
+    }
+
+}
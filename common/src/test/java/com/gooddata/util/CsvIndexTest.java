@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CsvIndexTest {
+
+    @Test
+    public void testRangesSameAsCsvReader() throws IOException, URISyntaxException {
+        String[] files = new String[]{"/com/gooddata/util/crazy.csv", "/com/gooddata/util/crazy.csv.win",
+                "/com/gooddata/util/escaping.csv", "/com/gooddata/util/chunk-boundary.csv",
+                "/com/gooddata/util/long.csv.win"};
+        for (final String f : files) {
+            CSVReader expected = new CSVReader(new InputStreamReader(
+                    CsvIndexTest.class.getResourceAsStream(f), "utf8"));
+            List<String> records = new ArrayList<String>();
+            String[] line;
+            while ((line = expected.readNext()) != null) {
+                records.add(Arrays.toString(line));
+            }
+            expected.close();
+
+            // every record boundary that isn't inside a quoted field starts a range
+            File file = new File(CsvIndexTest.class.getResource(f).toURI());
+            CsvIndex index = CsvIndex.build(file, (byte) ',', (byte) '"', (byte) '"', false, 1);
+            Assert.assertNotNull(f, index);
+            Assert.assertTrue(f, index.getRangeCount() > 1);
+            List<String> ranges = new ArrayList<String>();
+            for (int i = 0; i < index.getRangeCount(); i++) {
+                Assert.assertEquals(f + ":" + i, ranges.size(), index.getRecordsBefore(i));
+                CSVReader csv = new MappedCsvReader(file, index.getStart(i), index.getEnd(i), ',', '"', '"', false);
+                while ((line = csv.readNext()) != null) {
+                    ranges.add(Arrays.toString(line));
+                }
+                csv.close();
+            }
+            Assert.assertEquals(f, records, ranges);
+        }
+    }
+
+    @Test
+    public void testNoClosingQuotes() throws IOException, URISyntaxException {
+        File file = new File(CsvIndexTest.class.getResource("/com/gooddata/util/no-closing-quotes.csv").toURI());
+        Assert.assertNull(CsvIndex.build(file, (byte) ',', (byte) '"', (byte) '"', false, 1));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contention benchmark of the DateUtil formatter registry and date conversions. Prints the throughput
+ * for an increasing number of threads. Run manually, it isn't part of the unit tests:
+ * <pre>java -cp ... com.gooddata.util.DateUtilBenchmark [seconds per run] [max threads]</pre>
+ */
+public class DateUtilBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        final long duration = (args.length > 0) ? (Long.parseLong(args[0]) * 1000) : (2000);
+        int maxThreads = (args.length > 1) ? (Integer.parseInt(args[1])) : (Runtime.getRuntime().availableProcessors());
+        // warm up
+        run(1, duration);
+        double single = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double ops = run(threads, duration);
+            if (threads == 1)
+                single = ops;
+            System.out.println(threads + " threads: " + Math.round(ops) + " ops/s (" +
+                    Math.round(100 * ops / single) / 100.0 + "x)");
+        }
+    }
+
+    private static double run(int threads, final long duration) throws InterruptedException {
+        final AtomicLong total = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            final int seed = i;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        long end = System.currentTimeMillis() + duration;
+                        long cnt = 0;
+                        int day = 30000 + seed;
+                        long time = 1300000000L + seed;
+                        while (System.currentTimeMillis() < end) {
+                            for (int j = 0; j < 1000; j++) {
+                                DateUtil.getDateFormatter("yyyy-MM-dd", false);
+                                DateUtil.getDateFormatter(null, true);
+                                DateUtil.convertGoodDataDateToString(day + (j & 1023));
+                                DateUtil.convertUnixTimeToString(time + j * 37);
+                            }
+                            cnt += 1000;
+                        }
+                        total.addAndGet(cnt);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        return total.get() * 1000.0 / duration;
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import com.gooddata.Constants;
+import junit.framework.Assert;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class DateUtilTest {
+
+    private final DateTimeFormatter fmt = DateTimeFormat.forPattern(Constants.DEFAULT_DATETIME_FMT_STRING);
+
+    @Test
+    public void testUnixTimeMatchesJoda() {
+        DateTimeZone original = DateTimeZone.getDefault();
+        String[] zones = new String[]{"UTC", "Europe/Prague", "America/Los_Angeles", "Australia/Lord_Howe"};
+        try {
+            for (String id : zones) {
+                DateTimeZone zone = DateTimeZone.forID(id);
+                DateTimeZone.setDefault(zone);
+                long[] special = new long[]{0, -1, 1, -86400, -86401, 951782400, 4102444799L, -62135596800L,
+                        Integer.MAX_VALUE, Integer.MIN_VALUE,
+                        // the bounds of the years 1000 and 9999 that fall back to Joda
+                        -30610224000L, -30610224001L, 253402300799L, 253402300800L};
+                for (long s : special) {
+                    for (long d = -86400; d <= 86400; d += 3600) {
+                        assertUnixTime(s + d);
+                    }
+                }
+                // the DST transitions
+                long t = new DateTime(2000, 1, 1, 0, 0, 0, 0, zone).getMillis();
+                for (int i = 0; i < 40; i++) {
+                    long next = zone.nextTransition(t);
+                    if (next == t)
+                        break;
+                    t = next;
+                    for (long d = -2; d <= 2; d++) {
+                        assertUnixTime(t / 1000 + d);
+                    }
+                }
+                Random r = new Random(id.hashCode());
+                for (int i = 0; i < 20000; i++) {
+                    // from about the year -7500 to 11500
+                    assertUnixTime((long) ((r.nextDouble() - 0.5) * 6e11));
+                    assertUnixTime((long) (r.nextDouble() * 4e9) - 2000000000L);
+                }
+            }
+        } finally {
+            DateTimeZone.setDefault(original);
+        }
+    }
+
+    @Test
+    public void testGoodDataDateMatchesJoda() {
+        DateTime base = fmt.parseDateTime("1900-01-01 00:00:00");
+        int[] special = new int[]{1, 2, 59, 60, 61, 36524, 80000, 80001, -1, -693962, Integer.MAX_VALUE / 1000};
+        for (int v : special) {
+            assertGoodDataDate(base, v);
+        }
+        Random r = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            assertGoodDataDate(base, r.nextInt(100000) - 10000);
+        }
+        // the second pass is served from the cache
+        for (int v = 1; v <= 100000; v += 7) {
+            assertGoodDataDate(base, v);
+            assertGoodDataDate(base, v);
+        }
+        Assert.assertEquals("", DateUtil.convertGoodDataDateToString("0"));
+        Assert.assertEquals("", DateUtil.convertGoodDataDateToString("abc"));
+    }
+
+    private void assertUnixTime(long seconds) {
+        String expected = fmt.print(new DateTime(seconds * 1000));
+        Assert.assertEquals(Long.toString(seconds), expected, DateUtil.convertUnixTimeToString(Long.toString(seconds)));
+        Assert.assertEquals(Long.toString(seconds), expected, DateUtil.convertUnixTimeToString(Long.valueOf(seconds)));
+    }
+
+    private void assertGoodDataDate(DateTime base, int days) {
+        String expected = fmt.print(base.plusDays(days - 1));
+        Assert.assertEquals(Integer.toString(days), expected, DateUtil.convertGoodDataDateToString(Integer.toString(days)));
+        Assert.assertEquals(Integer.toString(days), expected, DateUtil.convertGoodDataDateToString(Integer.valueOf(days)));
+    }
+
+}
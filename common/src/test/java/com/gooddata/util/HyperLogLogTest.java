@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void testCardinality() {
+        for (int n : new int[]{0, 1, 100, 10000, 1000000}) {
+            HyperLogLog hll = new HyperLogLog();
+            for (int i = 0; i < n; i++) {
+                hll.offer("value" + i);
+                // the duplicates don't count
+                hll.offer("value" + (i / 2));
+            }
+            long estimate = hll.cardinality();
+            Assert.assertTrue(n + " estimated as " + estimate,
+                    Math.abs(estimate - n) <= Math.max(1, 3 * hll.getStandardError() * n));
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        for (int i = 0; i < 50000; i++) {
+            a.offer(Integer.toString(i));
+            b.offer(Integer.toString(i + 25000));
+        }
+        a.merge(b);
+        Assert.assertTrue(Math.abs(a.cardinality() - 75000) <= 3 * a.getStandardError() * 75000);
+        try {
+            a.merge(new HyperLogLog(10));
+            Assert.fail("Merged sketches of different precision.");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+}
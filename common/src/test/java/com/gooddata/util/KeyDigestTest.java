@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+
+public class KeyDigestTest {
+
+    @Test
+    public void testMd5Compatibility() throws Exception {
+        KeyDigest kd = new KeyDigest();
+        String[] keys = new String[]{"", "Alpha|2010-01-15|", "null|", "Příliš žluťoučký kůň|1|"};
+        for (String key : keys) {
+            byte[] md5 = MessageDigest.getInstance("MD5").digest(key.getBytes());
+            String expected = String.format("%032x", new BigInteger(1, md5));
+            Assert.assertEquals(expected, kd.hex(key));
+        }
+        // parts are appended the same way as by the string concatenation
+        Assert.assertEquals(kd.hex("Alpha|null|10|"), kd.reset().append((Object) "Alpha").append('|').append((Object) null)
+                .append('|').append((Object) 10).append('|').hex());
+    }
+
+    @Test
+    public void testMurmur3() {
+        KeyDigest kd = new KeyDigest(KeyDigest.HASH_MURMUR3);
+        Assert.assertEquals("00000000000000000000000000000000", kd.hex(""));
+        Assert.assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347", kd.hex("The quick brown fox jumps over the lazy dog"));
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Throughput benchmark of the memory mapped CSV reader and the reader based CSV reader. Generates a CSV file
+ * and prints the throughput of both readers. Run manually, it isn't part of the unit tests:
+ * <pre>java -cp ... com.gooddata.util.MappedCsvReaderBenchmark [file size in MB] [runs]</pre>
+ */
+public class MappedCsvReaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int mb = (args.length > 0) ? (Integer.parseInt(args[0])) : (200);
+        int runs = (args.length > 1) ? (Integer.parseInt(args[1])) : (3);
+        File f = File.createTempFile("benchmark", ".csv");
+        f.deleteOnExit();
+        generate(f, mb * 1024L * 1024L);
+        double mbs = f.length() / 1024.0 / 1024.0;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            long rows = read(FileUtil.createUtf8CsvReader(f, ','));
+            double reader = (System.nanoTime() - start) / 1e9;
+            start = System.nanoTime();
+            long mappedRows = read(new MappedCsvReader(f, ','));
+            double mapped = (System.nanoTime() - start) / 1e9;
+            System.out.println("run " + (i + 1) + ": " + rows + "/" + mappedRows + " rows, reader " +
+                    Math.round(mbs / reader) + " MB/s, mapped " + Math.round(mbs / mapped) + " MB/s (" +
+                    Math.round(100 * reader / mapped) / 100.0 + "x)");
+        }
+        f.delete();
+    }
+
+    private static long read(CSVReader cr) throws IOException {
+        long rows = 0;
+        String[] row = cr.readNext();
+        while (row != null) {
+            rows++;
+            row = cr.readNext(row);
+        }
+        cr.close();
+        return rows;
+    }
+
+    private static void generate(File f, long size) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), "UTF-8"));
+        long written = 0;
+        for (long i = 0; written < size; i++) {
+            String line = i + ",Account " + (i % 1000) + ",\"Smith, John \"\"Jr\"\"\"," + (i % 97) * 13.25 +
+                    ",2011-0" + (1 + i % 9) + "-1" + (i % 10) + ",Ústí nad Labem," + (i * 31 % 100000) + "\n";
+            w.write(line);
+            written += line.length();
+        }
+        w.close();
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+public class ParallelZipOutputStreamTest {
+
+    @Test
+    public void testZipInputStream() throws IOException {
+        byte[] data = createData(ParallelZipOutputStream.BLOCK_SIZE * 7 + 123);
+        int[] levels = new int[]{Deflater.DEFAULT_COMPRESSION, ParallelZipOutputStream.STORE, 1, 9};
+        for (int level : levels) {
+            for (int threads = 1; threads <= 4; threads += 3) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                ParallelZipOutputStream zos = new ParallelZipOutputStream(bos, level, threads);
+                zos.putNextEntry(new ZipEntry("data.csv"));
+                zos.write(data, 0, 10);
+                zos.write(data[10]);
+                zos.write(data, 11, data.length - 11);
+                zos.putNextEntry(new ZipEntry("upload_info.json"));
+                zos.write("{}".getBytes("UTF-8"));
+                zos.putNextEntry(new ZipEntry("empty"));
+                zos.close();
+
+                ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(bos.toByteArray()));
+                Assert.assertEquals("data.csv", zis.getNextEntry().getName());
+                Assert.assertTrue(Arrays.equals(data, read(zis)));
+                Assert.assertEquals("upload_info.json", zis.getNextEntry().getName());
+                Assert.assertEquals("{}", new String(read(zis), "UTF-8"));
+                Assert.assertEquals("empty", zis.getNextEntry().getName());
+                Assert.assertEquals(0, read(zis).length);
+                Assert.assertNull(zis.getNextEntry());
+            }
+        }
+    }
+
+    @Test
+    public void testZipFile() throws IOException {
+        byte[] data = createData(ParallelZipOutputStream.BLOCK_SIZE * 3);
+        File file = File.createTempFile("parallel-zip", ".zip");
+        try {
+            ParallelZipOutputStream zos = new ParallelZipOutputStream(new FileOutputStream(file),
+                    Deflater.DEFAULT_COMPRESSION, 3);
+            zos.putNextEntry(new ZipEntry("data.csv"));
+            zos.write(data);
+            zos.close();
+            ZipFile zf = new ZipFile(file);
+            ZipEntry e = zf.getEntry("data.csv");
+            Assert.assertEquals(data.length, e.getSize());
+            // the blocks are primed with the preceding data, the repeated lines compress well
+            Assert.assertTrue(e.getCompressedSize() < data.length / 4);
+            Assert.assertTrue(Arrays.equals(data, read(zf.getInputStream(e))));
+            zf.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static byte[] createData(int size) {
+        Random r = new Random(17);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        while (bos.size() < size) {
+            String line = "\"" + r.nextInt(1000) + "\",\"Product " + r.nextInt(50) + "\",\"2010-01-1" + r.nextInt(10)
+                    + "\"\n";
+            byte[] b = line.getBytes();
+            bos.write(b, 0, Math.min(b.length, size - bos.size()));
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] read(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int cnt;
+        while ((cnt = is.read(buf)) != -1) {
+            bos.write(buf, 0, cnt);
+        }
+        return bos.toByteArray();
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+public class PollScheduleTest {
+
+    @Test
+    public void testBackoff() {
+        PollSchedule poll = new PollSchedule(500, 10000, 2, 0);
+        long[] expected = {500, 1000, 2000, 4000, 8000, 10000, 10000};
+        for (long e : expected) {
+            Assert.assertEquals(e, poll.nextInterval());
+        }
+        Assert.assertEquals(expected.length, poll.getPolls());
+        poll.reset();
+        Assert.assertEquals(500, poll.nextInterval());
+    }
+
+    @Test
+    public void testJitter() {
+        PollSchedule poll = new PollSchedule(1000, 1000, 2, 0.2);
+        boolean varies = false;
+        long first = poll.nextInterval();
+        for (int i = 0; i < 100; i++) {
+            long interval = poll.nextInterval();
+            Assert.assertTrue(interval >= 800 && interval <= 1200);
+            varies |= (interval != first);
+        }
+        Assert.assertTrue(varies);
+    }
+
+    @Test
+    public void testRetryAfter() {
+        PollSchedule poll = new PollSchedule(500, 10000, 2, 0);
+        PollSchedule.retryAfter("3");
+        Assert.assertEquals(3000, poll.nextInterval());
+        // the requested interval applies to the next poll only and doesn't change the schedule
+        Assert.assertEquals(500, poll.nextInterval());
+        PollSchedule.retryAfter("invalid");
+        Assert.assertEquals(1000, poll.nextInterval());
+        PollSchedule.retryAfter("100000");
+        Assert.assertEquals(PollSchedule.MAX_RETRY_AFTER, poll.nextInterval());
+
+        SimpleDateFormat fmt = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        fmt.setTimeZone(TimeZone.getTimeZone("GMT"));
+        long millis = PollSchedule.parseRetryAfter(fmt.format(new Date(System.currentTimeMillis() + 60000)));
+        Assert.assertTrue(millis > 55000 && millis <= 60000);
+        Assert.assertEquals(0, PollSchedule.parseRetryAfter(fmt.format(new Date(0))));
+        Assert.assertEquals(-1, PollSchedule.parseRetryAfter(null));
+    }
+
+}
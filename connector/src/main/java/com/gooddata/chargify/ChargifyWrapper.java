@@ -88,9 +88,7 @@ public class ChargifyWrapper {
     public ChargifyWrapper(String hostName, String apiToken) {
         setDomain(hostName);
         setApiToken(apiToken);
-        client = new HttpClient();
-
-        NetUtil.configureHttpProxy(client);
+        client = NetUtil.createHttpClient();
 
         client.getHostConfiguration().setHost(getDomain());
 
@@ -136,9 +134,16 @@ public class ChargifyWrapper {
             throws IOException, ParserConfigurationException, SAXException, XPathExpressionException {
         String path = HTTPS + getDomain() + "." + CHARGIFY_ENDPOINT + "/" + entity + ".xml?page=" + page;
         GetMethod m = createGetMethod(path);
-        int rc = executeHttpMethod(m);
+        int rc;
+        String payload = null;
+        try {
+            rc = executeHttpMethod(m);
+            if (rc == HttpStatus.SC_OK)
+                payload = readRespone(m);
+        } finally {
+            m.releaseConnection();
+        }
         if (rc == HttpStatus.SC_OK) {
-            String payload = readRespone(m);
             //System.err.println(payload);
             DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
             domFactory.setNamespaceAware(true);
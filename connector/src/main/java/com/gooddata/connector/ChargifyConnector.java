@@ -90,7 +90,7 @@ public class ChargifyConnector extends AbstractConnector implements Connector {
                     fs[i] = fs[i].trim();
                 File dt = FileUtil.getTempFile();
                 m.getAllData(getEntity(), fs, dt.getAbsolutePath());
-                int rowCnt = copyAndTransform(FileUtil.createUtf8CsvReader(dt), FileUtil.createUtf8CsvWriter(new File(file)), transform, 10);
+                int rowCnt = copyAndTransform(FileUtil.createUtf8CsvReader(dt), createCsvWriter(file), transform, 10);
                 l.info("Finished Chargify query execution. Retrieved " + rowCnt + " rows of data.");
             } else {
                 throw new InvalidParameterException("The Chargify fields parameter must contain the comma separated list " +
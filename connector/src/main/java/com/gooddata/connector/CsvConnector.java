@@ -24,7 +24,9 @@
 package com.gooddata.connector;
 
 import com.gooddata.Constants;
+import com.gooddata.csv.ColumnStatistics;
 import com.gooddata.csv.DataTypeGuess;
+import com.gooddata.exception.InternalErrorException;
 import com.gooddata.exception.InvalidParameterException;
 import com.gooddata.exception.ProcessingException;
 import com.gooddata.modeling.model.SourceColumn;
@@ -32,6 +34,8 @@ import com.gooddata.modeling.model.SourceSchema;
 import com.gooddata.processor.CliParams;
 import com.gooddata.processor.Command;
 import com.gooddata.processor.ProcessingContext;
+import com.gooddata.transform.ParseErrors;
+import com.gooddata.transform.TransformStage;
 import com.gooddata.util.*;
 import org.apache.log4j.Logger;
 
@@ -39,8 +43,16 @@ import java.io.*;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * GoodData CSV Connector
@@ -52,6 +64,16 @@ public class CsvConnector extends AbstractConnector implements Connector {
 
     private static Logger l = Logger.getLogger(CsvConnector.class);
 
+    /**
+     * The CSV file is decoded by a reader (default)
+     */
+    public static final String INPUT_MODE_READER = "READER";
+
+    /**
+     * The CSV file is memory mapped and parsed on bytes
+     */
+    public static final String INPUT_MODE_MMAP = "MMAP";
+
     // data file
     private File dataFile;
 
@@ -61,6 +83,9 @@ public class CsvConnector extends AbstractConnector implements Connector {
     // field separator
     private boolean hasHeader = true;
 
+    // data file input mode (READER | MMAP)
+    private String inputMode = INPUT_MODE_READER;
+
     /**
      * Creates GoodData CSV connector
      */
@@ -82,14 +107,163 @@ public class CsvConnector extends AbstractConnector implements Connector {
      */
     @Override
     public void extract(String file, final boolean transform) throws IOException {
-        CSVReader cr = FileUtil.createUtf8CsvReader(this.getDataFile(), this.getSeparator());
-        CSVWriter cw = FileUtil.createUtf8CsvWriter(new File(file));
+        boolean compressed = CompressedInput.isCompressed(this.getDataFile());
+        if (!compressed && parallelism > 1 && this.getDataFile().length() > CsvIndex.DEFAULT_RANGE_SIZE) {
+            CsvIndex index = CsvIndex.getIndex(this.getDataFile(), this.getSeparator(), CSVReader.DEFAULT_QUOTE_CHARACTER,
+                    CSVReader.DEFAULT_ESCAPE_CHARACTER, false, CsvIndex.DEFAULT_RANGE_SIZE);
+            if (index != null && index.getRangeCount() > 1) {
+                l.debug("Extracting " + index.getRangeCount() + " ranges of the CSV file in parallel.");
+                int rowCnt = extractRanges(index, file, transform);
+                l.info("The CSV connector extracted " + rowCnt + " rows.");
+                return;
+            }
+            l.debug("The CSV file can't be split, it is extracted sequentially.");
+        }
+        CSVReader cr;
+        if (compressed) {
+            // the compressed file can't be mapped nor split, it is decompressed while it is parsed
+            l.debug("Extracting the compressed CSV file.");
+            cr = FileUtil.createUtf8CsvReader(CompressedInput.open(this.getDataFile()), this.getSeparator());
+        } else {
+            cr = INPUT_MODE_MMAP.equals(inputMode) ?
+                    new MappedCsvReader(this.getDataFile(), this.getSeparator()) :
+                    FileUtil.createUtf8CsvReader(this.getDataFile(), this.getSeparator());
+        }
+        CSVWriter cw = createCsvWriter(file);
         if (hasHeader)
             cr.readNext();
         int rowCnt = copyAndTransform(cr, cw, transform, DATE_LENGTH_UNRESTRICTED);
         l.info("The CSV connector extracted " + rowCnt + " rows.");
     }
 
+    /**
+     * Parses and transforms the ranges of the data file concurrently and writes them in the original order
+     *
+     * @param index     the record index of the data file
+     * @param file      name of the target file
+     * @param transform perform transformations
+     * @return number of extracted rows
+     * @throws IOException in case of IO issues
+     */
+    private int extractRanges(final CsvIndex index, String file, final boolean transform) throws IOException {
+        final ParseErrors errors = new ParseErrors();
+        final String prefix = "GdcCsvRange-" + schema.getName() + "-";
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private int cnt = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + (++cnt));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            CSVWriter cw = createCsvWriter(file);
+            cw.writeNext(createTransformer().getHeader(transform));
+            // bounds the number of the ranges in flight
+            Queue<Future<Range>> pending = new LinkedList<Future<Range>>();
+            int next = 0;
+            int rowCnt = 0;
+            while (next < index.getRangeCount() || !pending.isEmpty()) {
+                while (next < index.getRangeCount() && pending.size() <= parallelism) {
+                    final int range = next++;
+                    pending.add(workers.submit(new Callable<Range>() {
+                        public Range call() throws IOException {
+                            return extractRange(index, range, transform, errors);
+                        }
+                    }));
+                }
+                Range r = get(pending.poll());
+                cw.writeFormatted(r.data, 0, r.data.length);
+                rowCnt += r.rows;
+            }
+            cw.close();
+            errors.log(l);
+            parseErrors.addAll(errors);
+            return rowCnt;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses and transforms one range of the data file
+     *
+     * @param index     the record index of the data file
+     * @param range     the range number
+     * @param transform perform transformations
+     * @param errors    the parse errors aggregated over all ranges
+     * @return the formatted CSV rows of the range
+     * @throws IOException in case of IO issues
+     */
+    private Range extractRange(CsvIndex index, int range, boolean transform, ParseErrors errors) throws IOException {
+        CSVReader cr = new MappedCsvReader(this.getDataFile(), index.getStart(range), index.getEnd(range),
+                this.getSeparator(), CSVReader.DEFAULT_QUOTE_CHARACTER, CSVReader.DEFAULT_ESCAPE_CHARACTER, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CSVWriter cw = new CSVWriter(out);
+        TransformStage ts = new TransformStage(schema, expressionEngine, cw, transform, DATE_LENGTH_UNRESTRICTED, 1);
+        ts.setLogParseErrors(false);
+        try {
+            // the row numbers continue over the ranges
+            int rowNumber = (int) index.getRecordsBefore(range);
+            if (hasHeader) {
+                if (range == 0)
+                    cr.readNext();
+                else
+                    rowNumber--;
+            }
+            int first = rowNumber;
+            String[] row = cr.readNext();
+            while (row != null) {
+                rowNumber++;
+                if (row.length != 1 || row[0].length() > 0) {
+                    ts.addCopy(rowNumber, row);
+                }
+                row = cr.readNext(row);
+            }
+            ts.finish();
+            synchronized (errors) {
+                errors.addAll(ts.getParseErrors());
+            }
+            cw.close();
+            return new Range(out.toByteArray(), rowNumber - first);
+        } finally {
+            ts.abort();
+            cr.close();
+        }
+    }
+
+    private static Range get(Future<Range> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalErrorException("Interrupted while waiting for the CSV extraction.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new InternalErrorException(cause);
+        }
+    }
+
+    /**
+     * The formatted rows of an extracted range
+     */
+    private static class Range {
+        final byte[] data;
+        final int rows;
+
+        Range(byte[] data, int rows) {
+            this.data = data;
+            this.rows = rows;
+        }
+    }
+
     /**
      * Saves a template of the config file
      *
@@ -115,8 +289,36 @@ public class CsvConnector extends AbstractConnector implements Connector {
      * @throws IOException in case of an IO issue
      */
     public static void saveConfigTemplate(String configFileName, String dataFileName, String defaultLdmType, String[] factNames, String folder, char separator) throws IOException {
-        SourceSchema s = guessSourceSchema(configFileName, dataFileName, defaultLdmType, factNames, folder, separator);
-        s.writeConfig(new File(configFileName));
+        File configFile = new File(configFileName);
+        InputStream configStream = configFile.exists() ? new FileInputStream(configFile) : null;
+        URL dataUrl = new File(dataFileName).toURI().toURL();
+        SourceSchema srcSchm = createSourceSchema(configStream, dataUrl);
+        CsvConfiguration csvConfig = new CsvConfiguration(true, separator);
+        String[] headers = FileUtil.getCsvHeader(dataUrl, csvConfig);
+        // the statistics of all rows are collected in the same pass as the types are guessed
+        DataTypeGuess guesser = new DataTypeGuess(csvConfig.hasHeader());
+        guesser.setCollectStatistics(true);
+        SourceSchema s = guessSourceSchema(dataUrl, defaultLdmType, factNames, folder, srcSchm, headers, csvConfig, guesser);
+        ColumnStatistics[] statistics = guesser.getStatistics();
+        s.writeConfig(configFile, statistics != null ? formatStatistics(headers, statistics) : null);
+    }
+
+    /**
+     * Formats the column statistics to the config file comment
+     *
+     * @param headers    the CSV header
+     * @param statistics the column statistics
+     * @return the statistics description
+     */
+    static String formatStatistics(String[] headers, ColumnStatistics[] statistics) {
+        StringBuffer b = new StringBuffer("Statistics of the CSV columns (the distinct counts are estimated):");
+        for (int i = 0; i < statistics.length && i < headers.length; i++) {
+            b.append("\n    ").append(headers[i]).append(": ").append(statistics[i]);
+            if (statistics[i].isUnique()) {
+                b.append(", unique (connection point candidate)");
+            }
+        }
+        return b.toString();
     }
 
     /**
@@ -158,17 +360,27 @@ public class CsvConnector extends AbstractConnector implements Connector {
     }
 
     public static SourceSchema guessSourceSchema(InputStream configStream, URL dataUrl, String defaultLdmType, String[] factsNames, String folder, char separator) throws IOException {
-        String name = URLDecoder.decode(FileUtil.getFileName(dataUrl).split("\\.")[0], "utf-8").trim();
-        final SourceSchema srcSchm;
+        SourceSchema srcSchm = createSourceSchema(configStream, dataUrl);
+        return guessSourceSchema(dataUrl, defaultLdmType, factsNames, folder, srcSchm, new CsvConfiguration(true, separator));
+    }
+
+    /**
+     * Reads the partial config or creates an empty schema named by the data file
+     *
+     * @param configStream the partial config, null if there is none
+     * @param dataUrl      the data URL
+     * @return the source schema
+     * @throws IOException in case of IO issues
+     */
+    private static SourceSchema createSourceSchema(InputStream configStream, URL dataUrl) throws IOException {
         if (configStream != null) {
-            srcSchm = SourceSchema.createSchema(configStream);
-        } else {
-            int idmax = Constants.MAX_SCHEMA_NAME_LENGTH - 3;
-            if (name.length() > idmax)
-                name = name.substring(0, idmax);
-            srcSchm = SourceSchema.createSchema(name);
+            return SourceSchema.createSchema(configStream);
         }
-        return guessSourceSchema(dataUrl, defaultLdmType, factsNames, folder, srcSchm, new CsvConfiguration(true, separator));
+        String name = URLDecoder.decode(FileUtil.getFileName(dataUrl).split("\\.")[0], "utf-8").trim();
+        int idmax = Constants.MAX_SCHEMA_NAME_LENGTH - 3;
+        if (name.length() > idmax)
+            name = name.substring(0, idmax);
+        return SourceSchema.createSchema(name);
     }
 
     public static SourceSchema guessSourceSchema(URL dataUrl, String defaultLdmType, String[] factsNames, String folder, final SourceSchema srcSchm, CsvConfiguration csvConfig) throws IOException {
@@ -176,6 +388,17 @@ public class CsvConnector extends AbstractConnector implements Connector {
     }
 
     public static SourceSchema guessSourceSchema(URL dataUrl, String defaultLdmType, String[] factsNames, String folder, final SourceSchema srcSchm, String[] headers, CsvConfiguration csvConfig) throws IOException {
+        return guessSourceSchema(dataUrl, defaultLdmType, factsNames, folder, srcSchm, headers, csvConfig,
+                new DataTypeGuess(csvConfig.hasHeader()));
+    }
+
+    /**
+     * Guesses the types of the columns that are missing in the source schema. When the guesser collects the
+     * column statistics and the schema has no connection point, the first attribute column whose values are
+     * all distinct (counted exactly, see {@link ColumnStatistics#isExactlyUnique()}) is proposed as the connection
+     * point. The other unique columns are only reported in the config comment.
+     */
+    private static SourceSchema guessSourceSchema(URL dataUrl, String defaultLdmType, String[] factsNames, String folder, final SourceSchema srcSchm, String[] headers, CsvConfiguration csvConfig, DataTypeGuess guesser) throws IOException {
         if (headers == null) {
             throw new IllegalArgumentException("No headers found. Is the input a CSV file?");
         }
@@ -199,12 +422,22 @@ public class CsvConnector extends AbstractConnector implements Connector {
             }
         }, srcColumnNames);
         if (knownColumns < headers.length) {
-            DataTypeGuess guesser = new DataTypeGuess(csvConfig.hasHeader());
             guesser.setDefaultLdmType(defaultLdmType);
             SourceColumn[] guessed = guessCsvSchema(dataUrl, headers, guesser, csvConfig);
             if (guessed.length != headers.length) {
                 throw new AssertionError("The size of data file header is different than the number of guessed fields");
             }
+            ColumnStatistics[] statistics = guesser.getStatistics();
+            if (statistics != null && defaultLdmType == null && srcSchm.getConnectionPoints().isEmpty()) {
+                for (int j = knownColumns; j < headers.length && j < statistics.length; j++) {
+                    boolean attribute = SourceColumn.LDM_TYPE_ATTRIBUTE.equals(guessed[j].getLdmType());
+                    if (attribute && !factsSet.contains(headers[j]) && statistics[j].isExactlyUnique()) {
+                        l.info("Proposing the column " + headers[j] + " with unique values as the connection point.");
+                        guessed[j] = new SourceColumn(null, SourceColumn.LDM_TYPE_CONNECTION_POINT, null);
+                        break;
+                    }
+                }
+            }
             for (int j = knownColumns; j < headers.length; j++) {
                 final String header = headers[j];
                 final SourceColumn sc;
@@ -233,9 +466,16 @@ public class CsvConnector extends AbstractConnector implements Connector {
     }
 
     private static SourceColumn[] guessCsvSchema(URL dataUrl, String[] headers, DataTypeGuess guesser, CsvConfiguration csvConfig) throws IOException {
+        if ("file".equals(dataUrl.getProtocol())) {
+            // the local files are sampled in parallel
+            File dataFile = new File(URLDecoder.decode(dataUrl.getPath(), "utf-8"));
+            if (dataFile.isFile()) {
+                return guesser.guessCsvSchema(dataFile, csvConfig, headers.length);
+            }
+        }
         BufferedReader reader = null;
         try {
-            reader = FileUtil.createBufferedUtf8Reader(dataUrl);
+            reader = FileUtil.createBufferedUtf8Reader(CompressedInput.open(dataUrl.openStream()));
             return guesser.guessCsvSchema(new CSVReader(reader, csvConfig), headers.length);
         } finally {
             if (reader != null) {
@@ -306,6 +546,8 @@ public class CsvConnector extends AbstractConnector implements Connector {
         if (hasHeaderStr != null) {
             setHasHeader("true".equalsIgnoreCase(hasHeaderStr));
         }
+        setExpressionEngine(c.getParam("expressionEngine"));
+        setInputMode(c.getParam("inputMode"));
         c.paramsProcessed();
 
         initSchema(conf.getAbsolutePath());
@@ -369,6 +611,26 @@ public class CsvConnector extends AbstractConnector implements Connector {
         this.separator = separator;
     }
 
+    public String getInputMode() {
+        return inputMode;
+    }
+
+    /**
+     * Sets the data file input mode
+     *
+     * @param inputMode READER | MMAP, null for the default READER
+     */
+    public void setInputMode(String inputMode) {
+        if (inputMode == null || inputMode.length() <= 0 || INPUT_MODE_READER.equalsIgnoreCase(inputMode)) {
+            this.inputMode = INPUT_MODE_READER;
+        } else if (INPUT_MODE_MMAP.equalsIgnoreCase(inputMode)) {
+            this.inputMode = INPUT_MODE_MMAP;
+        } else {
+            throw new InvalidParameterException("Unknown CSV input mode '" + inputMode + "'. Use " +
+                    INPUT_MODE_READER + " or " + INPUT_MODE_MMAP + ".");
+        }
+    }
+
     public boolean isHasHeader() {
         return hasHeader;
     }
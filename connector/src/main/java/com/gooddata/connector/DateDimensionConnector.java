@@ -96,7 +96,21 @@ public class DateDimensionConnector extends AbstractConnector implements Connect
      */
     public void extractAndTransfer(Command c, String pid, Connector cc, boolean waitForFinish, CliParams p, ProcessingContext ctx)
             throws IOException, InterruptedException {
-        if (includeTime) {
+        boolean batch = "true".equalsIgnoreCase(c.getParam("batch"));
+        boolean verify = "true".equalsIgnoreCase(c.getParam("verify"));
+        if (includeTime && batch) {
+            l.debug("Extracting data.");
+            File tmpDir = FileUtil.createTempDir();
+            // the data are loaded later together with the other datasets of the batch (see TransferBatch)
+            this.extract(tmpDir.getAbsolutePath());
+            this.deploy(tmpDir.getAbsolutePath());
+            String manifest = FileUtil.readStringFromFile(tmpDir.getAbsolutePath() +
+                    System.getProperty("file.separator") + GdcRESTApiWrapper.DLI_MANIFEST_FILENAME);
+            String dataset = "dataset.time." + StringUtil.toIdentifier(name);
+            ctx.getDataPackageBatch().add(dataset, manifest, new File(tmpDir, DATA_FILE_NAME));
+            l.info("Dataset " + dataset + " added to the batch load.");
+            FileUtil.recursiveDelete(tmpDir);
+        } else if (includeTime) {
             l.debug("Extracting data.");
             File tmpDir = FileUtil.createTempDir();
             File tmpZipDir = FileUtil.createTempDir();
@@ -110,7 +124,7 @@ public class DateDimensionConnector extends AbstractConnector implements Connect
 
             this.deploy(tmpDir.getAbsolutePath(), archivePath);
             // transfer the data package to the GoodData server
-            ctx.getFtpApi(p).transferDir(archivePath);
+            ctx.getFtpApi(p).transferDir(archivePath, verify);
             // kick the GooDData server to load the data package to the project
             String taskUri = ctx.getRestApi(p).startLoading(pid, archiveName);
             if (waitForFinish) {
@@ -158,7 +172,7 @@ public class DateDimensionConnector extends AbstractConnector implements Connect
      */
     public void deploy(String dir, String archiveName) throws IOException {
         deploy(dir);
-        FileUtil.compressDir(dir, archiveName);
+        FileUtil.compressDir(dir, archiveName, compressionLevel, compressionThreads);
         l.debug("Time dimension temp dir compressed: " + name);
     }
 
@@ -169,8 +169,8 @@ public class FacebookConnector extends AbstractConnector implements Connector {
         File dataFile = new File(file);
 
         l.debug("Extracting Facebook data to file=" + dataFile.getAbsolutePath());
-        CSVWriter cw = FileUtil.createUtf8CsvEscapingWriter(dataFile);
-        Transformer t = Transformer.create(schema);
+        CSVWriter cw = createCsvWriter(file);
+        Transformer t = createTransformer();
         String[] header = t.getHeader(true);
         cw.writeNext(header);
 
@@ -191,7 +191,6 @@ public class FacebookConnector extends AbstractConnector implements Connector {
                 if (transform)
                     row = t.transformRow(row, DATE_LENGTH_UNRESTRICTED);
                 cw.writeNext(row);
-                cw.flush();
             }
         } else {
             l.debug("The Facebook query hasn't returned any row.");
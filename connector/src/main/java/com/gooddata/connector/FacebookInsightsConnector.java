@@ -75,10 +75,7 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
 
 
     protected FacebookInsightsConnector() {
-        client = new HttpClient();
-
-        NetUtil.configureHttpProxy(client);
-
+        client = NetUtil.createHttpClient();
     }
 
     /**
@@ -129,8 +126,8 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
     }
 
     private String fetchData(String uri) {
+        GetMethod method = new GetMethod(uri);
         try {
-            GetMethod method = new GetMethod(uri);
             client.executeMethod(method);
             if (method.getStatusCode() == HttpStatus.SC_OK) {
                 return method.getResponseBodyAsString();
@@ -145,6 +142,8 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
         } catch (IOException e) {
             l.debug("Error invoking GoodData REST API.", e);
             throw new HttpMethodException("Error invoking Facebook REST API.", e);
+        } finally {
+            method.releaseConnection();
         }
     }
 
@@ -308,8 +307,8 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
     public void extract(String file, final boolean transform) throws IOException {
         File dataFile = new File(file);
         l.debug("Extracting Facebook data to file=" + dataFile.getAbsolutePath());
-        CSVWriter cw = FileUtil.createUtf8CsvEscapingWriter(dataFile);
-        Transformer t = Transformer.create(schema);
+        CSVWriter cw = createCsvWriter(file);
+        Transformer t = createTransformer();
         String[] header = t.getHeader(transform);
         cw.writeNext(header);
 
@@ -330,8 +329,8 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
                 if (transform)
                     row = t.transformRow(row, DATE_LENGTH_UNRESTRICTED);
                 cw.writeNext(row);
-                cw.flush();
             }
+            cw.flush();
             result.clear();
             url = fetchInsightsRecords(url, result);
         }
@@ -167,8 +167,8 @@ public class GaConnector extends AbstractConnector implements Connector {
             gaq.setMaxResults(GOOGLE_ANALYTICS_CHUNK);
             int cnt = 1;
 
-            CSVWriter cw = FileUtil.createUtf8CsvWriter(dataFile);
-            Transformer t = Transformer.create(schema);
+            CSVWriter cw = createCsvWriter(file);
+            Transformer t = createTransformer();
 
             String[] header = t.getHeader(transform);
             cw.writeNext(header);
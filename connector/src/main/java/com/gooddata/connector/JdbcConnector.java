@@ -32,7 +32,7 @@ import com.gooddata.modeling.model.SourceSchema;
 import com.gooddata.processor.CliParams;
 import com.gooddata.processor.Command;
 import com.gooddata.processor.ProcessingContext;
-import com.gooddata.transform.Transformer;
+import com.gooddata.transform.TransformStage;
 import com.gooddata.util.CSVWriter;
 import com.gooddata.util.FileUtil;
 import com.gooddata.util.JdbcUtil;
@@ -218,9 +218,9 @@ public class JdbcConnector extends AbstractConnector implements Connector {
             final DateTimeFormatter dtf = DateTimeFormat.forPattern(Constants.DEFAULT_DATETIME_FMT_STRING);
             final List<SourceColumn> columns = schema.getColumns();
             l.debug("Extracting JDBC data to file=" + dataFile.getAbsolutePath());
-            final CSVWriter cw = FileUtil.createUtf8CsvEscapingWriter(dataFile);
-            final Transformer t = Transformer.create(schema);
-            String[] header = t.getHeader(true);
+            final CSVWriter cw = createCsvWriter(file);
+            final TransformStage ts = createTransformStage(cw, transform, DATE_LENGTH_UNRESTRICTED);
+            String[] header = ts.getHeader(true);
             cw.writeNext(header);
 
             class ResultSetCsvWriter implements ResultSetHandler {
@@ -251,24 +251,19 @@ public class JdbcConnector extends AbstractConnector implements Connector {
                             }
                         }
                     }
-                    String[] nrow = null;
-                    if (transform) {
-                        nrow = t.transformRow(row, DATE_LENGTH_UNRESTRICTED);
-                    } else {
-                        nrow = new String[row.length];
-                        for (int i = 0; i < row.length; i++) {
-                            nrow[i] = row[i].toString();
-                        }
-                    }
-                    cw.writeNext(nrow);
-                    cw.flush();
                     rowCnt++;
+                    ts.add(rowCnt, row);
                 }
             }
 
             ResultSetCsvWriter rw = new ResultSetCsvWriter(cw);
 
-            JdbcUtil.executeQuery(con, getSqlQuery(), rw, fetchSize);
+            try {
+                JdbcUtil.executeQuery(con, getSqlQuery(), rw, fetchSize);
+                ts.finish();
+            } finally {
+                ts.abort();
+            }
             l.debug("Finished retrieving JDBC data. Retrieved " + rw.rowCnt + " rows.");
             cw.close();
         } catch (SQLException e) {
@@ -448,6 +443,7 @@ public class JdbcConnector extends AbstractConnector implements Connector {
         String q = c.getParam("query");
         String qf = c.getParam("queryFile");
         String fs = c.getParam("fetchSize");
+        String ee = c.getParam("expressionEngine");
         c.paramsProcessed();
 
         if (q != null && qf != null) {
@@ -473,6 +469,7 @@ public class JdbcConnector extends AbstractConnector implements Connector {
         setJdbcPassword(psw);
         setJdbcUrl(url);
         setSqlQuery(q);
+        setExpressionEngine(ee);
         if (fs != null) {
         	try {
         		final int fetchSize = Integer.parseInt(fs);
@@ -111,7 +111,7 @@ public class MsDynamicsConnector extends AbstractConnector implements Connector
                     fs[i] = fs[i].trim();
                 File dt = FileUtil.getTempFile();
                 m.retrieveMultiple(getEntity(), fs, dt.getAbsolutePath());
-                int rowCnt = copyAndTransform(FileUtil.createUtf8CsvReader(dt), FileUtil.createUtf8CsvWriter(new File(file)), transform, 10);
+                int rowCnt = copyAndTransform(FileUtil.createUtf8CsvReader(dt), createCsvWriter(file), transform, 10);
                 l.info("Finished MS CRM query execution. Retrieved " + rowCnt + " rows of data.");
             } else {
                 throw new InvalidParameterException("The MS CRM fields parameter must contain the comma separated list " +
@@ -33,7 +33,7 @@ import com.gooddata.pivotal.PivotalApi;
 import com.gooddata.processor.CliParams;
 import com.gooddata.processor.Command;
 import com.gooddata.processor.ProcessingContext;
-import com.gooddata.transform.Transformer;
+import com.gooddata.transform.TransformStage;
 import com.gooddata.util.CSVReader;
 import com.gooddata.util.CSVWriter;
 import com.gooddata.util.FileUtil;
@@ -120,21 +120,24 @@ public class PtConnector extends AbstractConnector implements Connector {
         CSVReader cr = FileUtil.createUtf8CsvReader(new File(inputFile));
         // skip header
         cr.readNext();
-        Transformer t = Transformer.create(schema);
-        String[] header = t.getHeader(true);
-        cw.writeNext(header);
-        String[] row = cr.readNext();
+        TransformStage ts = createTransformStage(schema, cw, true, 10);
         int rowCnt = 0;
-        while (row != null) {
-            rowCnt++;
-            if (row.length == 1 && row[0].length() == 0) {
+        try {
+            String[] header = ts.getHeader(true);
+            cw.writeNext(header);
+            String[] row = cr.readNext();
+            while (row != null) {
+                rowCnt++;
+                if (row.length == 1 && row[0].length() == 0) {
+                    row = cr.readNext();
+                    continue;
+                }
+                ts.add(rowCnt, row);
                 row = cr.readNext();
-                continue;
             }
-            row = t.transformRow(row, 10);
-            cw.writeNext(row);
-            cw.flush();
-            row = cr.readNext();
+            ts.finish();
+        } finally {
+            ts.abort();
         }
         cw.close();
         cr.close();
@@ -142,8 +145,8 @@ public class PtConnector extends AbstractConnector implements Connector {
     }
 
 
-    private void transfer(SourceSchema schema, String inputFile, Command c, String pid,
-                          boolean waitForFinish, CliParams p, ProcessingContext ctx) throws IOException, InterruptedException {
+    private void transfer(SourceSchema schema, String inputFile, boolean incremental, boolean batch, boolean verify,
+                          String pid, boolean waitForFinish, CliParams p, ProcessingContext ctx) throws IOException, InterruptedException {
         File tmpDir = FileUtil.createTempDir();
         File tmpZipDir = FileUtil.createTempDir();
         String archiveName = tmpDir.getName();
@@ -158,24 +161,27 @@ public class PtConnector extends AbstractConnector implements Connector {
         List<Column> columns = populateColumnsFromSchema(schema);
         if (sliColumns.size() > columns.size())
             throw new InvalidParameterException("The GoodData data loading interface (SLI) expects more columns.");
-        String incremental = c.getParam("incremental");
-        c.paramsProcessed();
-
-        if (incremental != null && incremental.length() > 0 &&
-                incremental.equalsIgnoreCase("true")) {
+        if (incremental) {
             l.debug("Using incremental mode.");
             setIncremental(columns);
         }
 
         // extract the data to the CSV that is going to be transferred to the server
         extract(schema, inputFile, tmpDir.getAbsolutePath());
-        this.deploy(sli, columns, tmpDir.getAbsolutePath(), archivePath);
-        // transfer the data package to the GoodData server
-        ctx.getFtpApi(p).transferDir(archivePath);
-        // kick the GooDData server to load the data package to the project
-        String taskUri = ctx.getRestApi(p).startLoading(pid, archiveName);
-        if (waitForFinish) {
-            checkLoadingStatus(taskUri, tmpDir.getName(), p, ctx);
+        if (batch) {
+            // the data are loaded later together with the other datasets of the batch (see TransferBatch)
+            ctx.getDataPackageBatch().add("dataset." + ssn, sli.getSLIManifest(columns),
+                    new File(tmpDir, DATA_FILE_NAME));
+            l.info("Dataset dataset." + ssn + " added to the batch load.");
+        } else {
+            this.deploy(sli, columns, tmpDir.getAbsolutePath(), archivePath);
+            // transfer the data package to the GoodData server
+            ctx.getFtpApi(p).transferDir(archivePath, verify);
+            // kick the GooDData server to load the data package to the project
+            String taskUri = ctx.getRestApi(p).startLoading(pid, archiveName);
+            if (waitForFinish) {
+                checkLoadingStatus(taskUri, tmpDir.getName(), p, ctx);
+            }
         }
         //cleanup
         l.debug("Cleaning the temporary files.");
@@ -191,6 +197,11 @@ public class PtConnector extends AbstractConnector implements Connector {
     public void extractAndTransfer(Command c, String pid, Connector cc, boolean waitForFinish, CliParams p, ProcessingContext ctx)
             throws IOException, InterruptedException {
         l.debug("Extracting data.");
+        // the parameters apply to all three datasets
+        boolean incremental = "true".equalsIgnoreCase(c.getParam("incremental"));
+        boolean batch = "true".equalsIgnoreCase(c.getParam("batch"));
+        boolean verify = "true".equalsIgnoreCase(c.getParam("verify"));
+        c.paramsProcessed();
 
         File mainDir = FileUtil.createTempDir();
 
@@ -203,9 +214,9 @@ public class PtConnector extends AbstractConnector implements Connector {
         String ltsp = mainDir.getAbsolutePath() + System.getProperty("file.separator") + "labelsToStories.csv";
         papi.parse(ptf.getAbsolutePath(), sp, lp, ltsp, new DateTime(), 3);
 
-        transfer(getStorySchema(), sp, c, pid, waitForFinish, p, ctx);
-        transfer(getLabelSchema(), lp, c, pid, waitForFinish, p, ctx);
-        transfer(getLabelToStorySchema(), ltsp, c, pid, waitForFinish, p, ctx);
+        transfer(getStorySchema(), sp, incremental, batch, verify, pid, waitForFinish, p, ctx);
+        transfer(getLabelSchema(), lp, incremental, batch, verify, pid, waitForFinish, p, ctx);
+        transfer(getLabelToStorySchema(), ltsp, incremental, batch, verify, pid, waitForFinish, p, ctx);
 
         //cleanup
         l.debug("Cleaning the temporary files.");
@@ -30,7 +30,7 @@ import com.gooddata.modeling.model.SourceSchema;
 import com.gooddata.processor.CliParams;
 import com.gooddata.processor.Command;
 import com.gooddata.processor.ProcessingContext;
-import com.gooddata.transform.Transformer;
+import com.gooddata.transform.TransformStage;
 import com.gooddata.util.CSVWriter;
 import com.gooddata.util.FileUtil;
 import com.gooddata.util.StringUtil;
@@ -227,9 +227,9 @@ public class SfdcConnector extends AbstractConnector implements Connector {
     public void extract(String file, boolean transform) throws IOException {
         File dataFile = new File(file);
         l.debug("Extracting SFDC data to file=" + dataFile.getAbsolutePath());
-        CSVWriter cw = FileUtil.createUtf8CsvEscapingWriter(dataFile);
-        Transformer t = Transformer.create(schema);
-        String[] header = t.getHeader(transform);
+        CSVWriter cw = createCsvWriter(file);
+        TransformStage ts = createTransformStage(cw, transform, DATE_LENGTH_UNRESTRICTED);
+        String[] header = ts.getHeader(transform);
         cw.writeNext(header);
         SoapBindingStub c = connect(getSfdcHostname(), getSfdcUsername(), getSfdcPassword(), getSfdcToken(), getClientID());
         l.debug("Executing SFDC query " + sfdcQuery);
@@ -268,18 +268,8 @@ public class SfdcConnector extends AbstractConnector implements Connector {
                                 row[i] = cols[i].getValue();
                             }
                         }
-                        String[] nrow = null;
-                        if (transform) {
-                            nrow = t.transformRow(row, DATE_LENGTH_UNRESTRICTED);
-                        } else {
-                            nrow = new String[row.length];
-                            for (int i = 0; i < row.length; i++) {
-                                nrow[i] = row[i].toString();
-                            }
-                        }
-                        cw.writeNext(nrow);
-                        cw.flush();
                         rowCnt++;
+                        ts.add(rowCnt, row);
                     }
                     isdone = qr.isDone();
                     if (!isdone) {
@@ -288,6 +278,7 @@ public class SfdcConnector extends AbstractConnector implements Connector {
                     }
                 }
             } while (!isdone);
+            ts.finish();
             l.debug("Retrieved " + rowCnt + " rows of SFDC data.");
             cw.close();
 
@@ -306,6 +297,8 @@ public class SfdcConnector extends AbstractConnector implements Connector {
         } catch (RemoteException e) {
             l.debug("Executing SFDC query failed", e);
             throw new SfdcException("Failed to execute SFDC query.", e);
+        } finally {
+            ts.abort();
         }
         l.debug("Finihed SFDC query execution.");
 
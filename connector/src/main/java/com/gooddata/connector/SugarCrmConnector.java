@@ -102,7 +102,7 @@ public class SugarCrmConnector extends AbstractConnector implements Connector {
                 }
                 File dt = FileUtil.getTempFile();
                 m.getAllEntries(getEntity(), cfs.toArray(new String[]{}), lfs.toArray(new String[]{}), "", dt.getAbsolutePath());
-                int rowCnt = copyAndTransform(FileUtil.createUtf8CsvReader(dt), FileUtil.createUtf8CsvWriter(new File(file)), transform, 10);
+                int rowCnt = copyAndTransform(FileUtil.createUtf8CsvReader(dt), createCsvWriter(file), transform, 10);
                 l.info("Finished SugarCrm query execution. Retrieved " + rowCnt + " rows of data.");
             } else {
                 throw new InvalidParameterException("The SugarCrm fields parameter must contain the comma separated list " +
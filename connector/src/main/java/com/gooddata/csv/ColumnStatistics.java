@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.csv;
+
+import com.gooddata.util.HyperLogLog;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Streaming statistics of a CSV column: the number of the values, the empty values, the distinct count estimate
+ * (see {@link HyperLogLog}), the value length range and the minimal and maximal value. The min and max are
+ * compared numerically when all the values are decimal. The distinct values are also counted exactly up to
+ * {@link #EXACT_LIMIT} values. The statistics of the disjoint parts of the file can be merged. The instance isn't thread safe.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ColumnStatistics {
+
+    // the unique column's distinct estimate may differ from the count by this number of standard errors
+    private static final double UNIQUE_TOLERANCE = 3;
+
+    /**
+     * Maximal number of the distinct values that are counted exactly
+     */
+    public static final int EXACT_LIMIT = 10000;
+
+    private final HyperLogLog distinct = new HyperLogLog();
+    // the distinct values, null when there are more than EXACT_LIMIT of them
+    private Set<String> exact = new HashSet<String>();
+    private long count;
+    private long empty;
+    private int minLength = Integer.MAX_VALUE;
+    private int maxLength;
+    private String min;
+    private String max;
+    private boolean numeric = true;
+    private boolean integral = true;
+    private double numericMin = Double.POSITIVE_INFINITY;
+    private double numericMax = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Adds the value
+     *
+     * @param value the column value, null for a missing value
+     */
+    public void add(String value) {
+        count++;
+        if (value == null || value.length() == 0) {
+            empty++;
+            return;
+        }
+        distinct.offer(value);
+        if (exact != null && exact.add(value) && exact.size() > EXACT_LIMIT)
+            exact = null;
+        int length = value.length();
+        if (length < minLength)
+            minLength = length;
+        if (length > maxLength)
+            maxLength = length;
+        if (min == null || value.compareTo(min) < 0)
+            min = value;
+        if (max == null || value.compareTo(max) > 0)
+            max = value;
+        if (numeric) {
+            if (DataTypeGuess.isDecimal(value)) {
+                double d = parseDecimal(value);
+                if (d < numericMin)
+                    numericMin = d;
+                if (d > numericMax)
+                    numericMax = d;
+                if (integral && d != Math.rint(d))
+                    integral = false;
+            } else {
+                numeric = false;
+                integral = false;
+            }
+        }
+    }
+
+    /**
+     * Merges the statistics of other part of the column
+     *
+     * @param other the other statistics
+     */
+    public void merge(ColumnStatistics other) {
+        distinct.merge(other.distinct);
+        if (exact != null && other.exact != null) {
+            exact.addAll(other.exact);
+            if (exact.size() > EXACT_LIMIT)
+                exact = null;
+        } else {
+            exact = null;
+        }
+        count += other.count;
+        empty += other.empty;
+        minLength = Math.min(minLength, other.minLength);
+        maxLength = Math.max(maxLength, other.maxLength);
+        if (other.min != null && (min == null || other.min.compareTo(min) < 0))
+            min = other.min;
+        if (other.max != null && (max == null || other.max.compareTo(max) > 0))
+            max = other.max;
+        numeric &= other.numeric;
+        integral &= other.integral;
+        numericMin = Math.min(numericMin, other.numericMin);
+        numericMax = Math.max(numericMax, other.numericMax);
+    }
+
+    /**
+     * Tests if all the values are non-empty and distinct within the estimate's error, i.e. if the column
+     * identifies the rows and can be a connection point. A single value isn't considered unique.
+     *
+     * @return true if the column is unique
+     */
+    public boolean isUnique() {
+        if (count < 2 || empty > 0)
+            return false;
+        long tolerance = (long) (UNIQUE_TOLERANCE * distinct.getStandardError() * count);
+        return Math.abs(getDistinctCount() - count) <= tolerance;
+    }
+
+    /**
+     * Tests if all the values are non-empty and distinct, the distinct values must have been counted exactly.
+     * Only such column is safe to be made the connection point without the user's review.
+     *
+     * @return true if the column is unique for sure
+     */
+    public boolean isExactlyUnique() {
+        return count >= 2 && empty == 0 && exact != null && exact.size() == count;
+    }
+
+    /**
+     * Tests if all the non-empty values are decimal numbers
+     *
+     * @return true if the column is numeric
+     */
+    public boolean isNumeric() {
+        return numeric && count > empty;
+    }
+
+    /**
+     * Tests if all the non-empty values are whole numbers
+     *
+     * @return true if the column is integral
+     */
+    public boolean isIntegral() {
+        return integral && count > empty;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getEmptyCount() {
+        return empty;
+    }
+
+    /**
+     * Returns the estimated number of the distinct non-empty values
+     *
+     * @return the distinct count estimate
+     */
+    public long getDistinctCount() {
+        return Math.min(distinct.cardinality(), count - empty);
+    }
+
+    public int getMinLength() {
+        return count > empty ? minLength : 0;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns the minimal value, the numeric columns are compared numerically
+     *
+     * @return the minimal value, null if the column has no values
+     */
+    public String getMin() {
+        return isNumeric() ? format(numericMin) : min;
+    }
+
+    /**
+     * Returns the maximal value, the numeric columns are compared numerically
+     *
+     * @return the maximal value, null if the column has no values
+     */
+    public String getMax() {
+        return isNumeric() ? format(numericMax) : max;
+    }
+
+    public String toString() {
+        StringBuffer b = new StringBuffer();
+        b.append(count).append(" values, ").append(empty).append(" empty, ~").append(getDistinctCount())
+                .append(" distinct");
+        if (count > empty) {
+            b.append(", length ").append(getMinLength()).append('-').append(getMaxLength())
+                    .append(", min '").append(getMin()).append("', max '").append(getMax()).append('\'');
+        }
+        return b.toString();
+    }
+
+    private static String format(double d) {
+        if (d == Math.rint(d) && Math.abs(d) < 1e15)
+            return Long.toString((long) d);
+        return Double.toString(d);
+    }
+
+    private static double parseDecimal(String value) {
+        StringBuffer b = new StringBuffer(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E')
+                b.append(c);
+        }
+        return Double.parseDouble(b.toString());
+    }
+
+}
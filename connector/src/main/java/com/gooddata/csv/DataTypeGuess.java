@@ -24,43 +24,82 @@
 package com.gooddata.csv;
 
 import com.gooddata.Constants;
+import com.gooddata.exception.InternalErrorException;
 import com.gooddata.exception.InvalidParameterException;
 import com.gooddata.modeling.model.SourceColumn;
 import com.gooddata.util.CSVReader;
+import com.gooddata.util.CompressedInput;
+import com.gooddata.util.CsvConfiguration;
+import com.gooddata.util.CsvIndex;
 import com.gooddata.util.FileUtil;
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
+import com.gooddata.util.MappedCsvReader;
+import org.apache.log4j.Logger;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
- * GoodData CSV data type guessing
+ * GoodData CSV data type guessing. The types are guessed from a uniform sample of the rows of the whole file
+ * that is collected by the reservoir sampling in a single pass. Large files are split to ranges at the record
+ * boundaries (see {@link CsvIndex}) that are sampled in parallel, the range samples are merged to a uniform
+ * sample of the file.
  *
  * @author zd <zd@gooddata.com>
  * @version 1.0
  */
 public class DataTypeGuess {
 
+    private static Logger l = Logger.getLogger(DataTypeGuess.class);
+
+    /**
+     * Default number of the sampled rows
+     */
+    public static final int SAMPLE_SIZE = 10000;
+
     private static final String[] DATE_FORMATS = {"yyyy-MM-dd", "MM/dd/yyyy", "M/d/yyyy", "MM-dd-yyyy",
             "yyyy-M-d", "M-d-yyyy"};
-    private static DateTimeFormatter[] KNOWN_FORMATS;
+    // the DATE_FORMATS structure: the separator, year first, zero padded month and day
+    private static final char[] DATE_SEPARATORS = {'-', '/', '/', '-', '-', '-'};
+    private static final boolean[] DATE_YEAR_FIRST = {true, false, false, false, true, false};
+    private static final boolean[] DATE_PADDED = {true, true, false, true, false, false};
+    private static final int[] DAYS_IN_MONTH = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    // the characters that are ignored in the numbers (the DISCARD_CHARS are single characters)
+    private static final String DISCARD_CHARS;
+
+    static {
+        StringBuffer b = new StringBuffer();
+        for (String c : Constants.DISCARD_CHARS) {
+            b.append(c);
+        }
+        DISCARD_CHARS = b.toString();
+    }
+
+    // the samples are reproducible
+    private static final long SEED = 0x5eedL;
 
     private final boolean hasHeader;
     private String defaultLdmType = null;
+    private int sampleSize = SAMPLE_SIZE;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean collectStatistics = false;
+    private ColumnStatistics[] statistics = null;
 
     public DataTypeGuess(boolean hasHeader) {
         this.hasHeader = hasHeader;
-        KNOWN_FORMATS = new DateTimeFormatter[DATE_FORMATS.length];
-        for (int i = 0; i < DATE_FORMATS.length; i++) {
-            KNOWN_FORMATS[i] = DateTimeFormat.forPattern(DATE_FORMATS[i]);
-        }
     }
 
     /**
@@ -70,56 +109,171 @@ public class DataTypeGuess {
      * @return true if the String is integer, false otherwise
      */
     public static boolean isInteger(String t) {
-        try {
-            Integer.parseInt(t);
-            return true;
-        } catch (NumberFormatException e) {
+        if (t == null)
             return false;
+        int len = t.length();
+        int i = 0;
+        boolean negative = false;
+        if (len > 0 && (t.charAt(0) == '-' || t.charAt(0) == '+')) {
+            negative = t.charAt(0) == '-';
+            i++;
         }
+        if (i == len || len - i > 10)
+            return false;
+        long v = 0;
+        for (; i < len; i++) {
+            char c = t.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+            v = v * 10 + (c - '0');
+        }
+        return negative ? -v >= Integer.MIN_VALUE : v <= Integer.MAX_VALUE;
     }
 
     /**
-     * Tests if the String is decimal
+     * Tests if the String is decimal. The {@link Constants#DISCARD_CHARS} and the leading and trailing whitespace
+     * are ignored. A decimal is an optionally signed number with an optional fraction and exponent.
      *
      * @param t the tested String
      * @return true if the String is decimal, false otherwise
      */
     public static boolean isDecimal(String t) {
-        for (String c : Constants.DISCARD_CHARS) {
-            t = t.replace(c, "");
+        if (t == null)
+            return false;
+        int len = t.length();
+        int i = skipDiscarded(t, 0);
+        while (i < len && t.charAt(i) <= ' ')
+            i = skipDiscarded(t, i + 1);
+        if (i < len && (t.charAt(i) == '+' || t.charAt(i) == '-'))
+            i = skipDiscarded(t, i + 1);
+        int digits = 0;
+        while (i < len && isDigit(t.charAt(i))) {
+            digits++;
+            i = skipDiscarded(t, i + 1);
         }
-        try {
-            /*
-            if(isInteger(t))
-                return false;
-             */
-            Double.parseDouble(t);
-            return true;
-        } catch (NumberFormatException e) {
+        if (i < len && t.charAt(i) == '.') {
+            i = skipDiscarded(t, i + 1);
+            while (i < len && isDigit(t.charAt(i))) {
+                digits++;
+                i = skipDiscarded(t, i + 1);
+            }
+        }
+        if (digits == 0)
             return false;
+        if (i < len && (t.charAt(i) == 'e' || t.charAt(i) == 'E')) {
+            i = skipDiscarded(t, i + 1);
+            if (i < len && (t.charAt(i) == '+' || t.charAt(i) == '-'))
+                i = skipDiscarded(t, i + 1);
+            int exponentDigits = 0;
+            while (i < len && isDigit(t.charAt(i))) {
+                exponentDigits++;
+                i = skipDiscarded(t, i + 1);
+            }
+            if (exponentDigits == 0)
+                return false;
+        }
+        while (i < len && t.charAt(i) <= ' ')
+            i = skipDiscarded(t, i + 1);
+        return i == len;
+    }
+
+    private static int skipDiscarded(String t, int i) {
+        int len = t.length();
+        while (i < len && DISCARD_CHARS.indexOf(t.charAt(i)) >= 0) {
+            i++;
         }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
     /**
      * Tests if the String is date
      *
      * @param t the tested String
-     * @return true if the String is date, false otherwise
+     * @return the first of the known date formats that the String matches exactly, null otherwise
      */
     public static String getDateFormat(String t) {
-        for (int i = 0; i < KNOWN_FORMATS.length; i++) {
-            DateTimeFormatter d = KNOWN_FORMATS[i];
-            try {
-                DateTime dt = d.parseDateTime(t);
-                if (t.equals(d.print(dt)))
-                    return DATE_FORMATS[i];
-            } catch (IllegalArgumentException e) {
-                // do nothing
+        if (t == null)
+            return null;
+        int len = t.length();
+        // three digit groups delimited by the same separator
+        int firstEnd = 0;
+        while (firstEnd < len && isDigit(t.charAt(firstEnd))) {
+            firstEnd++;
+        }
+        if (firstEnd == 0 || firstEnd == len)
+            return null;
+        char sep = t.charAt(firstEnd);
+        if (sep != '-' && sep != '/')
+            return null;
+        int secondEnd = firstEnd + 1;
+        while (secondEnd < len && isDigit(t.charAt(secondEnd))) {
+            secondEnd++;
+        }
+        if (secondEnd == firstEnd + 1 || secondEnd == len || t.charAt(secondEnd) != sep)
+            return null;
+        int thirdEnd = secondEnd + 1;
+        while (thirdEnd < len && isDigit(t.charAt(thirdEnd))) {
+            thirdEnd++;
+        }
+        if (thirdEnd == secondEnd + 1 || thirdEnd != len)
+            return null;
+        for (int i = 0; i < DATE_FORMATS.length; i++) {
+            if (DATE_SEPARATORS[i] != sep)
+                continue;
+            int yearStart, yearEnd, monthStart, monthEnd, dayStart, dayEnd;
+            if (DATE_YEAR_FIRST[i]) {
+                yearStart = 0;
+                yearEnd = firstEnd;
+                monthStart = firstEnd + 1;
+                monthEnd = secondEnd;
+                dayStart = secondEnd + 1;
+                dayEnd = thirdEnd;
+            } else {
+                monthStart = 0;
+                monthEnd = firstEnd;
+                dayStart = firstEnd + 1;
+                dayEnd = secondEnd;
+                yearStart = secondEnd + 1;
+                yearEnd = thirdEnd;
             }
+            // the year has four digits at least, longer years don't start with zero
+            int yearLength = yearEnd - yearStart;
+            if (yearLength < 4 || yearLength > 9 || (yearLength > 4 && t.charAt(yearStart) == '0'))
+                continue;
+            if (!isDatePart(t, monthStart, monthEnd, DATE_PADDED[i]) || !isDatePart(t, dayStart, dayEnd, DATE_PADDED[i]))
+                continue;
+            int year = parseDigits(t, yearStart, yearEnd);
+            int month = parseDigits(t, monthStart, monthEnd);
+            int day = parseDigits(t, dayStart, dayEnd);
+            if (month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1])
+                continue;
+            if (month == 2 && day == 29 && !(year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)))
+                continue;
+            return DATE_FORMATS[i];
         }
         return null;
     }
 
+    // the padded parts have two digits, the unpadded parts don't start with zero
+    private static boolean isDatePart(String t, int start, int end, boolean padded) {
+        int len = end - start;
+        if (padded)
+            return len == 2;
+        return (len == 1 || len == 2) && t.charAt(start) != '0';
+    }
+
+    private static int parseDigits(String t, int start, int end) {
+        int v = 0;
+        for (int i = start; i < end; i++) {
+            v = v * 10 + (t.charAt(i) - '0');
+        }
+        return v;
+    }
+
     /**
      * Guesses the CSV schema
      *
@@ -140,10 +294,37 @@ public class DataTypeGuess {
      * @throws IOException in case of IO issue
      */
     public SourceColumn[] guessCsvSchema(InputStream is, char separator) throws IOException {
-        CSVReader cr = FileUtil.createUtf8CsvReader(is, separator);
+        CSVReader cr = FileUtil.createUtf8CsvReader(CompressedInput.open(is), separator);
         return guessCsvSchema(cr);
     }
 
+    /**
+     * Guesses the CSV schema of a file. Large uncompressed files are sampled in parallel.
+     *
+     * @param file      the CSV file
+     * @param csvConfig the CSV format
+     * @param columns   number of the columns, used when the file has no header
+     * @return the String[] with the CSV column types
+     * @throws IOException in case of IO issue
+     */
+    public SourceColumn[] guessCsvSchema(File file, CsvConfiguration csvConfig, int columns) throws IOException {
+        if ((defaultLdmType == null || collectStatistics) && parallelism > 1 && file.length() > CsvIndex.DEFAULT_RANGE_SIZE
+                && !CompressedInput.isCompressed(file)) {
+            CsvIndex index = CsvIndex.getIndex(file, csvConfig.getSeparator(), csvConfig.getQuotechar(),
+                    csvConfig.getEscape(), csvConfig.getSkipSpaces(), CsvIndex.DEFAULT_RANGE_SIZE);
+            if (index != null && index.getRangeCount() > 1) {
+                l.debug("Sampling " + index.getRangeCount() + " ranges of the CSV file in parallel.");
+                return guessCsvSchema(file, index, csvConfig, columns);
+            }
+        }
+        CSVReader cr = new CSVReader(new InputStreamReader(CompressedInput.open(file), "utf8"), csvConfig);
+        try {
+            return guessCsvSchema(cr, columns);
+        } finally {
+            cr.close();
+        }
+    }
+
     /**
      * Guesses the CSV schema
      *
@@ -170,35 +351,152 @@ public class DataTypeGuess {
         if (columns == -1) {
             throw new UnsupportedOperationException("You have to specify number of columns if the CSV does not have a header.");
         }
+        statistics = null;
+        if (defaultLdmType != null && !collectStatistics) {
+            return guessTypes(null, 0, columns);
+        }
 
-        List<Set<String>> excludedColumnTypes = new ArrayList<Set<String>>();
-        String[] dateFormats = new String[columns];
+        String[] row = cr.readNext();
+        int width = row != null ? row.length : 0;
+        Sample sample = new Sample(sampleSize, new Random(SEED), collectStatistics ? columns : 0);
+        while (row != null) {
+            if (row.length > width)
+                throw new InvalidParameterException("The CSV file contains rows with different number of columns on row " + cr.getRow());
+            sample.offer(row);
+            row = cr.readNext(row);
+        }
+        statistics = sample.statistics;
+        return guessTypes(sample.rows, width, columns);
+    }
 
-        if (defaultLdmType == null) {
+    /**
+     * Samples the ranges of the file concurrently and guesses the types from the merged sample
+     */
+    private SourceColumn[] guessCsvSchema(final File file, final CsvIndex index, final CsvConfiguration csvConfig,
+                                          int columns) throws IOException {
+        // the number of the tracked columns is given by the first data row
+        CSVReader first = createRangeReader(file, index, 0, csvConfig);
+        if (hasHeader) {
+            columns = first.readNext().length;
+        }
+        String[] firstRow = first.readNext();
+        first.close();
+        if (columns == -1) {
+            throw new UnsupportedOperationException("You have to specify number of columns if the CSV does not have a header.");
+        }
+        final int width = firstRow != null ? firstRow.length : 0;
+        final int statisticsColumns = collectStatistics ? columns : 0;
+        statistics = null;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, index.getRangeCount()),
+                new ThreadFactory() {
+                    private int n = 0;
+
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "GdcTypeGuess-" + (++n));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        try {
+            List<Future<Sample>> futures = new ArrayList<Future<Sample>>();
+            for (int i = 0; i < index.getRangeCount(); i++) {
+                final int range = i;
+                futures.add(pool.submit(new Callable<Sample>() {
+                    public Sample call() throws IOException {
+                        return sampleRange(file, index, range, csvConfig, width, statisticsColumns);
+                    }
+                }));
+            }
+            List<Sample> samples = new ArrayList<Sample>();
+            for (Future<Sample> f : futures) {
+                samples.add(get(f));
+            }
+            statistics = Sample.mergeStatistics(samples);
+            return guessTypes(Sample.merge(samples, sampleSize, new Random(SEED)), width, columns);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Sample sampleRange(File file, CsvIndex index, int range, CsvConfiguration csvConfig, int width,
+                               int statisticsColumns) throws IOException {
+        CSVReader cr = createRangeReader(file, index, range, csvConfig);
+        try {
+            long rowNumber = index.getRecordsBefore(range);
+            if (hasHeader && range == 0) {
+                cr.readNext();
+                rowNumber++;
+            }
+            Sample sample = new Sample(sampleSize, new Random(SEED + range), statisticsColumns);
             String[] row = cr.readNext();
-            if (row != null) {
+            while (row != null) {
+                rowNumber++;
+                if (row.length > width)
+                    throw new InvalidParameterException("The CSV file contains rows with different number of columns on row " + rowNumber);
+                sample.offer(row);
+                row = cr.readNext(row);
+            }
+            return sample;
+        } finally {
+            cr.close();
+        }
+    }
+
+    private static CSVReader createRangeReader(File file, CsvIndex index, int range, CsvConfiguration csvConfig)
+            throws IOException {
+        return new MappedCsvReader(file, index.getStart(range), index.getEnd(range), csvConfig.getSeparator(),
+                csvConfig.getQuotechar(), csvConfig.getEscape(), csvConfig.getSkipSpaces());
+    }
+
+    private static Sample get(Future<Sample> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalErrorException("Interrupted while sampling the CSV file.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new InternalErrorException(cause);
+        }
+    }
+
+    /**
+     * Guesses the column types from the sampled rows. A column is a date when all its values match a known
+     * date format, a fact when they are all decimals and an attribute otherwise.
+     *
+     * @param rows    the sampled rows, null when the default LDM type is used
+     * @param width   number of the tracked columns
+     * @param columns number of the columns
+     * @return the guessed columns
+     */
+    private SourceColumn[] guessTypes(List<String[]> rows, int width, int columns) {
+        boolean[] seen = new boolean[width];
+        boolean[] notDate = new boolean[width];
+        boolean[] notFact = new boolean[width];
+        String[] dateFormats = new String[width];
+        if (rows != null) {
+            for (String[] row : rows) {
                 for (int i = 0; i < row.length; i++) {
-                    HashSet<String> allTypes = new HashSet<String>();
-                    excludedColumnTypes.add(allTypes);
-                }
-                int countdown = 1000;
-                while (row != null && countdown-- > 0) {
-                    for (int i = 0; i < row.length; i++) {
-                        if (i >= excludedColumnTypes.size())
-                            throw new InvalidParameterException("The CSV file contains rows with different number of columns on row " + cr.getRow());
-                        Set<String> types = excludedColumnTypes.get(i);
-                        String value = row[i];
+                    String value = row[i];
+                    seen[i] = true;
+                    if (!notDate[i]) {
                         String dateFormat = getDateFormat(value);
                         if (dateFormat == null) {
-                            types.add(SourceColumn.LDM_TYPE_DATE);
+                            notDate[i] = true;
                         } else {
                             dateFormats[i] = dateFormat;
                         }
-                        if (!isDecimal(value)) {
-                            types.add(SourceColumn.LDM_TYPE_FACT);
-                        }
                     }
-                    row = cr.readNext();
+                    if (!notFact[i] && !isDecimal(value)) {
+                        notFact[i] = true;
+                    }
                 }
             }
         }
@@ -208,19 +506,14 @@ public class DataTypeGuess {
             final String ldmType;
             if (defaultLdmType != null)
                 ldmType = defaultLdmType;
-            else {
-                if (i >= excludedColumnTypes.size()) {
-                    ldmType = SourceColumn.LDM_TYPE_ATTRIBUTE;
-                } else {
-                    final Set<String> excludedColumnType = excludedColumnTypes.get(i);
-                    if (!excludedColumnType.contains(SourceColumn.LDM_TYPE_DATE))
-                        ldmType = SourceColumn.LDM_TYPE_DATE;
-                    else if (!excludedColumnType.contains(SourceColumn.LDM_TYPE_FACT))
-                        ldmType = SourceColumn.LDM_TYPE_FACT;
-                    else
-                        ldmType = SourceColumn.LDM_TYPE_ATTRIBUTE;
-                }
-            }
+            else if (i >= width || !seen[i])
+                ldmType = SourceColumn.LDM_TYPE_ATTRIBUTE;
+            else if (!notDate[i])
+                ldmType = SourceColumn.LDM_TYPE_DATE;
+            else if (!notFact[i])
+                ldmType = SourceColumn.LDM_TYPE_FACT;
+            else
+                ldmType = SourceColumn.LDM_TYPE_ATTRIBUTE;
 
             ret[i] = new SourceColumn(null, ldmType, null);
             if (SourceColumn.LDM_TYPE_DATE.equals(ldmType)) {
@@ -250,5 +543,169 @@ public class DataTypeGuess {
         this.defaultLdmType = defaultLdmType;
     }
 
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Sets the number of the sampled rows
+     *
+     * @param sampleSize the sample size
+     */
+    public void setSampleSize(int sampleSize) {
+        if (sampleSize <= 0)
+            throw new InvalidParameterException("The sample size must be a positive integer.");
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Enables collecting the {@link ColumnStatistics} of all rows during the guessing. The file is read even when
+     * the default LDM type is set then.
+     *
+     * @param collectStatistics true to collect the statistics
+     */
+    public void setCollectStatistics(boolean collectStatistics) {
+        this.collectStatistics = collectStatistics;
+    }
+
+    public boolean isCollectStatistics() {
+        return collectStatistics;
+    }
+
+    /**
+     * Returns the statistics of the columns collected during the last guessing
+     *
+     * @return the column statistics, null if they weren't collected
+     */
+    public ColumnStatistics[] getStatistics() {
+        return statistics;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of the threads that sample the large files
+     *
+     * @param parallelism number of the threads
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0)
+            throw new InvalidParameterException("The parallelism must be a positive integer.");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Uniform random sample of the rows (the reservoir sampling) and optionally the statistics of all the rows
+     */
+    private static class Sample {
+
+        private final List<String[]> rows = new ArrayList<String[]>();
+        private final int size;
+        private final Random random;
+        private final ColumnStatistics[] statistics;
+        private long count;
+
+        /**
+         * Creates the sample
+         *
+         * @param size              the sample size
+         * @param random            random numbers
+         * @param statisticsColumns number of the columns with the collected statistics, 0 for no statistics
+         */
+        Sample(int size, Random random, int statisticsColumns) {
+            this.size = size;
+            this.random = random;
+            if (statisticsColumns > 0) {
+                statistics = new ColumnStatistics[statisticsColumns];
+                for (int i = 0; i < statisticsColumns; i++) {
+                    statistics[i] = new ColumnStatistics();
+                }
+            } else {
+                statistics = null;
+            }
+        }
+
+        /**
+         * Offers the row to the sample, the row is copied when it is sampled. The empty lines are skipped.
+         *
+         * @param row the row
+         */
+        void offer(String[] row) {
+            if (row.length == 1 && row[0].length() == 0)
+                return;
+            count++;
+            if (statistics != null) {
+                for (int i = 0; i < statistics.length; i++) {
+                    statistics[i].add(i < row.length ? row[i] : null);
+                }
+            }
+            if (rows.size() < size) {
+                rows.add(row.clone());
+            } else {
+                long j = (long) (random.nextDouble() * count);
+                if (j < size) {
+                    rows.set((int) j, row.clone());
+                }
+            }
+        }
+
+        /**
+         * Merges the statistics of the disjoint parts
+         *
+         * @param samples the part samples
+         * @return the merged statistics, null if the statistics weren't collected
+         */
+        static ColumnStatistics[] mergeStatistics(List<Sample> samples) {
+            ColumnStatistics[] merged = samples.get(0).statistics;
+            if (merged != null) {
+                for (int i = 1; i < samples.size(); i++) {
+                    for (int j = 0; j < merged.length; j++) {
+                        merged[j].merge(samples.get(i).statistics[j]);
+                    }
+                }
+            }
+            return merged;
+        }
+
+        /**
+         * Merges the samples of the disjoint parts to a uniform sample of the whole. Every item is taken
+         * from a part with the probability proportional to the number of the part's rows that haven't been
+         * taken yet.
+         *
+         * @param samples the part samples
+         * @param size    the merged sample size
+         * @param random  random numbers
+         * @return the merged sample
+         */
+        static List<String[]> merge(List<Sample> samples, int size, Random random) {
+            long[] left = new long[samples.size()];
+            long remaining = 0;
+            List<List<String[]>> pools = new ArrayList<List<String[]>>();
+            for (int i = 0; i < left.length; i++) {
+                Sample s = samples.get(i);
+                left[i] = s.count;
+                remaining += s.count;
+                List<String[]> pool = new ArrayList<String[]>(s.rows);
+                Collections.shuffle(pool, random);
+                pools.add(pool);
+            }
+            List<String[]> merged = new ArrayList<String[]>();
+            while (merged.size() < size && remaining > 0) {
+                long r = (long) (random.nextDouble() * remaining);
+                int i = 0;
+                while (r >= left[i]) {
+                    r -= left[i];
+                    i++;
+                }
+                List<String[]> pool = pools.get(i);
+                merged.add(pool.remove(pool.size() - 1));
+                left[i]--;
+                remaining--;
+            }
+            return merged;
+        }
+    }
 
 }
@@ -28,8 +28,8 @@ import com.gooddata.exception.InvalidParameterException;
 import com.gooddata.util.CSVReader;
 import com.gooddata.util.CSVWriter;
 import com.gooddata.util.FileUtil;
+import com.gooddata.util.KeyDigest;
 import com.gooddata.util.NetUtil;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
@@ -109,9 +109,7 @@ public class PivotalApi {
         this.setPassword(psw);
         this.setProjectId(prjId);
 
-        client = new HttpClient();
-
-        NetUtil.configureHttpProxy(client);
+        client = NetUtil.createHttpClient();
 
 
         client.getHostConfiguration().setHost(PIVOTAL_URL);
@@ -175,9 +173,13 @@ public class PivotalApi {
             GetMethod gm = new GetMethod(location);
             gm.getParams().setCookiePolicy(CookiePolicy.IGNORE_COOKIES);
             gm.setRequestHeader("Cookie", authCookie);
-            client.executeMethod(gm);
-            if (gm.getStatusCode() != HttpStatus.SC_OK && gm.getStatusCode() != HttpStatus.SC_MOVED_TEMPORARILY) {
-                throw new InvalidParameterException("Invalid PT credentials. HTTP reply code " + m.getStatusCode());
+            try {
+                client.executeMethod(gm);
+                if (gm.getStatusCode() != HttpStatus.SC_OK && gm.getStatusCode() != HttpStatus.SC_MOVED_TEMPORARILY) {
+                    throw new InvalidParameterException("Invalid PT credentials. HTTP reply code " + m.getStatusCode());
+                }
+            } finally {
+                gm.releaseConnection();
             }
         } finally {
             m.releaseConnection();
@@ -420,6 +422,7 @@ public class PivotalApi {
             writeRecord(labelsToStoriesWriter, labelsToStoriesRecord);
 
             Map<String, String> labels = new HashMap<String, String>();
+            KeyDigest key = new KeyDigest();
             row = cr.readNext();
             while (row != null && row.length > 1) {
                 storiesRecord.clear();
@@ -427,11 +430,11 @@ public class PivotalApi {
                 labelsToStoriesRecord.clear();
                 String storyId = "";
                 String label = "";
-                String key = today + "|";
+                key.reset().append(today).append('|');
                 for (int i = 0; i < headers.size(); i++) {
                     String header = headers.get(i);
                     if (RECORD_STORIES.contains(header)) {
-                        key += row[i] + "|";
+                        key.append(row[i]).append('|');
                         storiesRecord.add(convertDate(header, row[i]));
                         if (header.equalsIgnoreCase("Id")) {
                             String id = row[i];
@@ -456,7 +459,7 @@ public class PivotalApi {
                         label = row[i];
                     }
                 }
-                storyId = DigestUtils.md5Hex(key);
+                storyId = key.hex();
                 storiesRecord.add(0, today);
                 storiesRecord.add(0, storyId);
                 String[] lbls = label.split(",");
@@ -467,17 +470,17 @@ public class PivotalApi {
                             String lblId = labels.get(lbl);
                             labelsToStoriesRecord.add(storyId);
                             labelsToStoriesRecord.add(lblId);
-                            labelsToStoriesRecord.add(0, DigestUtils.md5Hex(storyId + "|" + lblId));
+                            labelsToStoriesRecord.add(0, key.reset().append(storyId).append('|').append(lblId).hex());
                             writeRecord(labelsToStoriesWriter, labelsToStoriesRecord);
                         } else {
-                            String id = DigestUtils.md5Hex(lbl);
+                            String id = key.hex(lbl);
                             labels.put(lbl, id);
                             labelsRecord.add(lbl);
                             labelsRecord.add(0, id);
                             labelsToStoriesRecord.add(storyId);
                             labelsToStoriesRecord.add(id);
                             writeRecord(labelsWriter, labelsRecord);
-                            labelsToStoriesRecord.add(0, DigestUtils.md5Hex(storyId + "|" + id));
+                            labelsToStoriesRecord.add(0, key.reset().append(storyId).append('|').append(id).hex());
                             writeRecord(labelsToStoriesWriter, labelsToStoriesRecord);
                         }
                     }
@@ -23,13 +23,22 @@
 
 package com.gooddata.connector;
 
+import com.gooddata.integration.rest.GdcRESTApiWrapper;
 import com.gooddata.modeling.model.SourceColumn;
 import com.gooddata.modeling.model.SourceSchema;
+import com.gooddata.util.CSVReader;
+import com.gooddata.util.FileUtil;
 import junit.framework.TestCase;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 
 public class CsvConnectorTest extends TestCase {
@@ -77,4 +86,86 @@ public class CsvConnectorTest extends TestCase {
             // }
         }
     }
+
+    public void testSaveConfigTemplateConnectionPoint() throws IOException, URISyntaxException {
+        File csv = new File(getClass().getResource("/com/gooddata/csv/employee.csv").toURI());
+        File config = File.createTempFile("employee", ".xml");
+        config.delete();
+        try {
+            CsvConnector.saveConfigTemplate(config.getAbsolutePath(), csv.getAbsolutePath(), null, null, ',');
+            SourceSchema schema = SourceSchema.createSchema(config);
+            // the unique ID is proposed as the connection point, the repeated DEPT_ID isn't
+            assertEquals(SourceColumn.LDM_TYPE_CONNECTION_POINT, schema.getColumns().get(0).getLdmType());
+            assertEquals(SourceColumn.LDM_TYPE_ATTRIBUTE, schema.getColumns().get(3).getLdmType());
+            String text = FileUtil.readStringFromFile(config.getAbsolutePath());
+            assertTrue(text.contains("ID: 205 values, 0 empty"));
+            assertTrue(text.contains("unique (connection point candidate)"));
+        } finally {
+            config.delete();
+        }
+    }
+
+    public void testNumericUniqueColumnNotConnectionPoint() throws IOException {
+        File csv = File.createTempFile("amounts", ".csv");
+        File config = File.createTempFile("amounts", ".xml");
+        config.delete();
+        try {
+            StringBuilder data = new StringBuilder("ID,AMOUNT,CODE\n");
+            for (int i = 1; i <= 100; i++) {
+                data.append(i).append(',').append(i * 7).append(",c").append(i).append('\n');
+            }
+            FileUtil.writeStringToFile(data.toString(), csv.getAbsolutePath());
+            CsvConnector.saveConfigTemplate(config.getAbsolutePath(), csv.getAbsolutePath(), null, null, ',');
+            SourceSchema schema = SourceSchema.createSchema(config);
+            // the unique numbers stay facts, the unique attribute is proposed as the connection point
+            assertEquals(SourceColumn.LDM_TYPE_FACT, schema.getColumns().get(0).getLdmType());
+            assertEquals(SourceColumn.LDM_TYPE_FACT, schema.getColumns().get(1).getLdmType());
+            assertEquals(SourceColumn.LDM_TYPE_CONNECTION_POINT, schema.getColumns().get(2).getLdmType());
+        } finally {
+            csv.delete();
+            config.delete();
+        }
+    }
+
+    public void testExtractPackage() throws IOException, URISyntaxException {
+        SourceSchema schema = SourceSchema.createSchema(getClass().getResourceAsStream("/com/gooddata/connector/guess_expectedConfig.xml"));
+        AbstractConnector.expandDates(schema);
+        CsvConnector cc = CsvConnector.createConnector();
+        cc.setSchema(schema);
+        cc.setDataFile(new File(getClass().getResource("/com/gooddata/connector/guess_quotes.csv").toURI()));
+        File dir = FileUtil.createTempDir();
+        File archive = new File(dir.getAbsolutePath() + ".zip");
+        try {
+            cc.extractPackage(dir.getAbsolutePath(), "{}", archive.getAbsolutePath());
+            // no intermediate data file
+            assertEquals(0, dir.list().length);
+
+            ZipInputStream zis = new ZipInputStream(new FileInputStream(archive));
+            ZipEntry entry = zis.getNextEntry();
+            assertEquals(AbstractConnector.DATA_FILE_NAME, entry.getName());
+            CSVReader cr = new CSVReader(new InputStreamReader(zis, "utf8"));
+            int rows = 0;
+            while (cr.readNext() != null) {
+                rows++;
+            }
+            CSVReader expected = FileUtil.createUtf8CsvReader(cc.getDataFile());
+            int expectedRows = 0;
+            while (expected.readNext() != null) {
+                expectedRows++;
+            }
+            expected.close();
+            assertEquals(expectedRows, rows);
+            // the manifest is the last entry
+            entry = zis.getNextEntry();
+            assertEquals(GdcRESTApiWrapper.DLI_MANIFEST_FILENAME, entry.getName());
+            byte[] manifest = new byte[2];
+            assertEquals(2, zis.read(manifest));
+            assertEquals("{}", new String(manifest, "UTF-8"));
+            assertNull(zis.getNextEntry());
+            zis.close();
+        } finally {
+            FileUtil.recursiveDelete(dir);
+            archive.delete();
+        }
+    }
 }
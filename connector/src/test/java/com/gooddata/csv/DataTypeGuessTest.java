@@ -30,6 +30,7 @@ import junit.framework.TestCase;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 
 /**
  * GoodData
@@ -50,6 +51,14 @@ public class DataTypeGuessTest extends TestCase {
         assertTrue(DataTypeGuess.isDecimal("1E3"));
         assertTrue(DataTypeGuess.isDecimal("12.3"));
         assertTrue(DataTypeGuess.isDecimal("12"));
+        assertTrue(DataTypeGuess.isDecimal("-.5e-3"));
+        assertTrue(DataTypeGuess.isDecimal(" $1,234.50 "));
+        assertFalse(DataTypeGuess.isDecimal("1e"));
+        assertFalse(DataTypeGuess.isDecimal("."));
+        assertFalse(DataTypeGuess.isDecimal("1 2"));
+        assertFalse(DataTypeGuess.isDecimal("NaN"));
+        assertFalse(DataTypeGuess.isDecimal("0x1F"));
+        assertFalse(DataTypeGuess.isDecimal(""));
     }
 
     public void testIsDate() {
@@ -57,6 +66,14 @@ public class DataTypeGuessTest extends TestCase {
         assertNull(DataTypeGuess.getDateFormat("2010-13-12"));
         assertEquals("MM/dd/yyyy", DataTypeGuess.getDateFormat("11/12/2010"));
         assertNull(DataTypeGuess.getDateFormat("13/12/2010"));
+        assertEquals("M/d/yyyy", DataTypeGuess.getDateFormat("1/2/2010"));
+        assertEquals("yyyy-M-d", DataTypeGuess.getDateFormat("2010-1-2"));
+        assertEquals("yyyy-MM-dd", DataTypeGuess.getDateFormat("2012-02-29"));
+        assertNull(DataTypeGuess.getDateFormat("2011-02-29"));
+        assertNull(DataTypeGuess.getDateFormat("2010-04-31"));
+        assertNull(DataTypeGuess.getDateFormat("2010/11/12"));
+        assertNull(DataTypeGuess.getDateFormat("10-11-12"));
+        assertNull(DataTypeGuess.getDateFormat("2010-11-12 10:00"));
     }
 
     public void testGuessCsvSchema() throws IOException {
@@ -106,6 +123,22 @@ public class DataTypeGuessTest extends TestCase {
         }
     }
 
+    public void testGuessCsvSchemaSample() throws IOException {
+        StringBuffer csv = new StringBuffer("id,amount\n");
+        for (int i = 0; i < 5000; i++) {
+            csv.append(i).append(",").append(i % 100).append("\n");
+        }
+        DataTypeGuess guesser = new DataTypeGuess(true);
+        SourceColumn[] types = guesser.guessCsvSchema(new CSVReader(new StringReader(csv.toString())));
+        assertEquals("FACT", types[0].getLdmType());
+        assertEquals("FACT", types[1].getLdmType());
+
+        // the rows past the beginning of the file are sampled too
+        csv.append("5000,n/a\n");
+        types = guesser.guessCsvSchema(new CSVReader(new StringReader(csv.toString())));
+        assertEquals("ATTRIBUTE", types[1].getLdmType());
+    }
+
     public void testGuessCsvSchemaWithDefaultLdmType() throws IOException {
         DataTypeGuess guesser = new DataTypeGuess(true);
         guesser.setDefaultLdmType("ATTRIBUTE");